@@ -0,0 +1,76 @@
+package com.gothenburg.tax.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link TaxBinaryFormat}, on the same data as {@link JsonBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class BinaryFormatBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int passageCount;
+
+    private PassageRequest request;
+    private byte[] requestBytes;
+    private TaxResponse response;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setUp() {
+        long[] passages = new long[passageCount];
+        Map<String, Integer> taxByDate = new LinkedHashMap<>();
+        for (int i = 0; i < passageCount; i++) {
+            LocalDate date = LocalDate.of(2013, 1, 2).plusDays(i / 10);
+            passages[i] = LocalDateTime.of(date.getYear(), date.getMonth(), date.getDayOfMonth(),
+                    6 + i % 4, 10 + i % 50).toEpochSecond(ZoneOffset.UTC);
+            taxByDate.put(date.toString(), 8 + i % 50);
+        }
+
+        request = new PassageRequest(VehicleType.CAR, passages);
+        requestBytes = TaxBinaryFormat.writeRequest(request);
+        response = new TaxResponse(VehicleType.CAR, 1234, taxByDate, false, "3f2a9c1b7e04");
+        responseBytes = TaxBinaryFormat.writeResponse(response);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() {
+        return TaxBinaryFormat.writeRequest(request);
+    }
+
+    @Benchmark
+    public PassageRequest deserializeRequest() {
+        return TaxBinaryFormat.readRequest(requestBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() {
+        return TaxBinaryFormat.writeResponse(response);
+    }
+
+    @Benchmark
+    public TaxResponse deserializeResponse() {
+        return TaxBinaryFormat.readResponse(responseBytes);
+    }
+}
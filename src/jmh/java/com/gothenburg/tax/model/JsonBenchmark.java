@@ -0,0 +1,78 @@
+package com.gothenburg.tax.model;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks for JSON (de)serialization of {@link TaxRequest} and {@link TaxResponse}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class JsonBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int passageCount;
+
+    private ObjectMapper objectMapper;
+    private TaxRequest request;
+    private String requestJson;
+    private TaxResponse response;
+    private String responseJson;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+
+        String[] dates = new String[passageCount];
+        Map<String, Integer> taxByDate = new LinkedHashMap<>();
+        for (int i = 0; i < passageCount; i++) {
+            String date = LocalDate.of(2013, 1, 2).plusDays(i / 10).toString();
+            dates[i] = date + " 0" + (6 + i % 4) + ":" + (10 + i % 50) + ":00";
+            taxByDate.put(date, 8 + i % 50);
+        }
+
+        request = new TaxRequest(VehicleType.CAR, List.of(dates));
+        requestJson = objectMapper.writeValueAsString(request);
+        response = new TaxResponse(VehicleType.CAR, 1234, taxByDate, false, "3f2a9c1b7e04");
+        responseJson = objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String serializeRequest() {
+        return objectMapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public TaxRequest deserializeRequest() {
+        return objectMapper.readValue(requestJson, TaxRequest.class);
+    }
+
+    @Benchmark
+    public String serializeResponse() {
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public TaxResponse deserializeResponse() {
+        return objectMapper.readValue(responseJson, TaxResponse.class);
+    }
+}
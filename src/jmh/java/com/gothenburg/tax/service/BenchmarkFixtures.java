@@ -0,0 +1,65 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Shared setup for the benchmarks: the bundled Gothenburg rules and reproducible passage data.
+ */
+final class BenchmarkFixtures {
+
+    static final String CITY = "gothenburg";
+
+    /** Passages that fit into 2013 at the natural spacing, with room to spare. */
+    private static final int SPREAD_PASSAGES = 5_500;
+
+    private BenchmarkFixtures() {}
+
+    static TaxRuleLoader ruleLoader() throws IOException {
+        TaxRuleLoader ruleLoader = new TaxRuleLoader(new ObjectMapper());
+        ruleLoader.loadRules(new ClassPathResource("data/gothenburg-tax-rules.json"));
+        return ruleLoader;
+    }
+
+    static CongestionTaxCalculator calculator(TaxRuleLoader ruleLoader) {
+        return calculator(ruleLoader, "interpreted");
+    }
+
+    static CongestionTaxCalculator calculator(TaxRuleLoader ruleLoader, String engine) {
+        return new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+                new TaxMetrics(new SimpleMeterRegistry()), 50_000, engine);
+    }
+
+    /**
+     * Passages between 05:00 and 20:00 on days of 2013, the only year the
+     * bundled rules cover. Up to {@value #SPREAD_PASSAGES} passages come about 16 a day, so
+     * the single charge window and daily cap both come into play; larger counts shrink the
+     * gaps in proportion so they still end within the year. Always chronological.
+     */
+    static List<String> passages(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> passages = new ArrayList<>(count);
+        double scale = Math.min(1.0, (double) SPREAD_PASSAGES / count);
+        // Seconds added to each passage, kept below the shortest gap so the order holds
+        int jitter = (int) Math.max(1, Math.min(60, Math.round(20 * 60 * scale)));
+        LocalDateTime time = LocalDateTime.of(2013, 1, 2, 5, 0);
+        for (int i = 0; i < count; i++) {
+            time = time.plusSeconds(Math.max(jitter, Math.round((20 + random.nextInt(70)) * 60 * scale)));
+            if (time.getHour() >= 20) {
+                time = time.plusDays(1).withHour(5).withMinute(random.nextInt(60)).withSecond(0);
+            }
+            if (time.getYear() > 2013) {
+                throw new IllegalStateException(count + " passages do not fit into 2013");
+            }
+            passages.add(time.plusSeconds(random.nextInt(jitter)).format(PassageTimestampParser.DATETIME_FORMAT));
+        }
+        return passages;
+    }
+}
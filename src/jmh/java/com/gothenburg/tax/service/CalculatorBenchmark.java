@@ -0,0 +1,112 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.model.VehicleType;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the calculation hot paths: fee lookup, a single day, the toll-free
+ * date check and a full {@link CongestionTaxCalculator#calculate} call, under each
+ * {@code tax.calculation.engine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CalculatorBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"interpreted", "specialised", "vector"})
+    public String engine;
+
+    private CongestionTaxCalculator calculator;
+    private TollFreeDateService tollFreeDateService;
+    private CompiledTaxRules rules;
+    private long[] lookupPassages;
+    private int[] lookupDays;
+    private long[] busyDay;
+
+    @Setup
+    public void setUp() throws IOException {
+        var ruleLoader = BenchmarkFixtures.ruleLoader();
+        calculator = BenchmarkFixtures.calculator(ruleLoader, engine);
+        tollFreeDateService = new TollFreeDateService();
+        rules = ruleLoader.getRules(BenchmarkFixtures.CITY).forDate(LocalDate.of(2013, 1, 1));
+
+        List<String> sample = BenchmarkFixtures.passages(LOOKUPS, 7);
+        lookupPassages = CongestionTaxCalculator.parseSorted(sample);
+        lookupDays = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupDays[i] = PassageTimestampParser.epochDay(lookupPassages[i]);
+        }
+
+        busyDay = CongestionTaxCalculator.parseSorted(List.of(
+                "2013-02-08 06:20:27", "2013-02-08 06:27:00", "2013-02-08 14:35:00",
+                "2013-02-08 15:29:00", "2013-02-08 15:47:00", "2013-02-08 16:01:00",
+                "2013-02-08 16:48:00", "2013-02-08 17:49:00", "2013-02-08 18:29:00",
+                "2013-02-08 18:35:00"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getTollFee(Blackhole bh) {
+        for (long passage : lookupPassages) {
+            bh.consume(calculator.getTollFee(passage, rules));
+        }
+    }
+
+    @Benchmark
+    public int calculateDailyTax() {
+        return calculator.calculateDailyTax(busyDay, 0, busyDay.length, rules);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void isTollFreeDay(Blackhole bh) {
+        for (int day : lookupDays) {
+            bh.consume(tollFreeDateService.isTollFreeDay(day, rules));
+        }
+    }
+
+    @Benchmark
+    public Object calculate(Request request) {
+        return calculator.calculate(VehicleType.CAR, request.dates, BenchmarkFixtures.CITY);
+    }
+
+    /**
+     * Request sizes for the full {@code calculate} benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class Request {
+
+        // 200000 is above tax.calculation.parallel-threshold, so its days run in parallel
+        @Param({"1", "100", "10000", "200000"})
+        public int passageCount;
+
+        List<String> dates;
+
+        @Setup
+        public void setUp() {
+            dates = BenchmarkFixtures.passages(passageCount, 42);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CompiledTaxRules;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The vector {@link FeeKernel} against the scalar one, and both against looking fees up
+ * one passage at a time with {@link CongestionTaxCalculator#getTollFee}. Scores are per
+ * passage.
+ *
+ * The vector kernel needs {@code --add-modules jdk.incubator.vector}, which the benchmark
+ * profile passes; without it the {@code vector} runs fail rather than silently measuring
+ * the scalar kernel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class FeeKernelBenchmark {
+
+    private static final int PASSAGES = 1 << 20;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    /**
+     * Passages per day for the window reduction: separate windows are the vector kernel's
+     * fast path; a busy day has passages inside each other's window and is scanned.
+     */
+    @Param({"8", "64", "512"})
+    public int dayPassages;
+
+    private FeeKernel feeKernel;
+    private CongestionTaxCalculator calculator;
+    private CompiledTaxRules rules;
+    private int[] feeTable;
+    private int[] minutes;
+    private int[] work;
+    private long[] passages;
+    private long[] separateDays;
+    private int[] dayFees;
+
+    @Setup
+    public void setUp() throws IOException {
+        feeKernel = "vector".equals(kernel) ? FeeKernel.load() : ScalarFeeKernel.INSTANCE;
+        if ("vector".equals(kernel) && feeKernel instanceof ScalarFeeKernel) {
+            throw new IllegalStateException("Run with --add-modules jdk.incubator.vector");
+        }
+        var ruleLoader = BenchmarkFixtures.ruleLoader();
+        calculator = BenchmarkFixtures.calculator(ruleLoader);
+        rules = ruleLoader.getRules(BenchmarkFixtures.CITY).forDate(LocalDate.of(2013, 1, 1));
+        feeTable = new int[CompiledTaxRules.MINUTES_PER_DAY];
+        for (int minute = 0; minute < feeTable.length; minute++) {
+            feeTable[minute] = rules.feeAt(minute);
+        }
+
+        Random random = new Random(5);
+        minutes = random.ints(PASSAGES, 0, CompiledTaxRules.MINUTES_PER_DAY).toArray();
+        work = new int[PASSAGES];
+
+        // Sorted days of dayPassages each: one set a few minutes apart, one set more than a window apart
+        long dayStart = LocalDate.of(2013, 2, 4).toEpochDay() * PassageTimestampParser.SECONDS_PER_DAY;
+        passages = new long[PASSAGES];
+        separateDays = new long[PASSAGES];
+        for (int i = 0; i < PASSAGES; i++) {
+            int dayIndex = i % dayPassages;
+            passages[i] = dayStart + dayIndex * (86_400L / dayPassages) / 4;
+            separateDays[i] = dayStart + dayIndex * 3_700L;
+        }
+        dayFees = random.ints(PASSAGES, 0, 3).toArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PASSAGES)
+    public void getTollFeeOneAtATime(Blackhole bh) {
+        for (int minute : minutes) {
+            bh.consume(calculator.getTollFee(minute * 60L, rules));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PASSAGES)
+    public int[] bulkFees() {
+        System.arraycopy(minutes, 0, work, 0, PASSAGES);
+        feeKernel.fees(feeTable, work, 0, PASSAGES);
+        return work;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PASSAGES)
+    public void sumBusyDays(Blackhole bh) {
+        for (int from = 0; from < PASSAGES; from += dayPassages) {
+            bh.consume(feeKernel.sumWindowFees(passages, from, from + dayPassages, dayFees, from,
+                    rules.getSingleChargeWindowMinutes(), Integer.MAX_VALUE, null));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PASSAGES)
+    public void sumSeparateWindows(Blackhole bh) {
+        // Only 23 windows fit in a day, so longer days wrap into the next day's seconds
+        for (int from = 0; from < PASSAGES; from += dayPassages) {
+            bh.consume(feeKernel.sumWindowFees(separateDays, from, from + dayPassages, dayFees, from,
+                    rules.getSingleChargeWindowMinutes(), Integer.MAX_VALUE, null));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.VehicleType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Platform versus virtual threads for the web tier, under the same load.
+ *
+ * Each operation is a burst of {@code concurrency} requests. A request first blocks for
+ * {@code ioMicros} (standing in for an upstream call such as a rule load) and then
+ * calculates a 100-passage request. Platform mode uses a fixed pool the size of Tomcat's
+ * default (200 threads); virtual mode starts a virtual thread per request, as Tomcat does
+ * with {@code spring.threads.virtual.enabled}. Throughput is bursts per second; sample
+ * time gives the distribution of burst completion time, i.e. the slowest request's latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"100", "1000"})
+    public int concurrency;
+
+    @Param({"0", "2000"})
+    public long ioMicros;
+
+    private CongestionTaxCalculator calculator;
+    private List<String> dates;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        calculator = BenchmarkFixtures.calculator(BenchmarkFixtures.ruleLoader());
+        dates = BenchmarkFixtures.passages(100, 42);
+        executor = mode.equals("virtual")
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void burst(Blackhole bh) throws Exception {
+        List<Future<Object>> requests = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            requests.add(executor.submit(this::request));
+        }
+        for (Future<Object> request : requests) {
+            bh.consume(request.get());
+        }
+    }
+
+    private Object request() {
+        if (ioMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(ioMicros));
+        }
+        return calculator.calculate(VehicleType.CAR, dates, BenchmarkFixtures.CITY);
+    }
+}
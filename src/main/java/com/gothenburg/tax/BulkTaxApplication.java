@@ -0,0 +1,60 @@
+package com.gothenburg.tax;
+
+import com.gothenburg.tax.model.PassageFileFormat;
+import com.gothenburg.tax.service.BulkTaxService;
+import com.gothenburg.tax.service.BulkTaxService.Summary;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command-line entry point for offline bulk runs, without the web server.
+ *
+ * <pre>
+ * --input=passages.csv --output=taxes.csv [--format=csv|binary] [--city=gothenburg]
+ * </pre>
+ *
+ * Rules and the tax.bulk.* settings are configured as for the API, e.g.
+ * {@code --tax.rules.directory=/etc/tax-rules --tax.bulk.parallelism=16}.
+ */
+public class BulkTaxApplication {
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(CongestionTaxApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("tax.rules.watch=false", "tax.journal.directory=")
+                .run(args);
+
+        try (context) {
+            ApplicationArguments arguments = context.getBean(ApplicationArguments.class);
+            String input = option(arguments, "input", null);
+            String output = option(arguments, "output", null);
+            if (input == null || output == null) {
+                System.err.println("Usage: --input=<file> --output=<file> [--format=csv|binary] [--city=gothenburg]");
+                System.exit(2);
+            }
+
+            Summary summary = context.getBean(BulkTaxService.class).process(
+                    Path.of(input),
+                    PassageFileFormat.fromName(option(arguments, "format", "csv")),
+                    Path.of(output),
+                    option(arguments, "city", "gothenburg"));
+
+            System.out.printf(Locale.ROOT,
+                    "Processed %,d passages for %,d vehicles in %.1f s (%,.0f passages/s); "
+                            + "%,d invalid records skipped, %,d vehicles failed%n",
+                    summary.passages(), summary.vehicles(), summary.elapsed().toMillis() / 1000.0,
+                    summary.passagesPerSecond(), summary.invalidRecords(), summary.failedVehicles());
+        }
+    }
+
+    private static String option(ApplicationArguments arguments, String name, String defaultValue) {
+        List<String> values = arguments.getOptionValues(name);
+        return values == null || values.isEmpty() ? defaultValue : values.get(values.size() - 1);
+    }
+}
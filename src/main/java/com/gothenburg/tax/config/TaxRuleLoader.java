@@ -1,36 +1,101 @@
 package com.gothenburg.tax.config;
 
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
 import com.gothenburg.tax.model.TaxRuleConfig;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
 import tools.jackson.databind.ObjectMapper;
 
 /**
  * Loads tax rule configurations from external JSON files.
  * Supports multiple cities — each city has its own rule file.
+ * Each file is compiled into an immutable {@link CompiledTaxRules} snapshot on load.
+ * A city may have several files with non-overlapping {@code validFrom}/{@code validTo}
+ * ranges; together they form its {@link CityTaxRules}.
  *
  * For the bonus scenario, this could be ex * For the bonus scenario, this could be extended to load from a database,tended to load from a database,
  * remote API, or file system path outside the application.
+ *
+ * Besides {@code tax.rules.path}, which is loaded eagerly and always kept, a directory of
+ * rule files can be configured with {@code tax.rules.directory}. Only the city and year
+ * of each file are read at startup; a city's full rules (all of its files) are compiled
+ * on first use and kept in a cache of at most {@code tax.rules.max-cached} cities,
+ * evicting the least recently used.
+ *
+ * Rule files on the file system can be reloaded while the application runs (see
+ * {@link TaxRuleWatcher}). A reload replaces the city's snapshot in a single map write,
+ * so readers never lock and a request that already holds a snapshot keeps using it.
+ *
+ * The number of loaded cities is published as the {@code tax.rules.cities} gauge and
+ * reloads as the {@code tax.rules.reloads} counter.
  */
 @Component
-public class TaxRuleLoader {
+public class TaxRuleLoader implements MeterBinder {
 
     private static final Logger log = LoggerFactory.getLogger(TaxRuleLoader.class);
 
     private final ObjectMapper objectMapper;
-    private final Map<String, TaxRuleConfig> rulesByCity = new ConcurrentHashMap<>();
+    private final Map<String, CachedRules> rulesByCity = new ConcurrentHashMap<>();
+    private final Map<String, List<RuleFile>> index = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CachedRules>> loading = new ConcurrentHashMap<>();
+    private final Set<Path> ruleFiles = ConcurrentHashMap.newKeySet();
+    /** Keys of the evictable cities, least recently used first; guarded by {@code recencyLock}. */
+    private final Map<String, Boolean> recency = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock recencyLock = new ReentrantLock();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failedReloads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile Timer lazyLoadTimer;
+    private volatile DistributionSummary sizeSummary;
 
     @Value("${tax.rules.path:classpath:data/gothenburg-tax-rules.json}")
     private Resource defaultRulesResource;
 
+    @Value("${tax.rules.directory:}")
+    private String rulesDirectory;
+
+    @Value("${tax.rules.max-cached:64}")
+    private int maxCachedCities = 64;
+
     public TaxRuleLoader(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
     }
@@ -38,34 +103,375 @@ public class TaxRuleLoader {
     @PostConstruct
     public void init() throws IOException {
         loadRules(defaultRulesResource);
-        log.info("Loaded tax rules for {} city/cities: {}", rulesByCity.size(), rulesByCity.keySet());
+        if (rulesDirectory != null && !rulesDirectory.isBlank()) {
+            indexDirectory(Path.of(rulesDirectory));
+        }
+        log.info("Loaded tax rules for {} city/cities: {}; {} more indexed for loading on first use",
+                rulesByCity.size(), rulesByCity.keySet(), index.size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("tax.rules.cities", rulesByCity, Map::size)
+                .description("Number of cities with loaded tax rules")
+                .register(registry);
+        Gauge.builder("tax.rules.indexed", index, Map::size)
+                .description("Number of cities in the rule directory index")
+                .register(registry);
+        Gauge.builder("tax.rules.resident", this, TaxRuleLoader::residentBytes)
+                .description("Estimated heap used by loaded tax rules")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("tax.rules.reloads", reloads, AtomicLong::get)
+                .description("Tax rule file reloads")
+                .tag("outcome", "success")
+                .register(registry);
+        FunctionCounter.builder("tax.rules.reloads", failedReloads, AtomicLong::get)
+                .description("Tax rule file reloads")
+                .tag("outcome", "failure")
+                .register(registry);
+        FunctionCounter.builder("tax.rules.evictions", evictions, AtomicLong::get)
+                .description("Cities evicted from the tax rule cache")
+                .register(registry);
+        lazyLoadTimer = Timer.builder("tax.rules.load")
+                .description("Time to load and compile a city's rules on first use")
+                .register(registry);
+        sizeSummary = DistributionSummary.builder("tax.rules.size")
+                .description("Estimated heap used by one city's compiled rules")
+                .baseUnit("bytes")
+                .register(registry);
+        rulesByCity.values().forEach(cached -> sizeSummary.record(cached.rules.estimatedSizeBytes()));
     }
 
     /**
-     * Load rules from a Spring Resource (classpath or file).
+     * Load rules from a Spring Resource (classpath or file), compile them and add them to
+     * the city's versions. These rules are never evicted. Rules loaded from a file are
+     * remembered so that they can be reloaded.
+     *
+     * @throws IllegalArgumentException if the rules overlap a version already loaded for the city
      */
     public void loadRules(Resource resource) throws IOException {
+        String source = source(resource);
+        CompiledTaxRules compiled = read(resource);
+        CachedRules cached = rulesByCity.compute(key(compiled.getCity()), (k, current) -> new CachedRules(
+                current == null ? CityTaxRules.of(source, compiled) : current.rules.with(source, compiled), true));
+        forget(key(compiled.getCity()));
+        recordSize(cached.rules);
+        if (resource.isFile()) {
+            ruleFiles.add(Path.of(source));
+        }
+        log.info("Loaded tax rules for city: {} (version {})", compiled.getCity(), compiled.getVersion());
+    }
+
+    /**
+     * Index every {@code *.json} rule file in a directory by city, reading only the
+     * header of each file. Files that cannot be indexed are logged and skipped. Files for
+     * a city that is already loaded are added to it straight away.
+     */
+    public void indexDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path file : files) {
+                Path path = file.toAbsolutePath().normalize();
+                if (ruleFiles.contains(path)) {
+                    continue;
+                }
+                try {
+                    RuleFile ruleFile = readHeader(path);
+                    String key = key(ruleFile.city());
+                    if (rulesByCity.containsKey(key)) {
+                        loadRules(new FileSystemResource(path));
+                    }
+                    index.merge(key, List.of(ruleFile), TaxRuleLoader::concat);
+                    ruleFiles.add(path);
+                } catch (JacksonException | IllegalArgumentException ex) {
+                    log.warn("Skipping rule file {}: {}", path, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-read a rule file and, if its content changed, swap in a new snapshot of the
+     * city's versions with this file's version replaced. A file that fails to parse or
+     * validate, or that would overlap another version, leaves the current rules in place.
+     * A city that is indexed but not currently loaded picks the change up on next use.
+     *
+     * @return true if new rules were installed
+     */
+    public boolean reload(Path file) {
+        try {
+            String source = file.toAbsolutePath().normalize().toString();
+            CompiledTaxRules compiled = read(new FileSystemResource(file));
+            String key = key(compiled.getCity());
+
+            CachedRules current = rulesByCity.get(key);
+            if (current == null) {
+                return false;
+            }
+            CompiledTaxRules previous = current.rules.forSource(source);
+            if (previous != null && previous.getVersion().equals(compiled.getVersion())) {
+                return false;
+            }
+            CityTaxRules updated = current.rules.reloaded(source, compiled);
+            rulesByCity.put(key, new CachedRules(updated, current.pinned));
+            recordSize(updated);
+            reloads.incrementAndGet();
+            log.info("Reloaded tax rules for city: {} from {} (version {})",
+                    compiled.getCity(), file, compiled.getVersion());
+            return true;
+        } catch (IOException | JacksonException | IllegalArgumentException | DateTimeParseException ex) {
+            failedReloads.incrementAndGet();
+            log.warn("Keeping current tax rules; failed to reload {}: {}", file, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Rule files that have been loaded or indexed from the file system.
+     */
+    public Set<Path> getRuleFiles() {
+        return Set.copyOf(ruleFiles);
+    }
+
+    private static String source(Resource resource) throws IOException {
+        return resource.isFile()
+                ? resource.getFile().toPath().toAbsolutePath().normalize().toString()
+                : resource.getDescription();
+    }
+
+    private CompiledTaxRules read(Resource resource) throws IOException {
+        Instant loadedAt = Instant.now();
+        byte[] content;
         try (InputStream is = resource.getInputStream()) {
-            TaxRuleConfig config = objectMapper.readValue(is, TaxRuleConfig.class);
-            rulesByCity.put(config.getCity().toLowerCase(), config);
-            log.info("Loaded tax rules for city: {}", config.getCity());
+            content = is.readAllBytes();
+        }
+        TaxRuleConfig config = objectMapper.readValue(content, TaxRuleConfig.class);
+        return CompiledTaxRules.compile(config, version(content), loadedAt);
+    }
+
+    /**
+     * Read the top-level city and year of a rule file, stopping as soon as both are found.
+     */
+    private RuleFile readHeader(Path file) throws IOException {
+        String city = null;
+        int year = 0;
+        try (InputStream in = Files.newInputStream(file); JsonParser parser = objectMapper.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Rule file is not a JSON object");
+            }
+            while ((city == null || year == 0) && parser.nextToken() == JsonToken.PROPERTY_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "city" -> city = parser.getString();
+                    case "year" -> year = parser.getIntValue();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        if (city == null || city.isBlank()) {
+            throw new IllegalArgumentException("Tax rules must define a city");
         }
+        return new RuleFile(file, city, year);
     }
 
     /**
-     * Get the tax rules for a given city.
+     * A short content hash, so the same file yields the same version on every instance.
+     */
+    private static String version(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Get the tax rules for a given city, loading them from the rule directory on first use.
      *
      * @param city city name (case-insensitive)
-     * @return the rule config, or null if not found
+     * @return all versions of the city's compiled rules, or null if not found
+     * @throws UncheckedIOException if one of the city's rule files can no longer be read
+     * @throws IllegalArgumentException if the city's rule files are invalid or overlap
      */
-    public TaxRuleConfig getRules(String city) {
-        return rulesByCity.get(city.toLowerCase());
+    public CityTaxRules getRules(String city) {
+        // Keys are lower case, so the usual lower-case city is found without allocating
+        String key = city;
+        CachedRules cached = rulesByCity.get(key);
+        if (cached == null) {
+            key = key(city);
+            cached = key == city ? null : rulesByCity.get(key);
+            if (cached == null) {
+                return loadIndexed(key);
+            }
+        }
+        if (!cached.pinned) {
+            touch(key);
+        }
+        return cached.rules;
     }
 
     /**
      * Get the default (Gothenburg) rules.
      */
-    public TaxRuleConfig getDefaultRules() {
-        return rulesByCity.get("gothenburg");
+    public CityTaxRules getDefaultRules() {
+        return getRules("gothenburg");
+    }
+
+    private CityTaxRules loadIndexed(String key) {
+        List<RuleFile> files = index.get(key);
+        if (files == null) {
+            return null;
+        }
+
+        // Not computeIfAbsent: that holds a map lock across the file I/O, which would pin a
+        // virtual thread to its carrier. Concurrent first uses wait on one load instead.
+        CompletableFuture<CachedRules> load = new CompletableFuture<>();
+        CompletableFuture<CachedRules> existing = loading.putIfAbsent(key, load);
+        if (existing != null) {
+            return join(existing).rules;
+        }
+        try {
+            CachedRules cached = rulesByCity.get(key);
+            if (cached == null) {
+                cached = load(files);
+                CachedRules raced = rulesByCity.putIfAbsent(key, cached); // e.g. an eager load
+                if (raced != null) {
+                    cached = raced;
+                } else {
+                    touchAndEvict(key);
+                }
+            }
+            load.complete(cached);
+            return cached.rules;
+        } catch (RuntimeException ex) {
+            load.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private CachedRules load(List<RuleFile> files) {
+        long started = System.nanoTime();
+        CityTaxRules rules = null;
+        for (RuleFile ruleFile : files) {
+            try {
+                CompiledTaxRules compiled = read(new FileSystemResource(ruleFile.path()));
+                String source = ruleFile.path().toString();
+                rules = rules == null ? CityTaxRules.of(source, compiled) : rules.with(source, compiled);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to load tax rules from " + ruleFile.path(), ex);
+            }
+        }
+        try {
+            recordSize(rules);
+            log.info("Loaded tax rules for city: {} on first use (version {})",
+                    rules.getCity(), rules.getVersion());
+            return new CachedRules(rules, false);
+        } finally {
+            Timer timer = lazyLoadTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static CachedRules join(CompletableFuture<CachedRules> load) {
+        try {
+            return load.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private void touch(String key) {
+        recencyLock.lock();
+        try {
+            recency.get(key);
+        } finally {
+            recencyLock.unlock();
+        }
+    }
+
+    /**
+     * Mark a city loaded from the directory as most recently used, then evict the least
+     * recently used ones until at most {@code maxCachedCities} remain.
+     */
+    private void touchAndEvict(String key) {
+        recencyLock.lock();
+        try {
+            recency.put(key, Boolean.TRUE);
+            Iterator<String> eldest = recency.keySet().iterator();
+            while (recency.size() > maxCachedCities && eldest.hasNext()) {
+                String evicted = eldest.next();
+                eldest.remove();
+                if (rulesByCity.computeIfPresent(evicted, (k, cached) -> cached.pinned ? cached : null) == null) {
+                    evictions.incrementAndGet();
+                    log.debug("Evicted tax rules for city: {}", evicted);
+                }
+            }
+        } finally {
+            recencyLock.unlock();
+        }
+    }
+
+    /**
+     * Stop tracking a city that has become pinned.
+     */
+    private void forget(String key) {
+        recencyLock.lock();
+        try {
+            recency.remove(key);
+        } finally {
+            recencyLock.unlock();
+        }
+    }
+
+    private void recordSize(CityTaxRules rules) {
+        DistributionSummary summary = sizeSummary;
+        if (summary != null) {
+            summary.record(rules.estimatedSizeBytes());
+        }
+    }
+
+    private double residentBytes() {
+        long total = 0;
+        for (CachedRules cached : rulesByCity.values()) {
+            total += cached.rules.estimatedSizeBytes();
+        }
+        return total;
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        List<T> all = new ArrayList<>(first);
+        all.addAll(second);
+        return List.copyOf(all);
+    }
+
+    /**
+     * Lower-case a city name, returning the same instance if it has no upper-case characters.
+     */
+    private static String key(String city) {
+        for (int i = 0; i < city.length(); i++) {
+            if (Character.isUpperCase(city.charAt(i))) {
+                return city.toLowerCase(Locale.ROOT);
+            }
+        }
+        return city;
     }
+
+    /**
+     * A rule file found in the rule directory.
+     */
+    private record RuleFile(Path path, String city, int year) {}
+
+    /**
+     * Compiled rules, and whether they are pinned. Pinned rules are never evicted.
+     */
+    private record CachedRules(CityTaxRules rules, boolean pinned) {}
 }
@@ -0,0 +1,109 @@
+package com.gothenburg.tax.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches the rule files loaded by {@link TaxRuleLoader} and reloads them when they change.
+ *
+ * Changes are picked up on a single background thread, so parsing and compiling never
+ * happen on a request thread. Rules loaded from inside a jar cannot be watched and are
+ * left as they are.
+ */
+@Component
+public class TaxRuleWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(TaxRuleWatcher.class);
+
+    private final TaxRuleLoader ruleLoader;
+    private final boolean enabled;
+    private WatchService watchService;
+    private Thread thread;
+
+    public TaxRuleWatcher(TaxRuleLoader ruleLoader, @Value("${tax.rules.watch:true}") boolean enabled) {
+        this.ruleLoader = ruleLoader;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Set<Path> files = ruleLoader.getRuleFiles();
+        if (!enabled || files.isEmpty()) {
+            log.info("Not watching tax rule files (enabled: {}, files: {})", enabled, files.size());
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        for (Path file : files) {
+            directories.add(file.getParent());
+        }
+        for (Path directory : directories) {
+            // Editors often replace a file rather than write it in place, hence CREATE as well
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        thread = new Thread(this::watch, "tax-rules-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching tax rule files: {}", files);
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+            Set<Path> ruleFiles = ruleLoader.getRuleFiles();
+            Set<Path> changed = new HashSet<>();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost: check every rule file in the directory
+                    for (Path file : ruleFiles) {
+                        if (file.getParent().equals(directory)) {
+                            changed.add(file);
+                        }
+                    }
+                } else {
+                    Path file = directory.resolve((Path) event.context());
+                    if (ruleFiles.contains(file)) {
+                        changed.add(file);
+                    }
+                }
+            }
+            // One reload per file, however many events a single save produced
+            changed.forEach(ruleLoader::reload);
+            key.reset();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
@@ -1,13 +1,41 @@
 package com.gothenburg.tax.controller;
 
-import com.gothenburg.tax.model.TaxRequest;
+import com.gothenburg.tax.model.BatchTaxRequest;
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.BatchTaxResponse;
+import com.gothenburg.tax.model.PassageLogFormat;
+import com.gothenburg.tax.model.PassageRequest;
+import com.gothenburg.tax.model.TaxBinaryFormat;
 import com.gothenburg.tax.model.TaxResponse;
-import com.gothenburg.tax.service.CongestionTaxCalculator;
+import com.gothenburg.tax.model.VehicleTaxResponse;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.BatchTaxService;
 import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import com.gothenburg.tax.service.PassageStreamService;
+import com.gothenburg.tax.service.TaxMetrics;
+import com.gothenburg.tax.service.TaxLedgerService;
+import com.gothenburg.tax.service.TaxResultCache;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * REST controller for congestion tax calculations.
  *
@@ -15,32 +43,227 @@ import org.springframework.web.bind.annotation.*;
  *   - Body: { "vehicleType": "CAR", "dates": ["2013-02-08 06:27:00", ...] }
  *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
  *
- * Returns the total tax and a per-date breakdown.
+ * Returns the total tax and a per-date breakdown. The body is read by
+ * {@link TaxRequestJsonConverter}, which parses the dates as it streams them.
+ *
+ * GET /api/tax/calculate?vehicleType=CAR&dates=2013-02-08 06:27:00&dates=...
+ *   - The same calculation for clients that prefer a cacheable GET
+ *
+ * POST /api/tax/calculate with Content-Type application/x-congestion-tax
+ *   - Body: the same request in the compact binary format of {@link TaxBinaryFormat}
+ *
+ * All three return JSON unless application/x-congestion-tax is asked for in Accept.
+ * They return an ETag derived from the normalised request, the rule version and the
+ * representation, with Vary: Accept. When it matches If-None-Match, the GET answers 304
+ * Not Modified and the POSTs 412 Precondition Failed, as 304 is only defined for GET and
+ * HEAD. The rule snapshot's load time
+ * and reload count are returned in the X-Tax-Rules-Loaded-At and X-Tax-Rules-Reloads
+ * headers rather than the body, so a cached result and its ETag stay valid for as long
+ * as the rule version does.
+ *
+ * POST /api/tax/calculate/batch
+ *   - Body: { "vehicles": [ { "vehicleId": "ABC123", "vehicleType": "CAR", "dates": [...] }, ... ] }
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * Returns one result per vehicle, in request order. Each calculated vehicle's daily taxes
+ * are recorded in the ledger (see {@link TaxLedgerController}).
+ *
+ * POST /api/tax/calculate/stream
+ *   - Body: a passage log, one passage per line, as application/x-ndjson
+ *     ({"vehicleId": ..., "vehicleType": ..., "timestamp": ...}) or text/csv (vehicleId,vehicleType,timestamp)
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * Streams back one application/x-ndjson line per vehicle and day.
+ *
+ * Each endpoint records its handling time in the {@code tax.requests} timer, tagged by
+ * endpoint and outcome.
  */
 @RestController
 @RequestMapping("/api/tax")
 public class CongestionTaxController {
 
-    private final CongestionTaxCalculator calculator;
+    public static final String RULES_LOADED_AT = "X-Tax-Rules-Loaded-At";
+    public static final String RULES_RELOADS = "X-Tax-Rules-Reloads";
+
+    private final TaxResultCache resultCache;
+    private final BatchTaxService batchTaxService;
+    private final PassageStreamService passageStreamService;
+    private final TaxLedgerService ledgerService;
+    private final TaxMetrics metrics;
+
+    public CongestionTaxController(TaxResultCache resultCache, BatchTaxService batchTaxService,
+                                   PassageStreamService passageStreamService, TaxLedgerService ledgerService,
+                                   TaxMetrics metrics) {
+        this.resultCache = resultCache;
+        this.batchTaxService = batchTaxService;
+        this.passageStreamService = passageStreamService;
+        this.ledgerService = ledgerService;
+        this.metrics = metrics;
+    }
+
+    @PostMapping(value = "/calculate", produces = {MediaType.APPLICATION_JSON_VALUE, TaxBinaryFormat.MEDIA_TYPE})
+    public ResponseEntity<TaxResponse> calculateTax(
+            @RequestBody PassageRequest request,
+            @RequestParam(defaultValue = "gothenburg") String city,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
 
-    public CongestionTaxController(CongestionTaxCalculator calculator) {
-        this.calculator = calculator;
+        return calculate(() -> resultCache.key(request, city), ifNoneMatch, accept, HttpStatus.PRECONDITION_FAILED);
     }
 
-    @PostMapping("/calculate")
+    @GetMapping(value = "/calculate", produces = {MediaType.APPLICATION_JSON_VALUE, TaxBinaryFormat.MEDIA_TYPE})
     public ResponseEntity<TaxResponse> calculateTax(
-            @Valid @RequestBody TaxRequest request,
+            @RequestParam VehicleType vehicleType,
+            @RequestParam List<String> dates,
+            @RequestParam(defaultValue = "gothenburg") String city,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+
+        return calculate(() -> resultCache.key(vehicleType, dates, city), ifNoneMatch, accept, HttpStatus.NOT_MODIFIED);
+    }
+
+    /**
+     * @param matched the status to answer with when If-None-Match matches: 304 for GET,
+     *                412 for other methods
+     */
+    private ResponseEntity<TaxResponse> calculate(Supplier<TaxResultCache.Key> request, String ifNoneMatch,
+                                                  String accept, HttpStatus matched) {
+        Timer.Sample sample = Timer.start();
+        String outcome = "error";
+        try {
+            TaxResultCache.Key key = request.get();
+            MediaType representation = representation(accept);
+            if (representation == null) {
+                // Neither representation is acceptable: leave the 406 to content negotiation
+                representation = MediaType.APPLICATION_JSON;
+            }
+            String etag = key.etag(representation.toString());
+            HttpHeaders headers = ruleHeaders(key.rules());
+            headers.setVary(List.of(HttpHeaders.ACCEPT));
+            if (matches(ifNoneMatch, etag)) {
+                outcome = matched == HttpStatus.NOT_MODIFIED ? "not_modified" : "precondition_failed";
+                return ResponseEntity.status(matched).eTag(etag).headers(headers).build();
+            }
+
+            TaxResult result = resultCache.get(key);
+
+            TaxResponse response = new TaxResponse(
+                    key.vehicleType(),
+                    result.totalTax(),
+                    result.taxByDate(),
+                    result.tollFree(),
+                    result.ruleVersion()
+            );
+
+            outcome = "success";
+            if (representation(accept) != null) {
+                headers.setContentType(representation);
+            }
+            return ResponseEntity.ok().eTag(etag).headers(headers).body(response);
+        } finally {
+            sample.stop(metrics.request("calculate", outcome));
+        }
+    }
+
+    /**
+     * The representation to send: the binary format if Accept names it at least as highly
+     * as anything that admits JSON, otherwise JSON if Accept admits it. Null if Accept
+     * admits neither, or cannot be parsed.
+     */
+    static MediaType representation(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MediaType binary = MediaType.parseMediaType(TaxBinaryFormat.MEDIA_TYPE);
+        double binaryQuality = 0;
+        double jsonQuality = 0;
+        try {
+            for (MediaType type : MediaType.parseMediaTypes(accept)) {
+                if (type.equalsTypeAndSubtype(binary)) {
+                    binaryQuality = Math.max(binaryQuality, type.getQualityValue());
+                }
+                if (type.includes(MediaType.APPLICATION_JSON)) {
+                    jsonQuality = Math.max(jsonQuality, type.getQualityValue());
+                }
+            }
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+        if (binaryQuality > 0 && binaryQuality >= jsonQuality) {
+            return binary;
+        }
+        return jsonQuality > 0 ? MediaType.APPLICATION_JSON : null;
+    }
+
+    private static HttpHeaders ruleHeaders(CityTaxRules rules) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(RULES_LOADED_AT, rules.getLoadedAt().toString());
+        headers.set(RULES_RELOADS, Integer.toString(rules.getReloads()));
+        return headers;
+    }
+
+    /**
+     * Weak comparison of an If-None-Match header against our (strong) ETag.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PostMapping("/calculate/batch")
+    public ResponseEntity<BatchTaxResponse> calculateBatch(
+            @Valid @RequestBody BatchTaxRequest request,
             @RequestParam(defaultValue = "gothenburg") String city) {
 
-        TaxResult result = calculator.calculate(request.vehicleType(), request.dates(), city);
+        Timer.Sample sample = Timer.start();
+        String outcome = "error";
+        try {
+            List<VehicleTaxResponse> results = batchTaxService.calculate(request.vehicles(), city);
+            for (VehicleTaxResponse result : results) {
+                if (result.tax() != null) {
+                    ledgerService.record(result.vehicleId(), city, result.tax().taxByDate());
+                }
+            }
+            BatchTaxResponse response = new BatchTaxResponse(results);
+            outcome = "success";
+            return ResponseEntity.ok(response);
+        } finally {
+            sample.stop(metrics.request("batch", outcome));
+        }
+    }
+
+    @PostMapping(value = "/calculate/stream",
+            consumes = {PassageLogFormat.NDJSON_MEDIA_TYPE, PassageLogFormat.CSV_MEDIA_TYPE})
+    public void calculateStream(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestParam(defaultValue = "gothenburg") String city,
+            InputStream body,
+            HttpServletResponse response) throws IOException {
 
-        TaxResponse response = new TaxResponse(
-                request.vehicleType(),
-                result.totalTax(),
-                result.taxByDate(),
-                result.tollFree()
-        );
+        PassageLogFormat format = PassageLogFormat.fromContentType(contentType);
+        response.setContentType(PassageLogFormat.NDJSON_MEDIA_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
 
-        return ResponseEntity.ok(response);
+        Timer.Sample sample = Timer.start();
+        String outcome = "error";
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            passageStreamService.process(in, format, out, city);
+            outcome = "success";
+        } finally {
+            sample.stop(metrics.request("stream", outcome));
+        }
     }
 }
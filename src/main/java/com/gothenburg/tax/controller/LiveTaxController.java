@@ -0,0 +1,67 @@
+package com.gothenburg.tax.controller;
+
+import com.gothenburg.tax.model.LiveTaxStatus;
+import com.gothenburg.tax.model.Passage;
+import com.gothenburg.tax.service.LiveTaxService;
+import com.gothenburg.tax.service.PassageJournal;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * REST controller for live passage events.
+ *
+ * POST /api/tax/live/passages
+ *   - Body: { "vehicleId": "ABC123", "vehicleType": "CAR", "timestamp": "2013-02-08 06:27:00" }
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * GET /api/tax/live/vehicles/{vehicleId}
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * Both return the vehicle's running tax for the current day. When the passage journal is
+ * enabled, a passage is written to it before it is counted, and the response is sent once
+ * it is both durable and counted.
+ *
+ * GET /api/tax/live/vehicles/{vehicleId}/passages
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * Returns the vehicle's journaled passages on days not yet compacted into the ledger.
+ */
+@RestController
+@RequestMapping("/api/tax/live")
+public class LiveTaxController {
+
+    private final LiveTaxService liveTaxService;
+    private final PassageJournal journal;
+
+    public LiveTaxController(LiveTaxService liveTaxService, PassageJournal journal) {
+        this.liveTaxService = liveTaxService;
+        this.journal = journal;
+    }
+
+    @PostMapping("/passages")
+    public ResponseEntity<LiveTaxStatus> ingest(
+            @Valid @RequestBody Passage passage,
+            @RequestParam(defaultValue = "gothenburg") String city) {
+
+        return ResponseEntity.ok(journal.ingest(passage, city));
+    }
+
+    @GetMapping("/vehicles/{vehicleId}")
+    public ResponseEntity<LiveTaxStatus> currentTotal(
+            @PathVariable String vehicleId,
+            @RequestParam(defaultValue = "gothenburg") String city) {
+
+        return ResponseEntity.ok(liveTaxService.currentTotal(vehicleId, city));
+    }
+
+    @GetMapping("/vehicles/{vehicleId}/passages")
+    public ResponseEntity<List<Passage>> passages(
+            @PathVariable String vehicleId,
+            @RequestParam(defaultValue = "gothenburg") String city) {
+
+        return ResponseEntity.ok(journal.passages(vehicleId, city));
+    }
+}
@@ -0,0 +1,66 @@
+package com.gothenburg.tax.controller;
+
+import com.gothenburg.tax.model.PassageRequest;
+import com.gothenburg.tax.model.TaxBinaryFormat;
+import com.gothenburg.tax.model.TaxResponse;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads {@link PassageRequest}s and writes {@link TaxResponse}s in {@link TaxBinaryFormat}.
+ *
+ * Only used when a request asks for {@value TaxBinaryFormat#MEDIA_TYPE} in its Content-Type
+ * or Accept header; the controller lists JSON first, so JSON remains the default.
+ */
+@Component
+public class TaxBinaryMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public TaxBinaryMessageConverter() {
+        super(MediaType.parseMediaType(TaxBinaryFormat.MEDIA_TYPE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == PassageRequest.class || clazz == TaxResponse.class;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return mediaType != null && super.canRead(mediaType);
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        // Never chosen for */* or a missing Accept header
+        return mediaType != null && !mediaType.isWildcardType() && super.canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        if (clazz != PassageRequest.class) {
+            throw new HttpMessageNotReadableException("Cannot read " + clazz.getSimpleName(), inputMessage);
+        }
+        PassageRequest request;
+        try {
+            request = TaxBinaryFormat.readRequest(inputMessage.getBody().readAllBytes());
+        } catch (IllegalArgumentException ex) {
+            throw new HttpMessageNotReadableException(ex.getMessage(), ex, inputMessage);
+        }
+        // Rejected like an empty JSON request
+        if (request.passages().length == 0) {
+            throw new IllegalArgumentException("dates: dates must contain at least one entry");
+        }
+        return request;
+    }
+
+    @Override
+    protected void writeInternal(Object response, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(TaxBinaryFormat.writeResponse((TaxResponse) response));
+    }
+}
@@ -0,0 +1,56 @@
+package com.gothenburg.tax.controller;
+
+import com.gothenburg.tax.model.LedgerGranularity;
+import com.gothenburg.tax.model.LedgerRollup;
+import com.gothenburg.tax.model.LedgerTotal;
+import com.gothenburg.tax.service.TaxLedgerService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+
+/**
+ * REST controller for the per-vehicle tax ledger, which records the daily taxes of every
+ * vehicle calculated through POST /api/tax/calculate/batch.
+ *
+ * GET /api/tax/ledger/vehicles/{vehicleId}/total?from=2013-01-01&to=2013-03-31
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * Returns the vehicle's total tax between the two days, both inclusive.
+ *
+ * GET /api/tax/ledger/vehicles/{vehicleId}/rollup?period=month
+ *   - period: month (default) or year
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * Returns the vehicle's total per month or year.
+ */
+@RestController
+@RequestMapping("/api/tax/ledger")
+public class TaxLedgerController {
+
+    private final TaxLedgerService ledgerService;
+
+    public TaxLedgerController(TaxLedgerService ledgerService) {
+        this.ledgerService = ledgerService;
+    }
+
+    @GetMapping("/vehicles/{vehicleId}/total")
+    public ResponseEntity<LedgerTotal> total(
+            @PathVariable String vehicleId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "gothenburg") String city) {
+
+        return ResponseEntity.ok(ledgerService.total(vehicleId, city, from, to));
+    }
+
+    @GetMapping("/vehicles/{vehicleId}/rollup")
+    public ResponseEntity<LedgerRollup> rollup(
+            @PathVariable String vehicleId,
+            @RequestParam(defaultValue = "month") String period,
+            @RequestParam(defaultValue = "gothenburg") String city) {
+
+        return ResponseEntity.ok(ledgerService.rollup(vehicleId, city, LedgerGranularity.fromName(period)));
+    }
+}
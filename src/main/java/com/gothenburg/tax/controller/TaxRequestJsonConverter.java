@@ -0,0 +1,214 @@
+package com.gothenburg.tax.controller;
+
+import com.gothenburg.tax.model.PassageRequest;
+import com.gothenburg.tax.model.TaxRequest;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.PassageTimestampParser;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.reflect.RecordComponent;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads a JSON {@link TaxRequest} body straight into a {@link PassageRequest}.
+ *
+ * The dates array is read token by token and each date is parsed from the parser's own
+ * character buffer, so a large request never holds a {@code List<String>} of its dates.
+ * The vehicle type and the number of dates are validated as a {@link TaxRequest}, so a
+ * missing vehicle type or empty dates fail with its constraint messages, as binding would.
+ * An invalid date is kept on the request (see {@link PassageRequest#invalidDate()})
+ * rather than failing the read. The converter only reads; it never writes a response.
+ */
+@Component
+public class TaxRequestJsonConverter extends AbstractHttpMessageConverter<PassageRequest> {
+
+    private static final int INITIAL_PASSAGES = 64;
+
+    private static final RecordComponent[] FIELDS = TaxRequest.class.getRecordComponents();
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public TaxRequestJsonConverter(ObjectMapper objectMapper, Validator validator) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == PassageRequest.class;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the vehicle type is missing or unknown, or there are no dates
+     */
+    @Override
+    protected PassageRequest readInternal(Class<? extends PassageRequest> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try (JsonParser parser = objectMapper.createParser(inputMessage.getBody())) {
+            return read(parser, inputMessage, validator);
+        } catch (JacksonException ex) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + ex.getOriginalMessage(), ex, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(PassageRequest request, HttpOutputMessage outputMessage) {
+        // Not reached: canWrite is false for every media type
+    }
+
+    private static PassageRequest read(JsonParser parser, HttpInputMessage inputMessage, Validator validator) {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new HttpMessageNotReadableException("Expected a JSON object", inputMessage);
+        }
+
+        VehicleType vehicleType = null;
+        long[] passages = new long[0];
+        int count = 0;
+        int dates = 0;
+        DateTimeParseException invalidDate = null;
+        CharArraySequence text = new CharArraySequence();
+
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("vehicleType".equals(name)) {
+                vehicleType = value == JsonToken.VALUE_NULL ? null : vehicleType(parser.getString());
+            } else if ("dates".equals(name)) {
+                // As with binding, a repeated property replaces the earlier value
+                passages = new long[INITIAL_PASSAGES];
+                count = 0;
+                dates = 0;
+                invalidDate = null;
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                if (value != JsonToken.START_ARRAY) {
+                    throw new HttpMessageNotReadableException("dates must be an array", inputMessage);
+                }
+                for (JsonToken date = parser.nextToken(); date != JsonToken.END_ARRAY; date = parser.nextToken()) {
+                    if (date == JsonToken.START_OBJECT || date == JsonToken.START_ARRAY) {
+                        throw new HttpMessageNotReadableException("dates must be strings", inputMessage);
+                    }
+                    dates++;
+                    if (invalidDate != null) {
+                        continue;
+                    }
+                    try {
+                        long passage = parseDate(parser, date, text);
+                        if (count == passages.length) {
+                            passages = Arrays.copyOf(passages, count * 2);
+                        }
+                        passages[count++] = passage;
+                    } catch (DateTimeParseException ex) {
+                        invalidDate = ex;
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        // The dates are already epoch-seconds; the constraints only look at how many there were
+        validate(validator, new TaxRequest(vehicleType, Collections.nCopies(dates, "")));
+        return new PassageRequest(vehicleType, Arrays.copyOf(passages, count), invalidDate);
+    }
+
+    /**
+     * @throws IllegalArgumentException with each violation as "field: message", in field order
+     */
+    private static void validate(Validator validator, TaxRequest request) {
+        Set<ConstraintViolation<TaxRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return;
+        }
+        List<String> errors = new ArrayList<>(violations.size());
+        for (RecordComponent field : FIELDS) {
+            for (ConstraintViolation<TaxRequest> violation : violations) {
+                if (violation.getPropertyPath().toString().equals(field.getName())) {
+                    errors.add(field.getName() + ": " + violation.getMessage());
+                }
+            }
+        }
+        throw new IllegalArgumentException(String.join("; ", errors));
+    }
+
+    private static VehicleType vehicleType(String name) {
+        try {
+            return VehicleType.valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("vehicleType: unknown vehicle type " + name);
+        }
+    }
+
+    private static long parseDate(JsonParser parser, JsonToken token, CharArraySequence text) {
+        if (token == JsonToken.VALUE_STRING) {
+            return PassageTimestampParser.parseEpochSecond(
+                    text.wrap(parser.getStringCharacters(), parser.getStringOffset(), parser.getStringLength()));
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            throw new DateTimeParseException("Text 'null' could not be parsed", "null", 0);
+        }
+        // Numbers and booleans are coerced to text, as binding into a String would
+        return PassageTimestampParser.parseEpochSecond(parser.getString());
+    }
+
+    /**
+     * A reusable view over a range of a char array.
+     */
+    private static final class CharArraySequence implements CharSequence {
+        private char[] chars;
+        private int offset;
+        private int length;
+
+        CharArraySequence wrap(char[] chars, int offset, int length) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, offset, length);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.gothenburg.tax.controller;
+
+import com.gothenburg.tax.model.PassageFileFormat;
+import com.gothenburg.tax.model.TaxRuleConfig;
+import com.gothenburg.tax.model.WhatIfReport;
+import com.gothenburg.tax.service.WhatIfTaxService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * REST controller for what-if comparisons of candidate tax rules.
+ *
+ * POST /api/tax/what-if?dataset=passages-2013.csv
+ *   - Body: candidate rules, in the rule file format
+ *   - dataset: a passage file in tax.what-if.dataset-directory (.csv or .bin)
+ *   - Optional query param: ?city=gothenburg (defaults to gothenburg)
+ *
+ * POST /api/tax/what-if/upload (multipart/form-data)
+ *   - rules: candidate rules, as an application/json part
+ *   - passages: the passage file
+ *   - Optional query params: ?format=csv|binary (defaults to csv), ?city=gothenburg
+ *
+ * Both return the tax under the current and the candidate rules in total, per vehicle
+ * type and per month, and how the change is distributed over vehicles.
+ */
+@RestController
+@RequestMapping("/api/tax/what-if")
+public class WhatIfController {
+
+    private final WhatIfTaxService whatIfTaxService;
+
+    public WhatIfController(WhatIfTaxService whatIfTaxService) {
+        this.whatIfTaxService = whatIfTaxService;
+    }
+
+    @PostMapping
+    public ResponseEntity<WhatIfReport> compare(
+            @RequestBody TaxRuleConfig candidate,
+            @RequestParam String dataset,
+            @RequestParam(defaultValue = "gothenburg") String city) throws IOException {
+
+        return ResponseEntity.ok(whatIfTaxService.compare(dataset, candidate, city));
+    }
+
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<WhatIfReport> compareUpload(
+            @RequestPart("rules") TaxRuleConfig candidate,
+            @RequestPart("passages") MultipartFile passages,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "gothenburg") String city) throws IOException {
+
+        PassageFileFormat fileFormat = PassageFileFormat.fromName(format);
+        Path file = Files.createTempFile("tax-what-if-", ".upload");
+        try {
+            passages.transferTo(file);
+            return ResponseEntity.ok(whatIfTaxService.compare(file, fileFormat, candidate, city));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
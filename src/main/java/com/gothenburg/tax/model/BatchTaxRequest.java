@@ -0,0 +1,15 @@
+package com.gothenburg.tax.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+
+/**
+ * Request payload for calculating congestion tax for many vehicles at once.
+ *
+ * @param vehicles the vehicles to calculate, answered in the same order
+ */
+public record BatchTaxRequest(
+        @NotEmpty(message = "vehicles must contain at least one entry")
+        List<@Valid VehicleTaxRequest> vehicles
+) {}
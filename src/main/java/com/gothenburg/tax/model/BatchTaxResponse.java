@@ -0,0 +1,12 @@
+package com.gothenburg.tax.model;
+
+import java.util.List;
+
+/**
+ * Response payload for a batch calculation.
+ *
+ * @param results per-vehicle results, in the same order as the request
+ */
+public record BatchTaxResponse(
+        List<VehicleTaxResponse> results
+) {}
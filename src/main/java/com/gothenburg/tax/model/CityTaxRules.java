@@ -0,0 +1,161 @@
+package com.gothenburg.tax.model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * All effective-dated versions of one city's tax rules.
+ *
+ * Versions are sorted by their first valid day and may not overlap, so the version for
+ * a day is found by binary search. Callers walking days in order can keep using the
+ * previous version while {@link CompiledTaxRules#appliesTo(int)} holds, which makes a
+ * request spanning several versions cost the same as one that spans a single version.
+ *
+ * Each version remembers the source it was loaded from, so reloading a rule file
+ * replaces exactly the version that file contributed. The snapshot counts how many such
+ * reloads it has been through.
+ */
+public final class CityTaxRules {
+
+    private final Map<String, CompiledTaxRules> bySource;
+    private final CompiledTaxRules[] versions;
+    private final int[] validFromDays;
+    private final String version;
+    private final Instant loadedAt;
+    private final int reloads;
+
+    private CityTaxRules(Map<String, CompiledTaxRules> bySource, int reloads) {
+        CompiledTaxRules[] sorted = bySource.values().toArray(new CompiledTaxRules[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(CompiledTaxRules::getValidFromDay));
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].getValidFromDay() <= sorted[i - 1].getValidToDay()) {
+                throw new IllegalArgumentException("Tax rules for " + sorted[i].getCity() + " overlap: "
+                        + describe(sorted[i - 1]) + " and " + describe(sorted[i]));
+            }
+        }
+
+        this.bySource = bySource;
+        this.versions = sorted;
+        this.validFromDays = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            validFromDays[i] = sorted[i].getValidFromDay();
+        }
+        this.version = Arrays.stream(sorted).map(CompiledTaxRules::getVersion).collect(Collectors.joining(","));
+        this.loadedAt = Arrays.stream(sorted).map(CompiledTaxRules::getLoadedAt).max(Comparator.naturalOrder())
+                .orElseThrow();
+        this.reloads = reloads;
+    }
+
+    /**
+     * Rules for a city with a single version.
+     */
+    public static CityTaxRules of(String source, CompiledTaxRules rules) {
+        Map<String, CompiledTaxRules> bySource = new LinkedHashMap<>();
+        bySource.put(source, rules);
+        return new CityTaxRules(bySource, 0);
+    }
+
+    /**
+     * A copy with the version from {@code source} added or replaced.
+     *
+     * @throws IllegalArgumentException if the version overlaps another version's dates
+     */
+    public CityTaxRules with(String source, CompiledTaxRules rules) {
+        return with(source, rules, reloads);
+    }
+
+    /**
+     * {@link #with} for a rule file that changed while loaded, counted as a reload.
+     *
+     * @throws IllegalArgumentException if the version overlaps another version's dates
+     */
+    public CityTaxRules reloaded(String source, CompiledTaxRules rules) {
+        return with(source, rules, reloads + 1);
+    }
+
+    private CityTaxRules with(String source, CompiledTaxRules rules, int reloads) {
+        Map<String, CompiledTaxRules> copy = new LinkedHashMap<>(bySource);
+        copy.put(source, rules);
+        return new CityTaxRules(copy, reloads);
+    }
+
+    /**
+     * The version in effect on an epoch-day, or null if no version covers it.
+     */
+    public CompiledTaxRules forDay(int epochDay) {
+        int i = Arrays.binarySearch(validFromDays, epochDay);
+        if (i < 0) {
+            i = -i - 2; // last version starting before the day
+        }
+        if (i < 0 || !versions[i].appliesTo(epochDay)) {
+            return null;
+        }
+        return versions[i];
+    }
+
+    /**
+     * The version in effect on a date, or null if no version covers it.
+     */
+    public CompiledTaxRules forDate(LocalDate date) {
+        return forDay((int) date.toEpochDay());
+    }
+
+    /**
+     * The version loaded from {@code source}, or null.
+     */
+    public CompiledTaxRules forSource(String source) {
+        return bySource.get(source);
+    }
+
+    public String getCity() { return versions[0].getCity(); }
+
+    /**
+     * All versions, ordered by effective date.
+     */
+    public List<CompiledTaxRules> getVersions() { return List.of(versions); }
+
+    /**
+     * The versions of all rule files, comma separated in effective-date order.
+     */
+    public String getVersion() { return version; }
+
+    /**
+     * When the most recently read of the rule files was loaded.
+     */
+    public Instant getLoadedAt() { return loadedAt; }
+
+    /**
+     * How many times a rule file of this city has been reloaded since the city was loaded.
+     */
+    public int getReloads() { return reloads; }
+
+    /**
+     * Whether the vehicle type is toll-free under every version.
+     */
+    public boolean isTollFreeVehicle(VehicleType vehicleType) {
+        for (CompiledTaxRules version : versions) {
+            if (!version.isTollFreeVehicle(vehicleType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long estimatedSizeBytes() {
+        long total = 64;
+        for (CompiledTaxRules version : versions) {
+            total += version.estimatedSizeBytes();
+        }
+        return total;
+    }
+
+    private static String describe(CompiledTaxRules rules) {
+        return rules.getValidFrom() + " - " + rules.getValidTo();
+    }
+}
@@ -0,0 +1,221 @@
+package com.gothenburg.tax.model;
+
+import com.gothenburg.tax.model.TaxRuleConfig.TimeRange;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable, precomputed form of a {@link TaxRuleConfig}.
+ *
+ * All string parsing happens once in {@link #compile(TaxRuleConfig)}; the calculator
+ * only ever reads from the compiled tables, so a single instance can be shared
+ * safely between concurrent requests.
+ *
+ * Each snapshot carries the version of the rule file it was compiled from, so a
+ * response can be traced back to the exact rules that produced it.
+ */
+public final class CompiledTaxRules {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final String city;
+    private final String version;
+    private final Instant loadedAt;
+    private final int year;
+    private final int validFromDay;
+    private final int validToDay;
+    private final String currency;
+    private final int maxDailyTax;
+    private final int singleChargeWindowMinutes;
+    private final int[] feeByMinute;
+    private final Set<VehicleType> tollFreeVehicles;
+    private final boolean[] tollFreeMonths;
+    private final Set<LocalDate> publicHolidays;
+    private final TollFreeCalendar tollFreeCalendar;
+
+    private CompiledTaxRules(TaxRuleConfig config, String version, Instant loadedAt, int validFromDay,
+                             int validToDay, int[] feeByMinute, Set<VehicleType> tollFreeVehicles,
+                             boolean[] tollFreeMonths, Set<LocalDate> publicHolidays) {
+        this.city = config.getCity();
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.year = config.getYear();
+        this.validFromDay = validFromDay;
+        this.validToDay = validToDay;
+        this.currency = config.getCurrency();
+        this.maxDailyTax = config.getMaxDailyTax();
+        this.singleChargeWindowMinutes = config.getSingleChargeWindowMinutes();
+        this.feeByMinute = feeByMinute;
+        this.tollFreeVehicles = tollFreeVehicles;
+        this.tollFreeMonths = tollFreeMonths;
+        this.publicHolidays = publicHolidays;
+        this.tollFreeCalendar = TollFreeCalendar.build(year, tollFreeMonths, publicHolidays);
+    }
+
+    /**
+     * Validate and compile a raw rule config.
+     *
+     * @param version  identifies the rule file content, e.g. a hash of it
+     * @param loadedAt when the rule file was read
+     * @throws IllegalArgumentException if the config is incomplete or contains invalid values
+     */
+    public static CompiledTaxRules compile(TaxRuleConfig config, String version, Instant loadedAt) {
+        if (config.getCity() == null || config.getCity().isBlank()) {
+            throw new IllegalArgumentException("Tax rules must define a city");
+        }
+        if (config.getTimeRanges() == null || config.getTimeRanges().isEmpty()) {
+            throw new IllegalArgumentException("Tax rules for " + config.getCity() + " must define timeRanges");
+        }
+        if (config.getMaxDailyTax() < 0 || config.getSingleChargeWindowMinutes() < 0) {
+            throw new IllegalArgumentException(
+                    "Tax rules for " + config.getCity() + " must not have negative maxDailyTax or window");
+        }
+
+        int validFromDay = config.getValidFrom() == null
+                ? Integer.MIN_VALUE : (int) LocalDate.parse(config.getValidFrom()).toEpochDay();
+        int validToDay = config.getValidTo() == null
+                ? Integer.MAX_VALUE : (int) LocalDate.parse(config.getValidTo()).toEpochDay();
+        if (validToDay < validFromDay) {
+            throw new IllegalArgumentException(
+                    "Tax rules for " + config.getCity() + " have validTo before validFrom");
+        }
+
+        Set<VehicleType> vehicles = EnumSet.noneOf(VehicleType.class);
+        for (String type : nullToEmpty(config.getTollFreeVehicleTypes())) {
+            vehicles.add(VehicleType.valueOf(type));
+        }
+
+        boolean[] months = new boolean[13];
+        for (Integer month : nullToEmpty(config.getTollFreeMonths())) {
+            if (month == null || month < 1 || month > 12) {
+                throw new IllegalArgumentException("Invalid toll-free month: " + month);
+            }
+            months[month] = true;
+        }
+
+        Set<LocalDate> holidays = new HashSet<>();
+        for (String date : nullToEmpty(config.getPublicHolidays())) {
+            holidays.add(LocalDate.parse(date));
+        }
+
+        return new CompiledTaxRules(config, version, loadedAt, validFromDay, validToDay, compileFeeTable(config.getTimeRanges()),
+                Collections.unmodifiableSet(vehicles), months, Collections.unmodifiableSet(holidays));
+    }
+
+    /**
+     * Expand the time ranges into one fee per minute of the day. As with the original
+     * linear scan, the first range covering a minute wins and uncovered minutes cost 0.
+     */
+    private static int[] compileFeeTable(List<TimeRange> ranges) {
+        int[] fees = new int[MINUTES_PER_DAY];
+        boolean[] assigned = new boolean[MINUTES_PER_DAY];
+
+        for (TimeRange range : ranges) {
+            int from = minuteOfDay(range.getFromTime());
+            int to = minuteOfDay(range.getToTime());
+            if (range.getAmount() < 0) {
+                throw new IllegalArgumentException("Negative fee for time range " + range.getFrom());
+            }
+
+            // A range whose end is before its start wraps midnight (e.g. 18:30 - 05:59)
+            int length = to >= from ? to - from + 1 : MINUTES_PER_DAY - from + to + 1;
+            for (int i = 0; i < length; i++) {
+                int minute = (from + i) % MINUTES_PER_DAY;
+                if (!assigned[minute]) {
+                    assigned[minute] = true;
+                    fees[minute] = range.getAmount();
+                }
+            }
+        }
+        return fees;
+    }
+
+    private static int minuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+
+    public String getCity() { return city; }
+
+    public String getVersion() { return version; }
+
+    public Instant getLoadedAt() { return loadedAt; }
+
+    public int getYear() { return year; }
+
+    public int getValidFromDay() { return validFromDay; }
+
+    public int getValidToDay() { return validToDay; }
+
+    /**
+     * First day the rules apply to, or null if they have no start date.
+     */
+    public LocalDate getValidFrom() {
+        return validFromDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(validFromDay);
+    }
+
+    /**
+     * Last day the rules apply to, or null if they have no end date.
+     */
+    public LocalDate getValidTo() {
+        return validToDay == Integer.MAX_VALUE ? null : LocalDate.ofEpochDay(validToDay);
+    }
+
+    /**
+     * Whether the rules are in effect on the given epoch-day.
+     */
+    public boolean appliesTo(int epochDay) {
+        return epochDay >= validFromDay && epochDay <= validToDay;
+    }
+
+    public String getCurrency() { return currency; }
+
+    public int getMaxDailyTax() { return maxDailyTax; }
+
+    public int getSingleChargeWindowMinutes() { return singleChargeWindowMinutes; }
+
+    public Set<VehicleType> getTollFreeVehicles() { return tollFreeVehicles; }
+
+    public Set<LocalDate> getPublicHolidays() { return publicHolidays; }
+
+    public TollFreeCalendar getTollFreeCalendar() { return tollFreeCalendar; }
+
+    /**
+     * Fee for the given minute of the day (0 - 1439).
+     */
+    public int feeAt(int minuteOfDay) {
+        return feeByMinute[minuteOfDay];
+    }
+
+    public boolean isTollFreeVehicle(VehicleType vehicleType) {
+        return tollFreeVehicles.contains(vehicleType);
+    }
+
+    public boolean isTollFreeMonth(int month) {
+        return tollFreeMonths[month];
+    }
+
+    public boolean isPublicHoliday(LocalDate date) {
+        return publicHolidays.contains(date);
+    }
+
+    /**
+     * Rough retained heap size of this snapshot in bytes, for metrics.
+     */
+    public long estimatedSizeBytes() {
+        return 128                              // object headers and scalar fields
+                + 16 + 4L * feeByMinute.length
+                + 16 + tollFreeMonths.length
+                + 64L * publicHolidays.size()   // hash set node plus LocalDate
+                + tollFreeCalendar.estimatedSizeBytes();
+    }
+}
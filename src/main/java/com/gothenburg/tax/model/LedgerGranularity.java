@@ -0,0 +1,22 @@
+package com.gothenburg.tax.model;
+
+import java.util.Locale;
+
+/**
+ * Period length for ledger rollups.
+ */
+public enum LedgerGranularity {
+    MONTH,
+    YEAR;
+
+    /**
+     * @throws IllegalArgumentException if the name is not a supported granularity
+     */
+    public static LedgerGranularity fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unsupported ledger period: " + name + " (expected month or year)");
+        }
+    }
+}
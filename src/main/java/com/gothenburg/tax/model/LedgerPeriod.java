@@ -0,0 +1,14 @@
+package com.gothenburg.tax.model;
+
+/**
+ * Tax a vehicle owed in one month or year, according to the ledger.
+ *
+ * @param period    the month (yyyy-MM) or year (yyyy)
+ * @param totalTax  total tax for the period (in SEK)
+ * @param taxedDays number of days in the period with tax owed
+ */
+public record LedgerPeriod(
+        String period,
+        long totalTax,
+        int taxedDays
+) {}
@@ -0,0 +1,16 @@
+package com.gothenburg.tax.model;
+
+import java.util.List;
+
+/**
+ * A vehicle's ledger totals per month or year.
+ *
+ * @param vehicleId   the vehicle identifier
+ * @param granularity the period length
+ * @param periods     periods with tax owed, oldest first
+ */
+public record LedgerRollup(
+        String vehicleId,
+        LedgerGranularity granularity,
+        List<LedgerPeriod> periods
+) {}
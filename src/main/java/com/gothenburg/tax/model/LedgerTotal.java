@@ -0,0 +1,18 @@
+package com.gothenburg.tax.model;
+
+/**
+ * Tax a vehicle owed over a range of days, according to the ledger.
+ *
+ * @param vehicleId the vehicle identifier
+ * @param from      first day of the range (yyyy-MM-dd), inclusive
+ * @param to        last day of the range (yyyy-MM-dd), inclusive
+ * @param totalTax  total tax over the range (in SEK)
+ * @param taxedDays number of days in the range with tax owed
+ */
+public record LedgerTotal(
+        String vehicleId,
+        String from,
+        String to,
+        long totalTax,
+        int taxedDays
+) {}
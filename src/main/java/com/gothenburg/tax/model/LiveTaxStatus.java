@@ -0,0 +1,16 @@
+package com.gothenburg.tax.model;
+
+/**
+ * Running congestion tax for a vehicle on the current day.
+ *
+ * @param vehicleId the vehicle identifier
+ * @param date      the current day (yyyy-MM-dd), or null if no passages have been received yet
+ * @param totalTax  tax owed so far today (in SEK), with the daily cap applied
+ * @param passages  number of passages received today
+ */
+public record LiveTaxStatus(
+        String vehicleId,
+        String date,
+        int totalTax,
+        int passages
+) {}
@@ -0,0 +1,22 @@
+package com.gothenburg.tax.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * A single gantry passage, as read from a line-per-passage log or a live feed.
+ *
+ * @param vehicleId   identifier of the passing vehicle
+ * @param vehicleType the type of vehicle
+ * @param timestamp   passage timestamp (e.g. "2013-02-08 06:27:00")
+ */
+public record Passage(
+        @NotBlank(message = "vehicleId is required")
+        String vehicleId,
+
+        @NotNull(message = "vehicleType is required")
+        VehicleType vehicleType,
+
+        @NotBlank(message = "timestamp is required")
+        String timestamp
+) {}
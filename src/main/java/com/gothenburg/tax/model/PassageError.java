@@ -0,0 +1,12 @@
+package com.gothenburg.tax.model;
+
+/**
+ * A passage log line that could not be processed, emitted in place of a result.
+ *
+ * @param line  1-based line number in the request body
+ * @param error why the line was rejected
+ */
+public record PassageError(
+        long line,
+        String error
+) {}
@@ -0,0 +1,53 @@
+package com.gothenburg.tax.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Passage file formats for offline bulk processing.
+ *
+ * CSV:    vehicleId,vehicleType,timestamp per line, with an optional header row, as for
+ *         {@link PassageLogFormat#CSV}.
+ * BINARY: fixed-width {@value #RECORD_BYTES}-byte records: the vehicle id as up to
+ *         {@value #ID_BYTES} ASCII bytes padded with zeros, one byte of
+ *         {@link VehicleType} ordinal, then the passage time as a big-endian long of
+ *         epoch-seconds (local time, as {@code PassageTimestampParser} produces).
+ */
+public enum PassageFileFormat {
+    CSV,
+    BINARY;
+
+    public static final int RECORD_BYTES = 32;
+    public static final int ID_BYTES = 23;
+
+    /**
+     * @throws IllegalArgumentException if the name is not a supported format
+     */
+    public static PassageFileFormat fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unsupported passage file format: " + name + " (expected csv or binary)");
+        }
+    }
+
+    /**
+     * Append one binary record to {@code out}.
+     *
+     * @throws IllegalArgumentException if the vehicle id is empty, not ASCII or too long
+     */
+    public static void putRecord(ByteBuffer out, String vehicleId, VehicleType vehicleType, long epochSecond) {
+        byte[] id = vehicleId.getBytes(StandardCharsets.US_ASCII);
+        if (id.length == 0 || id.length > ID_BYTES || !vehicleId.chars().allMatch(c -> c > ' ' && c < 0x7F)) {
+            throw new IllegalArgumentException("vehicleId must be 1 - " + ID_BYTES + " printable ASCII characters: "
+                    + vehicleId);
+        }
+        out.put(id);
+        for (int i = id.length; i < ID_BYTES; i++) {
+            out.put((byte) 0);
+        }
+        out.put((byte) vehicleType.ordinal());
+        out.putLong(epochSecond);
+    }
+}
@@ -0,0 +1,33 @@
+package com.gothenburg.tax.model;
+
+/**
+ * Supported line-per-passage input formats.
+ *
+ * NDJSON: one {"vehicleId": ..., "vehicleType": ..., "timestamp": ...} object per line.
+ * CSV:    vehicleId,vehicleType,timestamp per line, with an optional header row.
+ */
+public enum PassageLogFormat {
+    NDJSON,
+    CSV;
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    public static final String CSV_MEDIA_TYPE = "text/csv";
+
+    /**
+     * Resolve the format from a request Content-Type header.
+     *
+     * @throws IllegalArgumentException if the content type is not supported
+     */
+    public static PassageLogFormat fromContentType(String contentType) {
+        if (contentType != null) {
+            String type = contentType.toLowerCase();
+            if (type.startsWith(NDJSON_MEDIA_TYPE)) {
+                return NDJSON;
+            }
+            if (type.startsWith(CSV_MEDIA_TYPE)) {
+                return CSV;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported passage log content type: " + contentType);
+    }
+}
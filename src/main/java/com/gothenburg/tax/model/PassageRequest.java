@@ -0,0 +1,27 @@
+package com.gothenburg.tax.model;
+
+import java.time.format.DateTimeParseException;
+
+/**
+ * A tax request whose passages are already epoch-seconds, as read from the binary wire
+ * format (see {@link TaxBinaryFormat}) or streamed from a JSON {@link TaxRequest}.
+ *
+ * A date that fails to parse does not fail the read, since toll-free vehicles are never
+ * charged and so their dates are never checked. It is kept as {@code invalidDate}, for
+ * the caller to throw once it knows the vehicle is charged; {@code passages} is then
+ * incomplete.
+ *
+ * @param vehicleType the type of vehicle
+ * @param passages    passage times as seconds since 1970-01-01 00:00:00 local time, in any order
+ * @param invalidDate the first date that could not be parsed, or null
+ */
+public record PassageRequest(
+        VehicleType vehicleType,
+        long[] passages,
+        DateTimeParseException invalidDate
+) {
+
+    public PassageRequest(VehicleType vehicleType, long[] passages) {
+        this(vehicleType, passages, null);
+    }
+}
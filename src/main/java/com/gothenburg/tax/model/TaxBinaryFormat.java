@@ -0,0 +1,236 @@
+package com.gothenburg.tax.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of tax requests and responses, negotiated with the
+ * {@value #MEDIA_TYPE} content type. JSON stays the default.
+ *
+ * Integers are unsigned LEB128 varints; signed values are zig-zag encoded first.
+ * Passages are epoch-seconds, each written as the difference from the previous one, so a
+ * sorted history costs two or three bytes per passage instead of a 19-character string.
+ * Decoded passages must lie in the years 0000 - 9999, the range the text form can express.
+ *
+ * Request:  version, vehicle type, count, count passage deltas
+ * Response: version, vehicle type, total tax, toll-free flag, rule version (length + UTF-8),
+ *           day count, day count epoch-day deltas, then day count amounts
+ *
+ * The per-day results are written as two columns: all days, then all amounts. Vehicle
+ * types are written by ordinal, so new types may only be added at the end of
+ * {@link VehicleType}.
+ */
+public final class TaxBinaryFormat {
+
+    public static final String MEDIA_TYPE = "application/x-congestion-tax";
+
+    private static final int VERSION = 1;
+
+    private static final long MIN_PASSAGE = LocalDateTime.of(0, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final long MAX_PASSAGE = LocalDateTime.of(9999, 12, 31, 23, 59, 59).toEpochSecond(ZoneOffset.UTC);
+
+    private TaxBinaryFormat() {}
+
+    public static byte[] writeRequest(PassageRequest request) {
+        Writer out = new Writer(8 + request.passages().length * 3);
+        out.write(VERSION);
+        out.writeVarint(request.vehicleType().ordinal());
+        out.writeVarint(request.passages().length);
+        long previous = 0;
+        for (long passage : request.passages()) {
+            out.writeSignedVarint(passage - previous);
+            previous = passage;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a valid request
+     */
+    public static PassageRequest readRequest(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        in.readVersion();
+        VehicleType vehicleType = in.readVehicleType();
+        long[] passages = new long[in.readCount()];
+        long previous = 0;
+        for (int i = 0; i < passages.length; i++) {
+            previous += in.readSignedVarint();
+            if (previous < MIN_PASSAGE || previous > MAX_PASSAGE) {
+                throw new IllegalArgumentException("Passage " + i + " out of range: " + previous);
+            }
+            passages[i] = previous;
+        }
+        in.expectEnd();
+        return new PassageRequest(vehicleType, passages);
+    }
+
+    public static byte[] writeResponse(TaxResponse response) {
+        Map<String, Integer> taxByDate = response.taxByDate();
+        Writer out = new Writer(32 + taxByDate.size() * 3);
+        out.write(VERSION);
+        out.writeVarint(response.vehicleType().ordinal());
+        out.writeVarint(response.totalTax());
+        out.write(response.tollFree() ? 1 : 0);
+        byte[] ruleVersion = response.ruleVersion() == null
+                ? new byte[0] : response.ruleVersion().getBytes(StandardCharsets.UTF_8);
+        out.writeVarint(ruleVersion.length);
+        out.writeBytes(ruleVersion);
+
+        out.writeVarint(taxByDate.size());
+        long previous = 0;
+        for (String date : taxByDate.keySet()) {
+            long epochDay = epochDay(date);
+            out.writeSignedVarint(epochDay - previous);
+            previous = epochDay;
+        }
+        for (int amount : taxByDate.values()) {
+            out.writeVarint(amount);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a valid response
+     */
+    public static TaxResponse readResponse(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        in.readVersion();
+        VehicleType vehicleType = in.readVehicleType();
+        int totalTax = in.readInt();
+        boolean tollFree = in.readByte() != 0;
+        String ruleVersion = in.readString();
+
+        long[] epochDays = new long[in.readCount()];
+        long previous = 0;
+        for (int i = 0; i < epochDays.length; i++) {
+            previous += in.readSignedVarint();
+            epochDays[i] = previous;
+        }
+        Map<String, Integer> taxByDate = new LinkedHashMap<>();
+        for (long epochDay : epochDays) {
+            taxByDate.put(LocalDate.ofEpochDay(epochDay).toString(), in.readInt());
+        }
+        in.expectEnd();
+        return new TaxResponse(vehicleType, totalTax, taxByDate, tollFree, ruleVersion);
+    }
+
+    /**
+     * Epoch-day of a "yyyy-MM-dd" date, as produced by {@link LocalDate#toString()}.
+     */
+    private static long epochDay(String date) {
+        if (date.length() != 10) {
+            return LocalDate.parse(date).toEpochDay();
+        }
+        int year = (date.charAt(0) - '0') * 1000 + (date.charAt(1) - '0') * 100
+                + (date.charAt(2) - '0') * 10 + (date.charAt(3) - '0');
+        int month = (date.charAt(5) - '0') * 10 + (date.charAt(6) - '0');
+        int day = (date.charAt(8) - '0') * 10 + (date.charAt(9) - '0');
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        Writer(int size) {
+            super(size);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated " + MEDIA_TYPE + " message");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at byte " + position);
+        }
+
+        long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readInt() {
+            long value = readVarint();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Value out of range at byte " + position);
+            }
+            return (int) value;
+        }
+
+        /**
+         * A count, checked against the bytes left so a corrupt length cannot allocate a huge array.
+         */
+        int readCount() {
+            int count = readInt();
+            if (count > bytes.length - position) {
+                throw new IllegalArgumentException("Count " + count + " exceeds the message length");
+            }
+            return count;
+        }
+
+        String readString() {
+            int length = readCount();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void readVersion() {
+            int version = readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported " + MEDIA_TYPE + " version: " + version);
+            }
+        }
+
+        VehicleType readVehicleType() {
+            int ordinal = readInt();
+            VehicleType[] types = VehicleType.values();
+            if (ordinal >= types.length) {
+                throw new IllegalArgumentException("Unknown vehicle type: " + ordinal);
+            }
+            return types[ordinal];
+        }
+
+        void expectEnd() {
+            if (position != bytes.length) {
+                throw new IllegalArgumentException("Trailing bytes after " + MEDIA_TYPE + " message");
+            }
+        }
+    }
+}
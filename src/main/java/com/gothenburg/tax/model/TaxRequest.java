@@ -7,6 +7,9 @@ import java.util.List;
 /**
  * Request payload for calculating congestion tax.
  *
+ * The calculate endpoint streams this shape into a {@link PassageRequest} instead of
+ * binding it, applying the same constraints.
+ *
  * @param vehicleType the type of vehicle
  * @param dates       list of passage timestamps in ISO format (e.g. "2013-02-08 06:27:00")
  */
@@ -9,10 +9,12 @@ import java.util.Map;
  * @param totalTax      total tax across all days (in SEK)
  * @param taxByDate     breakdown of tax per date (date string -> SEK)
  * @param tollFree      whether the vehicle type is toll-free
+ * @param ruleVersion   version of the tax rules used, for tracing a result back to its rule file
  */
 public record TaxResponse(
         VehicleType vehicleType,
         int totalTax,
         Map<String, Integer> taxByDate,
-        boolean tollFree
+        boolean tollFree,
+        String ruleVersion
 ) {}
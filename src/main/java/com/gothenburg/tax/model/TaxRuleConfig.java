@@ -1,18 +1,24 @@
 package com.gothenburg.tax.model;
 
-import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Represents the full set of congestion tax rules for a city/year,
  * loaded from an external data store (JSON file).
+ *
+ * This is the raw, mutable binding target; the calculator works on the
+ * {@link CompiledTaxRules} produced from it at load time.
+ *
+ * {@code validFrom} and {@code validTo} (inclusive, yyyy-MM-dd) limit the dates the rules
+ * apply to; either may be left out for an open-ended range.
  */
 public class TaxRuleConfig {
 
     private String city;
     private int year;
+    private String validFrom;
+    private String validTo;
     private String currency;
     private int maxDailyTax;
     private int singleChargeWindowMinutes;
@@ -21,15 +27,18 @@ public class TaxRuleConfig {
     private List<TimeRange> timeRanges;
     private List<String> publicHolidays;
 
-    private Set<VehicleType> tollFreeVehicleSet;
-    private Set<LocalDate> publicHolidaySet;
-
     public String getCity() { return city; }
     public void setCity(String city) { this.city = city; }
 
     public int getYear() { return year; }
     public void setYear(int year) { this.year = year; }
 
+    public String getValidFrom() { return validFrom; }
+    public void setValidFrom(String validFrom) { this.validFrom = validFrom; }
+
+    public String getValidTo() { return validTo; }
+    public void setValidTo(String validTo) { this.validTo = validTo; }
+
     public String getCurrency() { return currency; }
     public void setCurrency(String currency) { this.currency = currency; }
 
@@ -42,10 +51,7 @@ public class TaxRuleConfig {
     }
 
     public List<String> getTollFreeVehicleTypes() { return tollFreeVehicleTypes; }
-    public void setTollFreeVehicleTypes(List<String> tollFreeVehicleTypes) {
-        this.tollFreeVehicleTypes = tollFreeVehicleTypes;
-        this.tollFreeVehicleSet = null; // invalidate cache
-    }
+    public void setTollFreeVehicleTypes(List<String> tollFreeVehicleTypes) { this.tollFreeVehicleTypes = tollFreeVehicleTypes; }
 
     public List<Integer> getTollFreeMonths() { return tollFreeMonths; }
     public void setTollFreeMonths(List<Integer> tollFreeMonths) { this.tollFreeMonths = tollFreeMonths; }
@@ -54,30 +60,7 @@ public class TaxRuleConfig {
     public void setTimeRanges(List<TimeRange> timeRanges) { this.timeRanges = timeRanges; }
 
     public List<String> getPublicHolidays() { return publicHolidays; }
-    public void setPublicHolidays(List<String> publicHolidays) {
-        this.publicHolidays = publicHolidays;
-        this.publicHolidaySet = null; // invalidate cache
-    }
-
-    public Set<VehicleType> getTollFreeVehicleSet() {
-        if (tollFreeVehicleSet == null && tollFreeVehicleTypes != null) {
-            tollFreeVehicleSet = new java.util.HashSet<>();
-            for (String type : tollFreeVehicleTypes) {
-                tollFreeVehicleSet.add(VehicleType.valueOf(type));
-            }
-        }
-        return tollFreeVehicleSet;
-    }
-
-    public Set<LocalDate> getPublicHolidaySet() {
-        if (publicHolidaySet == null && publicHolidays != null) {
-            publicHolidaySet = new java.util.HashSet<>();
-            for (String date : publicHolidays) {
-                publicHolidaySet.add(LocalDate.parse(date));
-            }
-        }
-        return publicHolidaySet;
-    }
+    public void setPublicHolidays(List<String> publicHolidays) { this.publicHolidays = publicHolidays; }
 
     /**
      * A time range with its associated tax amount.
@@ -0,0 +1,95 @@
+package com.gothenburg.tax.model;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Precomputed toll-free decision per day, one bit per epoch-day.
+ *
+ * The bitset covers every full year the rules span (the rule year plus any
+ * year a public holiday falls in). Days outside that range are evaluated
+ * directly from the weekend, month and holiday rules.
+ */
+public final class TollFreeCalendar {
+
+    private static final int SATURDAY = 5;
+    private static final int SUNDAY = 6;
+
+    private final int firstDay;
+    private final int dayCount;
+    private final long[] words;
+    private final boolean[] tollFreeMonths;
+    private final Set<LocalDate> publicHolidays;
+
+    private TollFreeCalendar(int firstDay, int dayCount, boolean[] tollFreeMonths, Set<LocalDate> publicHolidays) {
+        this.firstDay = firstDay;
+        this.dayCount = dayCount;
+        this.words = new long[(dayCount + 63) >>> 6];
+        this.tollFreeMonths = tollFreeMonths;
+        this.publicHolidays = publicHolidays;
+    }
+
+    /**
+     * Build the calendar for the given rule year and holidays.
+     *
+     * @param tollFreeMonths toll-free flags indexed by month (1 - 12)
+     */
+    static TollFreeCalendar build(int year, boolean[] tollFreeMonths, Set<LocalDate> publicHolidays) {
+        int fromYear = year;
+        int toYear = year;
+        for (LocalDate holiday : publicHolidays) {
+            fromYear = Math.min(fromYear, holiday.getYear());
+            toYear = Math.max(toYear, holiday.getYear());
+        }
+
+        int first = (int) LocalDate.of(fromYear, 1, 1).toEpochDay();
+        int last = (int) LocalDate.of(toYear, 12, 31).toEpochDay();
+        TollFreeCalendar calendar = new TollFreeCalendar(first, last - first + 1, tollFreeMonths, publicHolidays);
+
+        for (int i = 0; i < calendar.dayCount; i++) {
+            if (calendar.evaluate(first + i)) {
+                calendar.words[i >>> 6] |= 1L << i;
+            }
+        }
+        return calendar;
+    }
+
+    /**
+     * Whether the given epoch-day is toll-free.
+     */
+    public boolean isTollFree(int epochDay) {
+        int index = epochDay - firstDay;
+        if (index >= 0 && index < dayCount) {
+            return (words[index >>> 6] & (1L << index)) != 0;
+        }
+        return evaluate(epochDay);
+    }
+
+    public int getFirstDay() { return firstDay; }
+
+    public int getLastDay() { return firstDay + dayCount - 1; }
+
+    /**
+     * Apply the toll-free rules to a single day: weekends, toll-free months,
+     * public holidays and the day before a public holiday.
+     */
+    private boolean evaluate(int epochDay) {
+        int dayOfWeek = Math.floorMod(epochDay + 3, 7); // 1970-01-01 was a Thursday; Monday = 0
+        if (dayOfWeek == SATURDAY || dayOfWeek == SUNDAY) {
+            return true;
+        }
+
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        if (tollFreeMonths[date.getMonthValue()]) {
+            return true;
+        }
+        return publicHolidays.contains(date) || publicHolidays.contains(date.plusDays(1));
+    }
+
+    /**
+     * Rough retained heap size in bytes, excluding the shared month and holiday tables.
+     */
+    long estimatedSizeBytes() {
+        return 32 + 16 + 8L * words.length;
+    }
+}
@@ -0,0 +1,18 @@
+package com.gothenburg.tax.model;
+
+/**
+ * Tax owed by one vehicle for one day, emitted by the streaming endpoint.
+ *
+ * @param vehicleId   identifier of the vehicle
+ * @param vehicleType the type of vehicle
+ * @param date        the day (yyyy-MM-dd)
+ * @param tax         tax for the day (in SEK)
+ * @param tollFree    whether the vehicle type is toll-free
+ */
+public record VehicleDayTax(
+        String vehicleId,
+        VehicleType vehicleType,
+        String date,
+        int tax,
+        boolean tollFree
+) {}
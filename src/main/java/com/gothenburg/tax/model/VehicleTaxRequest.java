@@ -0,0 +1,24 @@
+package com.gothenburg.tax.model;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * A single vehicle's passages within a batch request.
+ *
+ * @param vehicleId   client-supplied identifier, echoed back in the response
+ * @param vehicleType the type of vehicle
+ * @param dates       list of passage timestamps (e.g. "2013-02-08 06:27:00")
+ */
+public record VehicleTaxRequest(
+        @NotBlank(message = "vehicleId is required")
+        String vehicleId,
+
+        @NotNull(message = "vehicleType is required")
+        VehicleType vehicleType,
+
+        @NotEmpty(message = "dates must contain at least one entry")
+        List<String> dates
+) {}
@@ -0,0 +1,14 @@
+package com.gothenburg.tax.model;
+
+/**
+ * Result for a single vehicle within a batch response.
+ *
+ * @param vehicleId the client-supplied vehicle identifier
+ * @param tax       the calculated tax, or null if the vehicle could not be calculated
+ * @param error     why the vehicle could not be calculated, or null on success
+ */
+public record VehicleTaxResponse(
+        String vehicleId,
+        TaxResponse tax,
+        String error
+) {}
@@ -0,0 +1,77 @@
+package com.gothenburg.tax.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Revenue impact of candidate tax rules, from replaying a passage dataset under both the
+ * current and the candidate rules.
+ *
+ * @param city             the city whose current rules were compared
+ * @param currentVersion   version of the current rules
+ * @param passages         valid passages replayed
+ * @param vehicles         vehicles compared
+ * @param invalidRecords   dataset records skipped as invalid
+ * @param skippedVehicles  vehicles left out because no current rules cover one of their days
+ * @param total            tax over the whole dataset
+ * @param byVehicleType    tax per vehicle type
+ * @param byMonth          tax per month (yyyy-MM), oldest first
+ * @param vehicleChanges   how the change is spread over vehicles
+ * @param elapsedMillis    wall-clock time of the replay
+ */
+public record WhatIfReport(
+        String city,
+        String currentVersion,
+        long passages,
+        long vehicles,
+        long invalidRecords,
+        long skippedVehicles,
+        Totals total,
+        Map<VehicleType, Totals> byVehicleType,
+        Map<String, Totals> byMonth,
+        VehicleChanges vehicleChanges,
+        long elapsedMillis
+) {
+
+    /**
+     * Tax under each rule set (in SEK).
+     *
+     * @param current   under the current rules
+     * @param candidate under the candidate rules
+     * @param delta     candidate minus current
+     */
+    public record Totals(long current, long candidate, long delta) {
+
+        public static Totals of(long current, long candidate) {
+            return new Totals(current, candidate, candidate - current);
+        }
+    }
+
+    /**
+     * Distribution of per-vehicle changes (candidate minus current tax).
+     *
+     * @param increased    vehicles that would pay more
+     * @param decreased    vehicles that would pay less
+     * @param unchanged    vehicles that would pay the same
+     * @param minDelta     largest decrease (negative), or 0 without vehicles
+     * @param maxDelta     largest increase, or 0 without vehicles
+     * @param distribution vehicles per range of change
+     */
+    public record VehicleChanges(
+            long increased,
+            long decreased,
+            long unchanged,
+            long minDelta,
+            long maxDelta,
+            List<DeltaBucket> distribution
+    ) {}
+
+    /**
+     * Vehicles whose change falls in {@code [from, to)}.
+     *
+     * @param from     lower bound (inclusive), or null for no bound
+     * @param to       upper bound (exclusive), or null for no bound
+     * @param vehicles number of vehicles
+     */
+    public record DeltaBucket(Long from, Long to, long vehicles) {}
+}
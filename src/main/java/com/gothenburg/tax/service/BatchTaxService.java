@@ -0,0 +1,276 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.TaxResponse;
+import com.gothenburg.tax.model.VehicleTaxRequest;
+import com.gothenburg.tax.model.VehicleTaxResponse;
+import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates congestion tax for many vehicles in parallel.
+ *
+ * A batch is split into fixed-size chunks which run on a shared, bounded worker pool.
+ * Each batch keeps at most {@code maxChunksInFlight} chunks queued or running at once,
+ * so one large batch cannot occupy every worker while others wait.
+ *
+ * With {@code spring.threads.virtual.enabled} each chunk runs on its own virtual thread
+ * instead. A semaphore then takes the place of the pool's bounded queue: when every
+ * permit is taken the submitting thread calculates the chunk itself, just as the
+ * platform pool's caller-runs policy does.
+ *
+ * Either way a batch's chunks never outlive the call: if one fails or the caller is
+ * interrupted, the chunks still in flight are cancelled, and those already running are
+ * waited for, before the exception propagates.
+ */
+@Service
+public class BatchTaxService {
+
+    private final CongestionTaxCalculator calculator;
+    private final ExecutorService executor;
+    private final Semaphore virtualPermits;
+    private final int maxBatchSize;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    public BatchTaxService(
+            CongestionTaxCalculator calculator,
+            @Value("${tax.batch.max-size:10000}") int maxBatchSize,
+            @Value("${tax.batch.chunk-size:256}") int chunkSize,
+            @Value("${tax.batch.parallelism:0}") int parallelism,
+            @Value("${tax.batch.max-chunks-in-flight:0}") int maxChunksInFlight,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.calculator = calculator;
+        this.maxBatchSize = maxBatchSize;
+        this.chunkSize = Math.max(1, chunkSize);
+
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxChunksInFlight = maxChunksInFlight > 0 ? maxChunksInFlight : Math.max(1, threads / 2);
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tax-batch-", 1).factory());
+            this.virtualPermits = new Semaphore(threads * 5); // the platform pool's threads plus its queue
+        } else {
+            this.executor = newWorkerPool(threads);
+            this.virtualPermits = null;
+        }
+    }
+
+    private static ExecutorService newWorkerPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                r -> {
+                    Thread t = new Thread(r, "tax-batch-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                // A full queue means every worker is busy: let the submitting thread do the work
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Calculate the tax for each vehicle. Vehicles that fail (e.g. invalid dates) get an
+     * error entry rather than failing the whole batch.
+     *
+     * @return one response per vehicle, in input order
+     * @throws IllegalArgumentException if the batch is too large or the city is unknown
+     */
+    public List<VehicleTaxResponse> calculate(List<VehicleTaxRequest> vehicles, String city) {
+        if (vehicles.size() > maxBatchSize) {
+            throw new IllegalArgumentException(
+                    "Batch contains " + vehicles.size() + " vehicles; the maximum is " + maxBatchSize);
+        }
+        calculator.getRules(city); // fail the whole batch up front for an unknown city
+
+        VehicleTaxResponse[] results = new VehicleTaxResponse[vehicles.size()];
+        Deque<Chunk> inFlight = new ArrayDeque<>();
+
+        try {
+            for (int start = 0; start < vehicles.size(); start += chunkSize) {
+                if (inFlight.size() >= maxChunksInFlight) {
+                    // Removed only once done, so an interrupted wait still cancels it
+                    await(inFlight.peekFirst().future);
+                    inFlight.removeFirst();
+                }
+                int from = start;
+                int to = Math.min(start + chunkSize, vehicles.size());
+                inFlight.addLast(submit(() -> calculateChunk(vehicles, from, to, city, results)));
+            }
+            while (!inFlight.isEmpty()) {
+                await(inFlight.peekFirst().future);
+                inFlight.removeFirst();
+            }
+        } catch (RuntimeException ex) {
+            inFlight.forEach(Chunk::cancel);
+            inFlight.forEach(Chunk::awaitExit);
+            throw ex;
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private Chunk submit(Runnable work) {
+        boolean permit = virtualPermits != null && virtualPermits.tryAcquire();
+        Chunk chunk = new Chunk(work, permit);
+        if (virtualPermits != null && !permit) {
+            // Every permit is taken: run the chunk here rather than queue without bound
+            FutureTask<?> task = new FutureTask<>(chunk, null);
+            chunk.future = task;
+            task.run();
+            return chunk;
+        }
+        try {
+            chunk.future = executor.submit(chunk);
+        } catch (RuntimeException ex) {
+            chunk.skip();
+            throw ex;
+        }
+        return chunk;
+    }
+
+    /**
+     * A submitted chunk. Cancelling its future does not wait for a chunk that is already
+     * running, so the chunk tracks that itself: one that has not started is claimed so
+     * it never runs, and one that has can be waited for until it exits.
+     */
+    private final class Chunk implements Runnable {
+        private final Runnable work;
+        private final boolean permit;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch exited = new CountDownLatch(1);
+        /** Set and read by the submitting thread only. */
+        private Future<?> future;
+
+        Chunk(Runnable work, boolean permit) {
+            this.work = work;
+            this.permit = permit;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                work.run();
+            } finally {
+                if (permit) {
+                    virtualPermits.release();
+                }
+                exited.countDown();
+            }
+        }
+
+        void cancel() {
+            future.cancel(true);
+        }
+
+        /**
+         * Claim the chunk if it has not started, so it never does.
+         *
+         * @return true if it was claimed, false if it had already started
+         */
+        boolean skip() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            if (permit) {
+                virtualPermits.release();
+            }
+            exited.countDown();
+            return true;
+        }
+
+        /**
+         * Wait until the chunk has exited, or make sure it never starts. Cancelled chunks
+         * stop at their next vehicle, so this does not give up when interrupted; the
+         * interrupt is restored afterwards.
+         */
+        void awaitExit() {
+            if (skip()) {
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    exited.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void calculateChunk(List<VehicleTaxRequest> vehicles, int from, int to, String city,
+                                VehicleTaxResponse[] results) {
+        for (int i = from; i < to; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Fail the chunk: one run by the submitting thread has no cancelled future to say so
+                throw new IllegalStateException("Interrupted while calculating batch");
+            }
+            results[i] = calculateVehicle(vehicles.get(i), city);
+        }
+    }
+
+    private VehicleTaxResponse calculateVehicle(VehicleTaxRequest vehicle, String city) {
+        try {
+            TaxResult result = calculator.calculate(vehicle.vehicleType(), vehicle.dates(), city);
+            TaxResponse tax = new TaxResponse(
+                    vehicle.vehicleType(),
+                    result.totalTax(),
+                    result.taxByDate(),
+                    result.tollFree(),
+                    result.ruleVersion()
+            );
+            return new VehicleTaxResponse(vehicle.vehicleId(), tax, null);
+        } catch (DateTimeParseException ex) {
+            return new VehicleTaxResponse(vehicle.vehicleId(), null,
+                    "Invalid date format. Expected: yyyy-MM-dd HH:mm:ss (" + ex.getMessage() + ")");
+        } catch (IllegalArgumentException ex) {
+            return new VehicleTaxResponse(vehicle.vehicleId(), null, ex.getMessage());
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batch calculation", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Batch calculation failed", ex.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,65 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+
+/**
+ * The {@code vector} calculation engine for one compiled rule set: fees are looked up for
+ * a whole run of passages at once with a {@link FeeKernel}, then reduced day by day.
+ *
+ * The calculator looks up the fees of all the days under one rule set in a single
+ * {@link #fees} call; {@link #sumWindowFees(long[], int, int, CalculationMeters)} on its
+ * own looks up one day's.
+ */
+final class BulkDayTax implements DayTaxEngine {
+
+    private final FeeKernel kernel;
+    private final int[] feeTable;
+    private final int windowMinutes;
+    private final int maxDailyTax;
+
+    BulkDayTax(CompiledTaxRules rules, FeeKernel kernel) {
+        this.kernel = kernel;
+        this.feeTable = new int[CompiledTaxRules.MINUTES_PER_DAY];
+        for (int minute = 0; minute < feeTable.length; minute++) {
+            feeTable[minute] = rules.feeAt(minute);
+        }
+        this.windowMinutes = rules.getSingleChargeWindowMinutes();
+        this.maxDailyTax = rules.getMaxDailyTax();
+    }
+
+    FeeKernel kernel() {
+        return kernel;
+    }
+
+    @Override
+    public int feeAt(int minuteOfDay) {
+        return feeTable[minuteOfDay];
+    }
+
+    /**
+     * Look up the fees of passages {@code [from, to)} into {@code fees}, where
+     * {@code fees[i - base]} is the fee of passage {@code i}.
+     */
+    void fees(long[] passages, int from, int to, int[] fees, int base) {
+        for (int i = from; i < to; i++) {
+            fees[i - base] = PassageTimestampParser.minuteOfDay(passages[i]);
+        }
+        kernel.fees(feeTable, fees, from - base, to - base);
+    }
+
+    /**
+     * {@link #sumWindowFees(long[], int, int, CalculationMeters)} with fees already looked
+     * up by {@link #fees} with the same {@code base}.
+     */
+    int sumWindowFees(long[] sortedPassages, int from, int to, int[] fees, int base, CalculationMeters meters) {
+        return kernel.sumWindowFees(sortedPassages, from, to, fees, from - base, windowMinutes, maxDailyTax, meters);
+    }
+
+    @Override
+    public int sumWindowFees(long[] sortedPassages, int from, int to, CalculationMeters meters) {
+        int[] fees = new int[Math.max(to - from, 0)];
+        fees(sortedPassages, from, to, fees, from);
+        return sumWindowFees(sortedPassages, from, to, fees, from, meters);
+    }
+}
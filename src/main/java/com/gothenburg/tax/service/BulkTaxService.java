@@ -0,0 +1,685 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.PassageFileFormat;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Calculates congestion tax for every vehicle in a passage file, for offline runs that
+ * bypass HTTP (see {@code BulkTaxApplication}).
+ *
+ * The input is memory-mapped a window at a time and each passage is appended to one of
+ * several shard files by a hash of its vehicle, so all of a vehicle's passages land in
+ * the same shard. The shards are then mapped and calculated in parallel, one per worker,
+ * with the same {@link CongestionTaxCalculator} as the API. Only one window of input and
+ * one shard per worker are touched at a time, so the input may be larger than the heap.
+ * A shard is grouped in off-heap {@link PassageColumns}, one set per worker, so the heap
+ * holds only its vehicles and one vehicle's passages at a time; raise
+ * {@code tax.bulk.shards} if a shard is too large to map or to fit in direct memory.
+ *
+ * The output is CSV, one {@code vehicleId,vehicleType,totalTax,passages,error} row per
+ * vehicle. Each shard's rows are written at a reserved offset of the output channel as
+ * soon as the shard is done, so rows are grouped by shard rather than in input order.
+ * Invalid input records are counted and skipped.
+ *
+ * {@link #groupByVehicle} exposes the split and grouping for other whole-dataset passes,
+ * such as {@link WhatIfTaxService}.
+ */
+@Service
+public class BulkTaxService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkTaxService.class);
+
+    private static final int RECORD_BYTES = PassageFileFormat.RECORD_BYTES;
+    private static final int ID_BYTES = PassageFileFormat.ID_BYTES;
+    private static final int MAX_SHARDS = 512;
+    private static final long TARGET_SHARD_BYTES = 64L << 20;
+    private static final int SPILL_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_LOGGED_ERRORS = 10;
+    private static final byte[] HEADER = "vehicleId,vehicleType,totalTax,passages,error\n"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private final CongestionTaxCalculator calculator;
+    private final int shards;
+    private final int parallelism;
+    private final long windowBytes;
+
+    public BulkTaxService(
+            CongestionTaxCalculator calculator,
+            @Value("${tax.bulk.shards:0}") int shards,
+            @Value("${tax.bulk.parallelism:0}") int parallelism,
+            @Value("${tax.bulk.window-bytes:268435456}") long windowBytes) {
+        this.calculator = calculator;
+        this.shards = Math.min(shards, MAX_SHARDS);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        // A whole number of binary records, and within what one mapping can address
+        long window = Math.min(windowBytes, Integer.MAX_VALUE - RECORD_BYTES);
+        this.windowBytes = Math.max(RECORD_BYTES, window - window % RECORD_BYTES);
+    }
+
+    /**
+     * Calculate the tax for every vehicle in {@code input} and write one CSV row per
+     * vehicle to {@code output}, replacing it if it exists.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     */
+    public Summary process(Path input, PassageFileFormat format, Path output, String city) throws IOException {
+        CityTaxRules rules = calculator.getRules(city);
+        long started = System.nanoTime();
+
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            AtomicLong position = new AtomicLong();
+            write(out, position, HEADER);
+
+            Grouping<CsvRows> grouping = groupByVehicle(input, format, output.toAbsolutePath().getParent(),
+                    () -> new CsvRows(rules, out, position));
+            long vehicles = 0;
+            long failed = 0;
+            for (CsvRows shard : grouping.shards()) {
+                vehicles += shard.vehicles;
+                failed += shard.failed;
+            }
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+            return new Summary(grouping.passages(), vehicles, grouping.invalidRecords(), failed, elapsed);
+        }
+    }
+
+    /**
+     * Group every valid passage in {@code input} by vehicle and hand each vehicle's sorted
+     * passages to a handler. Shards are handled in parallel, each by a new handler from
+     * {@code handlers}, and a vehicle's passages are all in one shard.
+     *
+     * @param workParent where to create the temporary shard directory, or null for the
+     *                   default temporary-file directory
+     * @return the handlers, one per shard, once every shard has finished
+     */
+    public <H extends ShardHandler> Grouping<H> groupByVehicle(Path input, PassageFileFormat format, Path workParent,
+                                                               Supplier<H> handlers) throws IOException {
+        int shardCount = shards > 0 ? shards : shardCount(Files.size(input));
+        Path workDirectory = workParent == null
+                ? Files.createTempDirectory("tax-bulk-") : Files.createTempDirectory(workParent, "tax-bulk-");
+        try {
+            Splitter splitter = new Splitter(workDirectory, shardCount);
+            try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+                if (format == PassageFileFormat.CSV) {
+                    splitCsv(in, splitter);
+                } else {
+                    splitBinary(in, splitter);
+                }
+            } finally {
+                splitter.close();
+            }
+
+            return new Grouping<>(handleShards(splitter.files, handlers), splitter.passages, splitter.invalid);
+        } finally {
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    private int shardCount(long inputBytes) {
+        long bySize = (inputBytes + TARGET_SHARD_BYTES - 1) / TARGET_SHARD_BYTES;
+        return (int) Math.min(MAX_SHARDS, Math.max(bySize, parallelism * 2L));
+    }
+
+    private void splitCsv(FileChannel in, Splitter splitter) throws IOException {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+            int length = (int) Math.min(windowBytes, size - position);
+            MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            boolean last = position + length == size;
+
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == '\n') {
+                    splitter.csvLine(window, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if (last && lineStart < length) {
+                splitter.csvLine(window, lineStart, length);
+                lineStart = length;
+            } else if (lineStart == 0) {
+                throw new IOException("Record " + (splitter.records + 1) + " is longer than the mapping window of "
+                        + windowBytes + " bytes");
+            }
+            // Continue from the first incomplete line
+            position += lineStart;
+        }
+    }
+
+    private void splitBinary(FileChannel in, Splitter splitter) throws IOException {
+        long size = in.size();
+        long complete = size - size % RECORD_BYTES;
+        for (long position = 0; position < complete; position += windowBytes) {
+            int length = (int) Math.min(windowBytes, complete - position);
+            MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int offset = 0; offset < length; offset += RECORD_BYTES) {
+                splitter.binaryRecord(window, offset);
+            }
+        }
+        if (complete != size) {
+            splitter.invalid("the file ends with a partial " + (size - complete) + "-byte record");
+        }
+    }
+
+    /**
+     * Handle every shard in parallel.
+     */
+    private <H extends ShardHandler> List<H> handleShards(List<Path> files, Supplier<H> handlers)
+            throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadLocal<PassageColumns> columns = ThreadLocal.withInitial(PassageColumns::new);
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "tax-bulk-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<H>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                results.add(workers.submit(() -> {
+                    H handler = handlers.get();
+                    handleShard(file, handler, columns.get());
+                    handler.finish();
+                    return handler;
+                }));
+            }
+            List<H> shards = new ArrayList<>(files.size());
+            for (Future<H> result : results) {
+                shards.add(await(result));
+            }
+            return shards;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void handleShard(Path file, ShardHandler handler, PassageColumns columns) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            if (size > Integer.MAX_VALUE - RECORD_BYTES) {
+                throw new IOException("Shard " + file.getFileName() + " holds " + size
+                        + " bytes, more than one mapping can address; configure more tax.bulk.shards");
+            }
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int count = (int) (size / RECORD_BYTES);
+
+            // Number the vehicles into off-heap columns, then sort by vehicle and time in place
+            VehicleIndex index = new VehicleIndex();
+            columns.reset(count);
+            for (int r = 0; r < count; r++) {
+                int base = r * RECORD_BYTES;
+                int vehicle = index.add(records.getLong(base), records.getLong(base + 8), records.getLong(base + 16));
+                columns.add(vehicle, records.get(base + ID_BYTES), records.getLong(base + ID_BYTES + 1));
+            }
+            columns.sort();
+
+            for (int from = 0; from < columns.size(); ) {
+                int to = columns.vehicleEnd(from);
+                handler.vehicle(index.vehicleId(columns.vehicle(from)), TYPES[columns.typeOrdinal(from)],
+                        columns.epochSeconds(from, to));
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * Write at an offset reserved for these bytes; positional writes may run concurrently.
+     */
+    private static void write(FileChannel out, AtomicLong position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long at = position.getAndAdd(bytes.length);
+        while (buffer.hasRemaining()) {
+            at += out.write(buffer, at);
+        }
+    }
+
+    private static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calculating shards", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Shard calculation failed", ex.getCause());
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException ex) {
+            log.warn("Could not delete bulk work directory {}: {}", directory, ex.getMessage());
+        }
+    }
+
+    /**
+     * 64-bit hash of a record's vehicle id and type. Shards are picked by its low bits and
+     * {@link VehicleIndex} slots by its high bits, so one shard's vehicles still spread out.
+     */
+    private static long hash(long a, long b, long c) {
+        long h = a * 0x9E3779B97F4A7C15L;
+        h = (Long.rotateLeft(h, 31) ^ b) * 0xC2B2AE3D27D4EB4FL;
+        h = (Long.rotateLeft(h, 29) ^ c) * 0x87C37B91114253D5L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Receives the vehicles of one shard, from a single worker thread.
+     */
+    public interface ShardHandler {
+
+        void vehicle(String vehicleId, VehicleType vehicleType, long[] sortedPassages) throws IOException;
+
+        /**
+         * Called once every vehicle of the shard has been handled.
+         */
+        default void finish() throws IOException {}
+    }
+
+    /**
+     * The outcome of {@link #groupByVehicle}.
+     *
+     * @param shards         one handler per shard
+     * @param passages       valid passages read
+     * @param invalidRecords input records skipped as invalid
+     */
+    public record Grouping<H>(List<H> shards, long passages, long invalidRecords) {}
+
+    /**
+     * Calculates one shard's vehicles into CSV rows, written when the shard is done.
+     */
+    private final class CsvRows implements ShardHandler {
+        private final CityTaxRules rules;
+        private final FileChannel out;
+        private final AtomicLong position;
+        private final StringBuilder rows = new StringBuilder();
+        long vehicles;
+        long failed;
+
+        CsvRows(CityTaxRules rules, FileChannel out, AtomicLong position) {
+            this.rules = rules;
+            this.out = out;
+            this.position = position;
+        }
+
+        @Override
+        public void vehicle(String vehicleId, VehicleType vehicleType, long[] sortedPassages) {
+            vehicles++;
+            rows.append(vehicleId).append(',').append(vehicleType).append(',');
+            try {
+                TaxResult result = calculator.calculate(vehicleType, sortedPassages, rules);
+                rows.append(result.totalTax()).append(',').append(sortedPassages.length).append(",\n");
+            } catch (IllegalArgumentException ex) {
+                failed++;
+                rows.append(',').append(sortedPassages.length).append(",\"")
+                        .append(String.valueOf(ex.getMessage()).replace("\"", "\"\"")).append("\"\n");
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            write(out, position, rows.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The outcome of a bulk run.
+     *
+     * @param passages       valid passages read
+     * @param vehicles       vehicles written to the output
+     * @param invalidRecords input records skipped as invalid
+     * @param failedVehicles vehicles written with an error instead of a tax
+     * @param elapsed        wall-clock time of the whole run
+     */
+    public record Summary(long passages, long vehicles, long invalidRecords, long failedVehicles, Duration elapsed) {
+
+        public double passagesPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds > 0 ? passages / seconds : 0;
+        }
+    }
+
+    /**
+     * Parses input records into binary records and appends each to its vehicle's shard.
+     */
+    private static final class Splitter implements Closeable {
+        final List<Path> files = new ArrayList<>();
+        private final FileChannel[] channels;
+        private final ByteBuffer[] buffers;
+        private final byte[] record = new byte[RECORD_BYTES];
+        private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+        private final AsciiSequence text = new AsciiSequence();
+        long records;
+        long passages;
+        long invalid;
+
+        Splitter(Path directory, int shardCount) throws IOException {
+            channels = new FileChannel[shardCount];
+            buffers = new ByteBuffer[shardCount];
+            try {
+                for (int i = 0; i < shardCount; i++) {
+                    Path file = directory.resolve("shard-" + i + ".bin");
+                    files.add(file);
+                    buffers[i] = ByteBuffer.allocateDirect(SPILL_BUFFER_BYTES);
+                    channels[i] = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+            } catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Parse one vehicleId,vehicleType,timestamp line {@code [start, end)}.
+         */
+        void csvLine(ByteBuffer in, int start, int end) throws IOException {
+            if (end > start && in.get(end - 1) == '\r') {
+                end--;
+            }
+            start = skipSpaces(in, start, end);
+            if (start == end) {
+                return;
+            }
+            records++;
+
+            int firstComma = indexOf(in, ',', start, end);
+            int secondComma = firstComma < 0 ? -1 : indexOf(in, ',', firstComma + 1, end);
+            if (secondComma < 0 || indexOf(in, ',', secondComma + 1, end) >= 0) {
+                invalid("expected 3 CSV fields (vehicleId,vehicleType,timestamp)");
+                return;
+            }
+
+            int idEnd = trimEnd(in, start, firstComma);
+            if (records == 1 && equalsAscii(in, start, idEnd, "vehicleId", true)) {
+                return; // header row
+            }
+            int idLength = idEnd - start;
+            if (idLength == 0 || idLength > ID_BYTES) {
+                invalid("vehicleId must be 1 - " + ID_BYTES + " characters");
+                return;
+            }
+            for (int i = 0; i < idLength; i++) {
+                byte b = in.get(start + i);
+                if (b <= ' ' || b >= 0x7F) {
+                    invalid("vehicleId must be printable ASCII");
+                    return;
+                }
+                record[i] = b;
+            }
+            Arrays.fill(record, idLength, ID_BYTES, (byte) 0);
+
+            int typeStart = skipSpaces(in, firstComma + 1, secondComma);
+            VehicleType vehicleType = vehicleType(in, typeStart, trimEnd(in, typeStart, secondComma));
+            if (vehicleType == null) {
+                invalid("unknown vehicleType");
+                return;
+            }
+            record[ID_BYTES] = (byte) vehicleType.ordinal();
+
+            try {
+                recordBuffer.putLong(ID_BYTES + 1,
+                        PassageTimestampParser.parseEpochSecond(text.wrap(in, secondComma + 1, end)));
+            } catch (DateTimeParseException ex) {
+                invalid(ex.getMessage());
+                return;
+            }
+            route();
+        }
+
+        /**
+         * Check and route one binary record at {@code offset}.
+         */
+        void binaryRecord(ByteBuffer in, int offset) throws IOException {
+            records++;
+            in.get(offset, record, 0, RECORD_BYTES);
+            if (record[0] == 0) {
+                invalid("vehicleId is empty");
+                return;
+            }
+            if ((record[ID_BYTES] & 0xFF) >= TYPES.length) {
+                invalid("unknown vehicleType ordinal " + (record[ID_BYTES] & 0xFF));
+                return;
+            }
+            route();
+        }
+
+        private void route() throws IOException {
+            long h = hash(recordBuffer.getLong(0), recordBuffer.getLong(8), recordBuffer.getLong(16));
+            int shard = (int) Long.remainderUnsigned(h, channels.length);
+            ByteBuffer buffer = buffers[shard];
+            if (buffer.remaining() < RECORD_BYTES) {
+                flush(shard);
+            }
+            buffer.put(record);
+            passages++;
+        }
+
+        void invalid(String message) {
+            invalid++;
+            if (invalid <= MAX_LOGGED_ERRORS) {
+                log.warn("Skipping record {}: {}", records, message);
+            } else if (invalid == MAX_LOGGED_ERRORS + 1) {
+                log.warn("Further invalid records are counted but not logged");
+            }
+        }
+
+        private void flush(int shard) throws IOException {
+            ByteBuffer buffer = buffers[shard];
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channels[shard].write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (int i = 0; i < channels.length; i++) {
+                if (channels[i] == null) {
+                    continue;
+                }
+                try (FileChannel channel = channels[i]) {
+                    flush(i);
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private static VehicleType vehicleType(ByteBuffer in, int start, int end) {
+            for (VehicleType type : TYPES) {
+                if (equalsAscii(in, start, end, type.name(), false)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        private static int indexOf(ByteBuffer in, char c, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (in.get(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int skipSpaces(ByteBuffer in, int start, int end) {
+            while (start < end && in.get(start) <= ' ') {
+                start++;
+            }
+            return start;
+        }
+
+        private static int trimEnd(ByteBuffer in, int start, int end) {
+            while (end > start && in.get(end - 1) <= ' ') {
+                end--;
+            }
+            return end;
+        }
+
+        private static boolean equalsAscii(ByteBuffer in, int start, int end, String expected, boolean ignoreCase) {
+            if (end - start != expected.length()) {
+                return false;
+            }
+            for (int i = 0; i < expected.length(); i++) {
+                char actual = (char) in.get(start + i);
+                char wanted = expected.charAt(i);
+                if (ignoreCase ? Character.toLowerCase(actual) != Character.toLowerCase(wanted) : actual != wanted) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A reusable view of ASCII bytes as characters, so timestamps parse without a String.
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private ByteBuffer bytes;
+        private int start;
+        private int length;
+
+        AsciiSequence wrap(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = end - start;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length];
+            bytes.get(start, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Open-addressing index from a record's first 24 bytes (vehicle id and type, as three
+     * longs) to a dense vehicle number.
+     */
+    private static final class VehicleIndex {
+        private long[] keys = new long[3 * 64];
+        private int[] slots = new int[128]; // vehicle number + 1, 0 when empty
+        private int size;
+
+        int add(long a, long b, long c) {
+            int mask = slots.length - 1;
+            int slot = (int) (hash(a, b, c) >>> 32) & mask;
+            for (int vehicle; (vehicle = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+                int k = vehicle * 3;
+                if (keys[k] == a && keys[k + 1] == b && keys[k + 2] == c) {
+                    return vehicle;
+                }
+            }
+
+            int vehicle = size++;
+            if (size * 3 > keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[vehicle * 3] = a;
+            keys[vehicle * 3 + 1] = b;
+            keys[vehicle * 3 + 2] = c;
+            slots[slot] = vehicle + 1;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+            return vehicle;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int vehicle = 0; vehicle < size; vehicle++) {
+                int k = vehicle * 3;
+                int slot = (int) (hash(keys[k], keys[k + 1], keys[k + 2]) >>> 32) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = vehicle + 1;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        String vehicleId(int vehicle) {
+            ByteBuffer id = ByteBuffer.allocate(24);
+            id.putLong(keys[vehicle * 3]).putLong(keys[vehicle * 3 + 1]).putLong(keys[vehicle * 3 + 2]);
+            int length = 0;
+            while (length < ID_BYTES && id.get(length) != 0) {
+                length++;
+            }
+            return new String(id.array(), 0, length, StandardCharsets.US_ASCII);
+        }
+    }
+}
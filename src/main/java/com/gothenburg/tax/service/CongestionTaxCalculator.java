@@ -1,18 +1,20 @@
 package com.gothenburg.tax.service;
 
 import com.gothenburg.tax.config.TaxRuleLoader;
-import com.gothenburg.tax.model.TaxRuleConfig;
-import com.gothenburg.tax.model.TaxRuleConfig.TimeRange;
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
 import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Core congestion tax calculation service.
@@ -22,19 +24,75 @@ import java.util.stream.Collectors;
  * - Apply the single charge rule (60-minute window)
  * - Cap the daily total at the configured maximum
  * - Determine if a vehicle type is toll-free
+ * - Apply each day's effective-dated rule version
+ *
+ * Evaluation is lazy where the answer is already known. Passages on a toll-free day are
+ * dropped before sorting, leaving one passage at the day's midnight to stand for it (the
+ * day still appears in the result, at 0), and a day stops being evaluated once its fees
+ * reach the daily maximum, since fees only add up. Both savings are counted in the
+ * {@code tax.calculation.passages.skipped} and {@code tax.calculation.early.exits} meters.
+ *
+ * Fees are summed by a {@link DayTaxEngine} per compiled rule set: the rules are read as
+ * data by default. With {@code tax.calculation.engine=specialised} each rule set gets a
+ * generated engine with its settings as JIT constants. With {@code vector}, fees for each
+ * run of days under one rule set are looked up in a single bulk pass, on the Vector API
+ * where it is available (see {@link DayTaxEngines}). Toll-free days are left out of the
+ * pass, and so are days long enough that they will likely stop early at the cap.
+ *
+ * Requests with at least {@code tax.calculation.parallel-threshold} passages have their
+ * days calculated in parallel on the common fork/join pool; smaller ones stay on the
+ * calling thread, where splitting would cost more than it saves.
+ *
+ * Each {@link #calculate} call is recorded in the {@link TaxMetrics} meters for its city
+ * and vehicle type.
  */
 @Service
 public class CongestionTaxCalculator {
 
-    private static final DateTimeFormatter DATETIME_FORMAT =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** Passages per fork/join task, enough to outweigh the cost of forking it. */
+    static final int SPLIT_PASSAGES = 8192;
+
+    /**
+     * Days with more passages than this are left out of the vector engine's bulk fee
+     * lookup and summed lazily instead, as such days usually reach the cap early.
+     */
+    static final int MAX_BULK_DAY_PASSAGES = 128;
 
     private final TaxRuleLoader ruleLoader;
     private final TollFreeDateService tollFreeDateService;
+    private final TaxMetrics metrics;
+
+    /** Engines kept before the cache is cleared, so replaced rule sets do not accumulate. */
+    private static final int MAX_ENGINES = 256;
+
+    private final int parallelThreshold;
+
+    /** Builds a rule set's engine, or null for the interpreted calculation. */
+    private final Function<CompiledTaxRules, DayTaxEngine> engineFactory;
+    private final boolean bulkFees;
+    private final Map<CompiledTaxRules, DayTaxEngine> engines = new ConcurrentHashMap<>();
 
-    public CongestionTaxCalculator(TaxRuleLoader ruleLoader, TollFreeDateService tollFreeDateService) {
+    /**
+     * @param engine the day engine: "interpreted", "specialised" or "vector"
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    public CongestionTaxCalculator(
+            TaxRuleLoader ruleLoader,
+            TollFreeDateService tollFreeDateService,
+            TaxMetrics metrics,
+            @Value("${tax.calculation.parallel-threshold:50000}") int parallelThreshold,
+            @Value("${tax.calculation.engine:interpreted}") String engine) {
         this.ruleLoader = ruleLoader;
         this.tollFreeDateService = tollFreeDateService;
+        this.metrics = metrics;
+        this.parallelThreshold = parallelThreshold;
+        this.engineFactory = switch (engine.trim().toLowerCase(Locale.ROOT)) {
+            case "interpreted" -> null;
+            case "specialised", "specialized" -> DayTaxEngines::specialise;
+            case "vector" -> DayTaxEngines::vector;
+            default -> throw new IllegalArgumentException("Unknown tax.calculation.engine: " + engine);
+        };
+        this.bulkFees = engine.trim().equalsIgnoreCase("vector");
     }
 
     /**
@@ -46,109 +104,494 @@ public class CongestionTaxCalculator {
      * @return map with "totalTax" and "taxByDate" breakdown
      */
     public TaxResult calculate(VehicleType vehicleType, List<String> dateStrings, String city) {
-        TaxRuleConfig rules = ruleLoader.getRules(city);
-        if (rules == null) {
-            throw new IllegalArgumentException("No tax rules found for city: " + city);
-        }
+        long started = System.nanoTime();
+        CityTaxRules rules = getRules(city);
+        CalculationMeters meters = metrics.calculation(rules.getCity(), vehicleType);
+        meters.passages().record(dateStrings.size());
 
         // Check if vehicle is toll-free
-        if (rules.getTollFreeVehicleSet().contains(vehicleType)) {
-            return new TaxResult(0, Map.of(), true);
+        if (rules.isTollFreeVehicle(vehicleType)) {
+            meters.tollFreeVehicle().increment();
+            meters.total().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return new TaxResult(0, Map.of(), true, rules.getVersion());
         }
 
-        // Parse and sort all timestamps
-        List<LocalDateTime> passages = dateStrings.stream()
-                .map(s -> LocalDateTime.parse(s.trim(), DATETIME_FORMAT))
-                .sorted()
-                .toList();
+        long parseStarted = System.nanoTime();
+        long[] passages = chargeableInPlace(parse(dateStrings), vehicleType, rules, meters);
+        meters.parse().record(System.nanoTime() - parseStarted, TimeUnit.NANOSECONDS);
 
-        // Group passages by date
-        Map<LocalDate, List<LocalDateTime>> byDate = passages.stream()
-                .collect(Collectors.groupingBy(LocalDateTime::toLocalDate, TreeMap::new, Collectors.toList()));
+        TaxResult result = calculateSorted(passages, vehicleType, rules, meters);
+        meters.total().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Calculate the total congestion tax for passages that are already parsed and sorted,
+     * under rules the caller has already looked up.
+     */
+    public TaxResult calculate(VehicleType vehicleType, long[] sortedPassages, CityTaxRules rules) {
+        return calculate(vehicleType, sortedPassages, rules, 0);
+    }
+
+    /**
+     * {@link #calculate(VehicleType, long[], CityTaxRules)} for passages from
+     * {@link #parseChargeable} or {@link #sortChargeable}, counting the toll-free day
+     * passages they dropped as skipped.
+     */
+    TaxResult calculate(VehicleType vehicleType, long[] sortedPassages, CityTaxRules rules,
+                        int skippedTollFreeDatePassages) {
+        long started = System.nanoTime();
+        CalculationMeters meters = metrics.calculation(rules.getCity(), vehicleType);
+        meters.passages().record(sortedPassages.length + skippedTollFreeDatePassages);
+        if (skippedTollFreeDatePassages > 0) {
+            meters.skippedTollFreeDate().increment(skippedTollFreeDatePassages);
+        }
+
+        TaxResult result;
+        if (rules.isTollFreeVehicle(vehicleType)) {
+            meters.tollFreeVehicle().increment();
+            result = new TaxResult(0, Map.of(), true, rules.getVersion());
+        } else {
+            result = calculateSorted(sortedPassages, vehicleType, rules, meters);
+        }
+        meters.total().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Parse timestamps into sorted epoch-seconds, skipping the sort if the input is already in order.
+     */
+    static long[] parseSorted(List<String> dateStrings) {
+        long[] passages = new long[dateStrings.size()];
+        boolean sorted = true;
+        for (int i = 0; i < passages.length; i++) {
+            passages[i] = PassageTimestampParser.parseEpochSecond(dateStrings.get(i));
+            if (i > 0 && passages[i] < passages[i - 1]) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(passages);
+        }
+        return passages;
+    }
+
+    /**
+     * Parse timestamps into sorted epoch-seconds for calculation under {@code rules}, with
+     * each toll-free day reduced to a single passage at its midnight. Every timestamp is
+     * still parsed, so an invalid one fails the request whatever its day. Nothing is
+     * counted in the meters; the dropped passages are counted when the result is calculated.
+     *
+     * @throws java.time.format.DateTimeParseException if a date is invalid
+     */
+    public long[] parseChargeable(List<String> dateStrings, VehicleType vehicleType, CityTaxRules rules) {
+        return chargeableInPlace(parse(dateStrings), vehicleType, rules, null);
+    }
+
+    /**
+     * Sort epoch-second passages, in any order, for calculation under {@code rules}, with
+     * each toll-free day reduced to a single passage at its midnight. The input is not
+     * modified, and nothing is counted in the meters.
+     */
+    public long[] sortChargeable(long[] passages, VehicleType vehicleType, CityTaxRules rules) {
+        return chargeableInPlace(passages.clone(), vehicleType, rules, null);
+    }
+
+    private static long[] parse(List<String> dateStrings) {
+        long[] passages = new long[dateStrings.size()];
+        for (int i = 0; i < passages.length; i++) {
+            passages[i] = PassageTimestampParser.parseEpochSecond(dateStrings.get(i));
+        }
+        return passages;
+    }
+
+    /**
+     * Drop the passages of toll-free days from {@code passages}, keeping one midnight
+     * passage per such day, then sort what is left (skipped if it is already in order).
+     * Days are only looked up when the day changes, so input that arrives in order costs
+     * one rule check per day. Dropped passages are counted in {@code meters}, if given.
+     */
+    private long[] chargeableInPlace(long[] passages, VehicleType vehicleType, CityTaxRules rules,
+                                     CalculationMeters meters) {
+        int kept = 0;
+        boolean sorted = true;
+        int day = Integer.MIN_VALUE;
+        boolean tollFree = false;
+        CompiledTaxRules dayRules = null;
+        Set<Integer> tollFreeDays = null;
+
+        for (long passage : passages) {
+            int epochDay = PassageTimestampParser.epochDay(passage);
+            if (epochDay != day) {
+                day = epochDay;
+                if (dayRules == null || !dayRules.appliesTo(epochDay)) {
+                    dayRules = rules.forDay(epochDay);
+                }
+                // A day with no rules is kept, to fail in calculateSorted
+                tollFree = dayRules != null && !isChargedDay(epochDay, dayRules, vehicleType, null);
+                if (tollFree) {
+                    if (tollFreeDays == null) {
+                        tollFreeDays = new HashSet<>();
+                    }
+                    if (tollFreeDays.add(epochDay)) {
+                        passage = (long) epochDay * PassageTimestampParser.SECONDS_PER_DAY;
+                    } else {
+                        continue;
+                    }
+                }
+            } else if (tollFree) {
+                continue;
+            }
+            if (kept > 0 && passage < passages[kept - 1]) {
+                sorted = false;
+            }
+            passages[kept++] = passage;
+        }
+
+        if (kept < passages.length) {
+            if (meters != null) {
+                meters.skippedTollFreeDate().increment(passages.length - kept);
+            }
+            passages = Arrays.copyOf(passages, kept);
+        }
+        if (!sorted) {
+            Arrays.sort(passages);
+        }
+        return passages;
+    }
+
+    /**
+     * Calculate the tax for sorted epoch-second passages: find the day boundaries, then
+     * calculate each day's slice in place under the rule version in effect that day.
+     *
+     * @throws IllegalArgumentException if no rule version covers one of the days
+     */
+    TaxResult calculateSorted(long[] passages, VehicleType vehicleType, CityTaxRules rules,
+                              CalculationMeters meters) {
+        long groupStarted = System.nanoTime();
+        int[] dayStarts = new int[passages.length + 1];
+        int days = 0;
+        int start = 0;
+        while (start < passages.length) {
+            dayStarts[days++] = start;
+            long nextDayStart = (PassageTimestampParser.epochDay(passages[start]) + 1L)
+                    * PassageTimestampParser.SECONDS_PER_DAY;
+            start++;
+            while (start < passages.length && passages[start] < nextDayStart) {
+                start++;
+            }
+        }
+        dayStarts[days] = passages.length;
+        meters.group().record(System.nanoTime() - groupStarted, TimeUnit.NANOSECONDS);
+        meters.days().record(days);
+
+        // Resolve each day's version in order; days are sorted, so only look the version up
+        // again once the current one ends
+        CompiledTaxRules[] rulesByDay = new CompiledTaxRules[days];
+        CompiledTaxRules dayRules = null;
+        String ruleVersion = null;
+        for (int d = 0; d < days; d++) {
+            int epochDay = PassageTimestampParser.epochDay(passages[dayStarts[d]]);
+            if (dayRules == null || !dayRules.appliesTo(epochDay)) {
+                dayRules = rules.forDay(epochDay);
+                if (dayRules == null) {
+                    throw new IllegalArgumentException("No tax rules for " + rules.getCity() + " on "
+                            + LocalDate.ofEpochDay(epochDay));
+                }
+                ruleVersion = ruleVersion == null ? dayRules.getVersion() : ruleVersion + "," + dayRules.getVersion();
+            }
+            rulesByDay[d] = dayRules;
+        }
+
+        // Days are independent, so a large request spreads them over the fork/join pool
+        int[] dailyTax = new int[days];
+        if (passages.length >= parallelThreshold && days > 1) {
+            ForkJoinPool.commonPool().invoke(
+                    new DaysTask(passages, dayStarts, rulesByDay, vehicleType, meters, dailyTax, 0, days));
+        } else {
+            calculateDays(passages, dayStarts, rulesByDay, vehicleType, meters, dailyTax, 0, days);
+        }
 
         int totalTax = 0;
         Map<String, Integer> taxByDate = new LinkedHashMap<>();
+        for (int d = 0; d < days; d++) {
+            int epochDay = PassageTimestampParser.epochDay(passages[dayStarts[d]]);
+            taxByDate.put(LocalDate.ofEpochDay(epochDay).toString(), dailyTax[d]);
+            totalTax += dailyTax[d];
+        }
 
-        for (Map.Entry<LocalDate, List<LocalDateTime>> entry : byDate.entrySet()) {
-            List<LocalDateTime> dayPassages = entry.getValue();
+        return new TaxResult(totalTax, taxByDate, false, ruleVersion == null ? rules.getVersion() : ruleVersion);
+    }
 
-            // Check if the date itself is toll-free (using first passage of the day)
-            if (tollFreeDateService.isTollFreeDate(dayPassages.get(0), rules)) {
-                taxByDate.put(entry.getKey().toString(), 0);
+    /**
+     * Calculate days {@code [fromDay, toDay)} into {@code dailyTax}.
+     */
+    private void calculateDays(long[] passages, int[] dayStarts, CompiledTaxRules[] rulesByDay,
+                               VehicleType vehicleType, CalculationMeters meters, int[] dailyTax,
+                               int fromDay, int toDay) {
+        // Settle the toll-free days first, so a bulk fee lookup covers only days that are summed
+        boolean[] summed = new boolean[toDay - fromDay];
+        int firstBulkDay = -1;
+        int lastBulkDay = -1;
+        for (int d = fromDay; d < toDay; d++) {
+            int epochDay = PassageTimestampParser.epochDay(passages[dayStarts[d]]);
+            if (isChargedDay(epochDay, rulesByDay[d], vehicleType, meters)) {
+                summed[d - fromDay] = true;
+                if (bulkFees && isBulkDay(dayStarts, d)) {
+                    firstBulkDay = firstBulkDay < 0 ? d : firstBulkDay;
+                    lastBulkDay = d;
+                }
+            }
+        }
+        int base = firstBulkDay < 0 ? 0 : dayStarts[firstBulkDay];
+        int[] fees = firstBulkDay < 0 ? null
+                : bulkFees(passages, dayStarts, rulesByDay, summed, fromDay, firstBulkDay, lastBulkDay + 1);
+
+        for (int d = fromDay; d < toDay; d++) {
+            if (!summed[d - fromDay]) {
                 continue;
             }
+            int from = dayStarts[d];
+            int to = dayStarts[d + 1];
+            CompiledTaxRules dayRules = rulesByDay[d];
+            long dayStarted = System.nanoTime();
+            int uncapped;
+            if (fees != null && isBulkDay(dayStarts, d)) {
+                uncapped = ((BulkDayTax) engine(dayRules)).sumWindowFees(passages, from, to, fees, base, meters);
+            } else if (bulkFees) {
+                // A long day: looking fees up as it goes stops at the cap
+                uncapped = sumWindowFees(passages, from, to, dayRules, meters);
+            } else {
+                uncapped = sumDay(passages, from, to, dayRules, meters);
+            }
+            dailyTax[d] = capped(uncapped, dayRules, meters);
+            meters.day().record(System.nanoTime() - dayStarted, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static boolean isBulkDay(int[] dayStarts, int day) {
+        return dayStarts[day + 1] - dayStarts[day] <= MAX_BULK_DAY_PASSAGES;
+    }
+
+    /**
+     * Fees of the passages of the summed, bulk-sized days in {@code [firstDay, endDay)},
+     * indexed from the first of them, looked up in one pass per run of such days under the
+     * same rule set. Other days' entries are left unset.
+     */
+    private int[] bulkFees(long[] passages, int[] dayStarts, CompiledTaxRules[] rulesByDay, boolean[] summed,
+                           int fromDay, int firstDay, int endDay) {
+        int base = dayStarts[firstDay];
+        int[] fees = new int[dayStarts[endDay] - base];
+        int run = firstDay;
+        while (run < endDay) {
+            if (!summed[run - fromDay] || !isBulkDay(dayStarts, run)) {
+                run++;
+                continue;
+            }
+            int runEnd = run + 1;
+            while (runEnd < endDay && rulesByDay[runEnd] == rulesByDay[run] && summed[runEnd - fromDay]
+                    && isBulkDay(dayStarts, runEnd)) {
+                runEnd++;
+            }
+            ((BulkDayTax) engine(rulesByDay[run])).fees(passages, dayStarts[run], dayStarts[runEnd], fees, base);
+            run = runEnd;
+        }
+        return fees;
+    }
+
+    /**
+     * Splits a range of days in half until each part holds at most {@link #SPLIT_PASSAGES}
+     * passages, then calculates the part's days.
+     */
+    private final class DaysTask extends RecursiveAction {
+        private final long[] passages;
+        private final int[] dayStarts;
+        private final CompiledTaxRules[] rulesByDay;
+        private final VehicleType vehicleType;
+        private final CalculationMeters meters;
+        private final int[] dailyTax;
+        private final int fromDay;
+        private final int toDay;
 
-            int dailyTax = calculateDailyTax(dayPassages, rules);
-            taxByDate.put(entry.getKey().toString(), dailyTax);
-            totalTax += dailyTax;
+        DaysTask(long[] passages, int[] dayStarts, CompiledTaxRules[] rulesByDay, VehicleType vehicleType,
+                 CalculationMeters meters, int[] dailyTax, int fromDay, int toDay) {
+            this.passages = passages;
+            this.dayStarts = dayStarts;
+            this.rulesByDay = rulesByDay;
+            this.vehicleType = vehicleType;
+            this.meters = meters;
+            this.dailyTax = dailyTax;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
         }
 
-        return new TaxResult(totalTax, taxByDate, false);
+        @Override
+        protected void compute() {
+            if (toDay - fromDay < 2 || dayStarts[toDay] - dayStarts[fromDay] <= SPLIT_PASSAGES) {
+                calculateDays(passages, dayStarts, rulesByDay, vehicleType, meters, dailyTax, fromDay, toDay);
+                return;
+            }
+            int middle = (fromDay + toDay) >>> 1;
+            invokeAll(new DaysTask(passages, dayStarts, rulesByDay, vehicleType, meters, dailyTax, fromDay, middle),
+                    new DaysTask(passages, dayStarts, rulesByDay, vehicleType, meters, dailyTax, middle, toDay));
+        }
     }
 
     /**
-     * Calculate the tax for a single day, applying the single charge rule and daily cap.
+     * Get the compiled rules for a city.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
      */
-    int calculateDailyTax(List<LocalDateTime> sortedPassages, TaxRuleConfig rules) {
-        int dailyTotal = 0;
-        int windowMaxFee = 0;
-        LocalDateTime windowStart = null;
+    public CityTaxRules getRules(String city) {
+        CityTaxRules rules = ruleLoader.getRules(city);
+        metrics.ruleLookup(rules != null);
+        if (rules == null) {
+            throw new IllegalArgumentException("No tax rules found for city: " + city);
+        }
+        return rules;
+    }
 
-        for (LocalDateTime passage : sortedPassages) {
-            int fee = getTollFee(passage.toLocalTime(), rules);
+    /**
+     * Calculate the tax for one day's sorted passages {@code [from, to)}, which is 0 if the
+     * vehicle type or the date itself is toll-free under that day's rules.
+     */
+    int calculateDayTax(VehicleType vehicleType, int epochDay, long[] sortedPassages, int from, int to,
+                        CompiledTaxRules rules) {
+        if (!isChargedDay(epochDay, rules, vehicleType, null)) {
+            return 0;
+        }
+        return calculateDailyTax(sortedPassages, from, to, rules);
+    }
 
-            if (windowStart == null) {
-                // Start first window
-                windowStart = passage;
-                windowMaxFee = fee;
-            } else {
-                long minutesDiff = ChronoUnit.MINUTES.between(windowStart, passage);
-
-                if (minutesDiff <= rules.getSingleChargeWindowMinutes()) {
-                    // Within the same window — track the highest fee
-                    windowMaxFee = Math.max(windowMaxFee, fee);
-                } else {
-                    // Window has ended — add the max fee from the previous window
-                    dailyTotal += windowMaxFee;
-
-                    // Start a new window
-                    windowStart = passage;
-                    windowMaxFee = fee;
-                }
+    /**
+     * Calculate the tax for a single day's sorted passages {@code [from, to)}, applying the
+     * single charge rule and daily cap.
+     */
+    int calculateDailyTax(long[] sortedPassages, int from, int to, CompiledTaxRules rules) {
+        return capped(sumDay(sortedPassages, from, to, rules, null), rules, null);
+    }
+
+    /**
+     * Whether a day is charged at all under its rules: not if the vehicle type or the date is
+     * toll-free. Toll-free days are counted in {@code meters}, if given.
+     */
+    private boolean isChargedDay(int epochDay, CompiledTaxRules rules, VehicleType vehicleType,
+                                 CalculationMeters meters) {
+        if (rules.isTollFreeVehicle(vehicleType)) {
+            if (meters != null) {
+                meters.tollFreeVehicle().increment();
             }
+            return false;
         }
+        if (tollFreeDateService.isTollFreeDay(epochDay, rules)) {
+            if (meters != null) {
+                meters.tollFreeDate().increment();
+            }
+            return false;
+        }
+        return true;
+    }
 
-        // Don't forget the last window
-        dailyTotal += windowMaxFee;
+    /**
+     * A day's tax from its window sum, capped at the daily maximum. Cap hits are counted in
+     * {@code meters}, if given.
+     */
+    private static int capped(int uncapped, CompiledTaxRules rules, CalculationMeters meters) {
+        if (uncapped >= rules.getMaxDailyTax()) {
+            if (meters != null) {
+                meters.capHits().increment();
+            }
+            return rules.getMaxDailyTax();
+        }
+        return uncapped;
+    }
 
-        // Apply daily cap
-        return Math.min(dailyTotal, rules.getMaxDailyTax());
+    private int sumDay(long[] sortedPassages, int from, int to, CompiledTaxRules rules, CalculationMeters meters) {
+        return engineFactory != null
+                ? engine(rules).sumWindowFees(sortedPassages, from, to, meters)
+                : sumWindowFees(sortedPassages, from, to, rules, meters);
+    }
+
+    /**
+     * The selected engine for a rule set, built on its first use.
+     */
+    DayTaxEngine engine(CompiledTaxRules rules) {
+        DayTaxEngine engine = engines.get(rules);
+        if (engine == null) {
+            if (engines.size() >= MAX_ENGINES) {
+                engines.clear();
+            }
+            // Not computeIfAbsent: specialising defines and verifies a class, too long to hold
+            // a map lock for. Racing first uses may each build one; the first stored is kept.
+            engine = engineFactory.apply(rules);
+            DayTaxEngine raced = engines.putIfAbsent(rules, engine);
+            if (raced != null) {
+                engine = raced;
+            }
+        }
+        return engine;
     }
 
     /**
-     * Look up the toll fee for a given time of day based on configured time ranges.
+     * Sum the highest fee of each single charge window, before the daily cap. Fees are never
+     * negative, so once the sum reaches the cap the remaining passages cannot change the
+     * day's tax and are not evaluated; the sum returned is then only known to be at least
+     * the cap. Early exits are counted in {@code meters}, if given.
      */
-    int getTollFee(LocalTime time, TaxRuleConfig rules) {
-        for (TimeRange range : rules.getTimeRanges()) {
-            LocalTime from = range.getFromTime();
-            LocalTime to = range.getToTime();
+    static int sumWindowFees(long[] sortedPassages, int from, int to, CompiledTaxRules rules,
+                             CalculationMeters meters) {
+        if (from >= to) {
+            return 0;
+        }
+
+        int maxDailyTax = rules.getMaxDailyTax();
+        int dailyTotal = 0;
+        long windowStart = sortedPassages[from];
+        int windowMaxFee = rules.feeAt(PassageTimestampParser.minuteOfDay(windowStart));
 
-            if (to.isBefore(from)) {
-                // Wraps midnight (e.g. 18:30 - 05:59)
-                if (!time.isBefore(from) || !time.isAfter(to)) {
-                    return range.getAmount();
+        for (int i = from + 1; i < to; i++) {
+            if (dailyTotal + windowMaxFee >= maxDailyTax) {
+                if (meters != null) {
+                    meters.earlyExits().increment();
+                    meters.skippedCap().increment(to - i);
                 }
+                return dailyTotal + windowMaxFee;
+            }
+
+            long passage = sortedPassages[i];
+            int fee = rules.feeAt(PassageTimestampParser.minuteOfDay(passage));
+
+            // Whole minutes elapsed, as ChronoUnit.MINUTES.between would count them
+            long minutesDiff = (passage - windowStart) / 60;
+
+            if (minutesDiff <= rules.getSingleChargeWindowMinutes()) {
+                // Within the same window — track the highest fee
+                windowMaxFee = Math.max(windowMaxFee, fee);
             } else {
-                if (!time.isBefore(from) && !time.isAfter(to)) {
-                    return range.getAmount();
-                }
+                // Window has ended — add the max fee from the previous window
+                dailyTotal += windowMaxFee;
+
+                // Start a new window
+                windowStart = passage;
+                windowMaxFee = fee;
             }
         }
-        return 0;
+
+        // Don't forget the last window
+        return dailyTotal + windowMaxFee;
+    }
+
+    /**
+     * Look up the toll fee for a passage in the precomputed minute-of-day fee table, or
+     * with the rule set's selected engine.
+     */
+    int getTollFee(long epochSecond, CompiledTaxRules rules) {
+        int minuteOfDay = PassageTimestampParser.minuteOfDay(epochSecond);
+        return engineFactory != null ? engine(rules).feeAt(minuteOfDay) : rules.feeAt(minuteOfDay);
     }
 
     /**
-     * Holds the result of a tax calculation.
+     * Holds the result of a tax calculation and the version of the rules that produced it.
      */
-    public record TaxResult(int totalTax, Map<String, Integer> taxByDate, boolean tollFree) {}
+    public record TaxResult(int totalTax, Map<String, Integer> taxByDate, boolean tollFree, String ruleVersion) {}
 }
@@ -0,0 +1,22 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+
+/**
+ * Calculates a day's fees under one compiled rule set, as selected by
+ * {@code tax.calculation.engine} (see {@link DayTaxEngines}).
+ */
+interface DayTaxEngine {
+
+    /**
+     * Fee for a minute of the day (0 - 1439).
+     */
+    int feeAt(int minuteOfDay);
+
+    /**
+     * Sum the highest fee of each single charge window of sorted passages {@code [from, to)},
+     * before the daily cap, stopping once the sum reaches the cap. Early exits are counted
+     * in {@code meters}, if given.
+     */
+    int sumWindowFees(long[] sortedPassages, int from, int to, CalculationMeters meters);
+}
@@ -0,0 +1,177 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the {@link DayTaxEngine} for a compiled rule set.
+ *
+ * The interpreted engine reads the rule set's fee table and settings on every passage. A
+ * specialised engine is the {@link SpecialisedDayTax} template defined as a hidden class
+ * with the rule set's fees composed into a method handle tree of constant breakpoints,
+ * and its window and cap as constants. Before it is used, a specialised engine is checked
+ * against the interpreted one for every minute of the day and a set of synthetic days;
+ * if it cannot be defined or disagrees, the interpreted engine is used instead.
+ *
+ * A vector engine is a {@link BulkDayTax} on the {@link FeeKernel} for this JVM.
+ */
+final class DayTaxEngines {
+
+    private static final Logger log = LoggerFactory.getLogger(DayTaxEngines.class);
+
+    /** Passage spacings, in seconds, of the synthetic days a specialised engine is checked on. */
+    private static final int[] CHECK_STEPS = {59, 60, 61, 7 * 60 + 13, 29 * 60, 59 * 60 + 59, 60 * 60, 61 * 60, 97 * 60};
+
+    private static final MethodHandle LESS_THAN;
+
+    static {
+        try {
+            LESS_THAN = MethodHandles.lookup().findStatic(DayTaxEngines.class, "lessThan",
+                    MethodType.methodType(boolean.class, int.class, int.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private DayTaxEngines() {}
+
+    /**
+     * The engine that looks fees up in bulk, on the vector kernel if the module is available.
+     */
+    static DayTaxEngine vector(CompiledTaxRules rules) {
+        return new BulkDayTax(rules, Kernel.INSTANCE);
+    }
+
+    /** Loads the kernel once, on the first vector engine. */
+    private static final class Kernel {
+        static final FeeKernel INSTANCE = FeeKernel.load();
+
+        static {
+            if (INSTANCE instanceof ScalarFeeKernel) {
+                log.info("jdk.incubator.vector is not available (run with --add-modules jdk.incubator.vector); "
+                        + "the vector engine is using the scalar fee kernel");
+            }
+        }
+    }
+
+    /**
+     * The engine that evaluates {@code rules} as data.
+     */
+    static DayTaxEngine interpreted(CompiledTaxRules rules) {
+        return new DayTaxEngine() {
+            @Override
+            public int feeAt(int minuteOfDay) {
+                return rules.feeAt(minuteOfDay);
+            }
+
+            @Override
+            public int sumWindowFees(long[] sortedPassages, int from, int to, CalculationMeters meters) {
+                return CongestionTaxCalculator.sumWindowFees(sortedPassages, from, to, rules, meters);
+            }
+        };
+    }
+
+    /**
+     * An engine specialised for {@code rules}, or the interpreted engine if none could be
+     * generated and verified.
+     */
+    static DayTaxEngine specialise(CompiledTaxRules rules) {
+        DayTaxEngine engine;
+        try {
+            engine = define(rules);
+        } catch (IOException | ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            log.warn("Using the interpreted engine for {} rules {}: {}", rules.getCity(), rules.getVersion(),
+                    ex.toString());
+            return interpreted(rules);
+        }
+        String mismatch = verify(engine, rules);
+        if (mismatch != null) {
+            log.warn("Using the interpreted engine for {} rules {}: specialised engine differs at {}",
+                    rules.getCity(), rules.getVersion(), mismatch);
+            return interpreted(rules);
+        }
+        return engine;
+    }
+
+    private static DayTaxEngine define(CompiledTaxRules rules) throws IOException, ReflectiveOperationException {
+        byte[] template;
+        try (InputStream in = SpecialisedDayTax.class.getResourceAsStream("SpecialisedDayTax.class")) {
+            if (in == null) {
+                throw new IOException("SpecialisedDayTax.class not found");
+            }
+            template = in.readAllBytes();
+        }
+        // Not defined as STRONG, so the class is unloaded along with a replaced rule set's engine
+        Class<?> engineClass = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(template,
+                        List.of(feeFunction(rules), rules.getSingleChargeWindowMinutes(), rules.getMaxDailyTax()), true)
+                .lookupClass();
+        return (DayTaxEngine) engineClass.getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * The rules' fee table as an (int minuteOfDay) int handle: a balanced tree of
+     * {@code minute < breakpoint} tests over the runs of equal fees, with constant leaves.
+     */
+    static MethodHandle feeFunction(CompiledTaxRules rules) {
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> fees = new ArrayList<>();
+        for (int minute = 0; minute < CompiledTaxRules.MINUTES_PER_DAY; minute++) {
+            int fee = rules.feeAt(minute);
+            if (minute == 0 || fee != fees.get(fees.size() - 1)) {
+                starts.add(minute);
+                fees.add(fee);
+            }
+        }
+        return feeTree(starts, fees, 0, fees.size());
+    }
+
+    private static MethodHandle feeTree(List<Integer> starts, List<Integer> fees, int from, int to) {
+        if (to - from == 1) {
+            return MethodHandles.dropArguments(MethodHandles.constant(int.class, fees.get(from)), 0, int.class);
+        }
+        int middle = (from + to) >>> 1;
+        return MethodHandles.guardWithTest(MethodHandles.insertArguments(LESS_THAN, 1, starts.get(middle)),
+                feeTree(starts, fees, from, middle), feeTree(starts, fees, middle, to));
+    }
+
+    private static boolean lessThan(int minute, int bound) {
+        return minute < bound;
+    }
+
+    /**
+     * Compare an engine with the interpreted calculation, returning where they first
+     * differ, or null if they agree.
+     */
+    static String verify(DayTaxEngine engine, CompiledTaxRules rules) {
+        for (int minute = 0; minute < CompiledTaxRules.MINUTES_PER_DAY; minute++) {
+            if (engine.feeAt(minute) != rules.feeAt(minute)) {
+                return "minute " + minute;
+            }
+        }
+        for (int step : CHECK_STEPS) {
+            long[] day = new long[PassageTimestampParser.SECONDS_PER_DAY / step];
+            for (int i = 0; i < day.length; i++) {
+                day[i] = (long) i * step;
+            }
+            // Prefixes of the day, so sums below the cap are compared too
+            for (int to = 1; to <= day.length; to += Math.max(1, day.length / 64)) {
+                if (engine.sumWindowFees(day, 0, to, null)
+                        != CongestionTaxCalculator.sumWindowFees(day, 0, to, rules, null)) {
+                    return "a day of " + to + " passages " + step + "s apart";
+                }
+            }
+        }
+        return null;
+    }
+}
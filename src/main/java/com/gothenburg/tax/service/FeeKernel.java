@@ -0,0 +1,79 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+
+/**
+ * Bulk fee lookup and single charge reduction over arrays of passages, used by the
+ * {@code vector} calculation engine (see {@link BulkDayTax}).
+ *
+ * {@link #load()} returns the {@code jdk.incubator.vector} implementation when that
+ * module is in the boot layer (run with {@code --add-modules jdk.incubator.vector}), and
+ * the scalar one otherwise. Both give the same results.
+ */
+interface FeeKernel {
+
+    /**
+     * Replace each minute of the day in {@code fees[from, to)} with its fee from {@code feeTable}.
+     */
+    void fees(int[] feeTable, int[] fees, int from, int to);
+
+    /**
+     * Sum the highest fee of each single charge window of a day's sorted passages
+     * {@code [from, to)}, whose fees start at {@code fees[feeFrom]}. As in
+     * {@link DayTaxEngine#sumWindowFees}, the sum stops once it reaches the cap and early
+     * exits are counted in {@code meters}, if given.
+     */
+    int sumWindowFees(long[] sortedPassages, int from, int to, int[] fees, int feeFrom,
+                      int windowMinutes, int maxDailyTax, CalculationMeters meters);
+
+    /**
+     * The vector kernel if the module is available, otherwise the scalar kernel.
+     */
+    static FeeKernel load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // By name, so nothing links against the module unless it is there
+                return (FeeKernel) Class.forName("com.gothenburg.tax.service.VectorFeeKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                // Fall back to the scalar kernel
+            }
+        }
+        return ScalarFeeKernel.INSTANCE;
+    }
+
+    /**
+     * The single charge scan over precomputed fees, passage by passage. Shared by both kernels.
+     */
+    static int scanWindows(long[] sortedPassages, int from, int to, int[] fees, int feeFrom,
+                           int windowMinutes, int maxDailyTax, CalculationMeters meters) {
+        if (from >= to) {
+            return 0;
+        }
+
+        int dailyTotal = 0;
+        long windowStart = sortedPassages[from];
+        int windowMaxFee = fees[feeFrom];
+
+        for (int i = from + 1; i < to; i++) {
+            if (dailyTotal + windowMaxFee >= maxDailyTax) {
+                if (meters != null) {
+                    meters.earlyExits().increment();
+                    meters.skippedCap().increment(to - i);
+                }
+                return dailyTotal + windowMaxFee;
+            }
+
+            long passage = sortedPassages[i];
+            int fee = fees[feeFrom + i - from];
+            if ((passage - windowStart) / 60 <= windowMinutes) {
+                windowMaxFee = Math.max(windowMaxFee, fee);
+            } else {
+                dailyTotal += windowMaxFee;
+                windowStart = passage;
+                windowMaxFee = fee;
+            }
+        }
+        return dailyTotal + windowMaxFee;
+    }
+}
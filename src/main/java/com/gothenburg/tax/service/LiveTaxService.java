@@ -0,0 +1,241 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.model.LiveTaxStatus;
+import com.gothenburg.tax.model.Passage;
+import com.gothenburg.tax.model.VehicleType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a running daily tax per vehicle for passages received in near real time.
+ *
+ * Each vehicle holds an immutable {@link RunningDay} (open window start, window max fee,
+ * closed-window total) that is replaced in O(1) per passage. Updates go through
+ * {@link ConcurrentHashMap#compute}, which only locks the vehicle's hash bin, and reads
+ * never block. State for days the feed has moved past is evicted periodically.
+ *
+ * Each vehicle's passages must arrive in time order.
+ *
+ * A single writer that must only apply passages it has made durable, such as
+ * {@link PassageJournal}, checks them in a {@link Batch} first and applies the batch once
+ * they are written.
+ */
+@Service
+public class LiveTaxService {
+
+    private final CongestionTaxCalculator calculator;
+    private final TollFreeDateService tollFreeDateService;
+    private final int retainedDays;
+    private final Map<String, CityState> cities = new ConcurrentHashMap<>();
+
+    public LiveTaxService(
+            CongestionTaxCalculator calculator,
+            TollFreeDateService tollFreeDateService,
+            @Value("${tax.live.retained-days:0}") int retainedDays) {
+        this.calculator = calculator;
+        this.tollFreeDateService = tollFreeDateService;
+        this.retainedDays = Math.max(0, retainedDays);
+    }
+
+    /**
+     * Record a passage and return the vehicle's running total for that day.
+     *
+     * @throws IllegalArgumentException if the passage is older than the vehicle's latest passage,
+     *                                  belongs to a day that has already been closed or to a day
+     *                                  no rule version covers
+     */
+    public LiveTaxStatus ingest(Passage passage, String city) {
+        CityTaxRules cityRules = calculator.getRules(city);
+        CityState state = cities.computeIfAbsent(cityRules.getCity(), c -> new CityState());
+
+        long epochSecond = PassageTimestampParser.parseEpochSecond(passage.timestamp());
+        long epochDay = PassageTimestampParser.epochDay(epochSecond);
+        CompiledTaxRules rules = rulesFor(cityRules, epochDay);
+
+        checkOpen(epochDay, state.latestDay.accumulateAndGet(epochDay, Math::max));
+
+        RunningDay day = state.vehicles.compute(passage.vehicleId(),
+                (id, current) -> RunningDay.next(current, passage.vehicleType(), epochSecond, epochDay, rules,
+                        tollFreeDateService));
+        return status(passage.vehicleId(), day, rules);
+    }
+
+    /**
+     * Start a batch of passages for a city, to be checked now and applied later.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     */
+    public Batch batch(String city) {
+        CityTaxRules cityRules = calculator.getRules(city);
+        return new Batch(cityRules, cities.computeIfAbsent(cityRules.getCity(), c -> new CityState()));
+    }
+
+    private static CompiledTaxRules rulesFor(CityTaxRules cityRules, long epochDay) {
+        CompiledTaxRules rules = cityRules.forDay((int) epochDay);
+        if (rules == null) {
+            throw new IllegalArgumentException("No tax rules for " + cityRules.getCity() + " on "
+                    + LocalDate.ofEpochDay(epochDay));
+        }
+        return rules;
+    }
+
+    private void checkOpen(long epochDay, long latestDay) {
+        if (epochDay < latestDay - retainedDays) {
+            throw new IllegalArgumentException("Passage on " + LocalDate.ofEpochDay(epochDay)
+                    + " arrived after that day was closed");
+        }
+    }
+
+    /**
+     * Running total for a vehicle on the latest day seen in the city's feed.
+     *
+     * @throws IllegalArgumentException if the city is unknown, or if a rule reload has left
+     *                                  the vehicle's day without a rule version
+     */
+    public LiveTaxStatus currentTotal(String vehicleId, String city) {
+        CityTaxRules cityRules = calculator.getRules(city);
+        CityState state = cities.get(cityRules.getCity());
+        if (state == null) {
+            return new LiveTaxStatus(vehicleId, null, 0, 0);
+        }
+
+        long today = state.latestDay.get();
+        RunningDay day = state.vehicles.get(vehicleId);
+        if (day == null || day.epochDay() != today) {
+            return new LiveTaxStatus(vehicleId, LocalDate.ofEpochDay(today).toString(), 0, 0);
+        }
+        CompiledTaxRules rules = cityRules.forDay((int) day.epochDay());
+        if (rules == null) {
+            throw new IllegalArgumentException("No tax rules for " + cityRules.getCity() + " on "
+                    + LocalDate.ofEpochDay(day.epochDay()));
+        }
+        return status(vehicleId, day, rules);
+    }
+
+    /**
+     * Drop vehicle state for days the feed has moved past, keeping heap usage flat.
+     */
+    @Scheduled(fixedDelayString = "${tax.live.eviction-interval-ms:60000}")
+    public void evictClosedDays() {
+        for (CityState state : cities.values()) {
+            long oldestOpenDay = state.latestDay.get() - retainedDays;
+            state.vehicles.values().removeIf(day -> day.epochDay() < oldestOpenDay);
+        }
+    }
+
+    private static LiveTaxStatus status(String vehicleId, RunningDay day, CompiledTaxRules rules) {
+        return new LiveTaxStatus(vehicleId, LocalDate.ofEpochDay(day.epochDay()).toString(),
+                day.total(rules.getMaxDailyTax()), day.passages());
+    }
+
+    /**
+     * Passages of one city checked in order against the live state and the passages
+     * checked before them, then applied together. Nothing is visible to readers until
+     * {@link #apply}. A batch is used by one thread, and while batches are in use they
+     * must be the city's only writer: state changed by another writer between check and
+     * apply would be overwritten.
+     */
+    public final class Batch {
+        private final CityTaxRules cityRules;
+        private final CityState state;
+        private final Map<String, RunningDay> staged = new HashMap<>();
+        private long latestDay;
+
+        private Batch(CityTaxRules cityRules, CityState state) {
+            this.cityRules = cityRules;
+            this.state = state;
+            this.latestDay = state.latestDay.get();
+        }
+
+        /**
+         * Check a passage and stage it, returning the vehicle's running total once the
+         * batch is applied. A rejected passage leaves the batch unchanged.
+         *
+         * @throws IllegalArgumentException for the passages {@link #ingest} rejects
+         */
+        public LiveTaxStatus check(Passage passage) {
+            long epochSecond = PassageTimestampParser.parseEpochSecond(passage.timestamp());
+            long epochDay = PassageTimestampParser.epochDay(epochSecond);
+            CompiledTaxRules rules = rulesFor(cityRules, epochDay);
+            long latest = Math.max(latestDay, epochDay);
+            checkOpen(epochDay, latest);
+
+            RunningDay current = staged.containsKey(passage.vehicleId())
+                    ? staged.get(passage.vehicleId()) : state.vehicles.get(passage.vehicleId());
+            RunningDay day = RunningDay.next(current, passage.vehicleType(), epochSecond, epochDay, rules,
+                    tollFreeDateService);
+            staged.put(passage.vehicleId(), day);
+            latestDay = latest;
+            return status(passage.vehicleId(), day, rules);
+        }
+
+        /**
+         * Make every staged passage part of the live totals.
+         */
+        public void apply() {
+            state.latestDay.accumulateAndGet(latestDay, Math::max);
+            state.vehicles.putAll(staged);
+        }
+    }
+
+    /**
+     * Live state for one city.
+     */
+    private static final class CityState {
+        final Map<String, RunningDay> vehicles = new ConcurrentHashMap<>();
+        final AtomicLong latestDay = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * A vehicle's running state for one day, following the same single charge rule as
+     * {@link CongestionTaxCalculator#calculateDailyTax}.
+     *
+     * @param epochDay     the day this state belongs to
+     * @param free         whether the vehicle or the day is toll-free
+     * @param windowStart  epoch-second of the passage that opened the current window
+     * @param lastPassage  epoch-second of the latest passage
+     * @param windowMaxFee highest fee seen in the current window
+     * @param closedTotal  sum of the fees of all windows closed so far
+     * @param passages     number of passages received
+     */
+    record RunningDay(long epochDay, boolean free, long windowStart, long lastPassage,
+                      int windowMaxFee, int closedTotal, int passages) {
+
+        static RunningDay next(RunningDay current, VehicleType vehicleType, long epochSecond, long epochDay,
+                               CompiledTaxRules rules, TollFreeDateService tollFreeDateService) {
+            int fee = rules.feeAt(PassageTimestampParser.minuteOfDay(epochSecond));
+
+            if (current == null || epochDay > current.epochDay) {
+                boolean free = rules.isTollFreeVehicle(vehicleType)
+                        || tollFreeDateService.isTollFreeDay((int) epochDay, rules);
+                return new RunningDay(epochDay, free, epochSecond, epochSecond, fee, 0, 1);
+            }
+            if (epochDay < current.epochDay || epochSecond < current.lastPassage) {
+                throw new IllegalArgumentException("Passage at " + LocalDateTime.ofEpochSecond(epochSecond, 0,
+                        ZoneOffset.UTC) + " is earlier than the vehicle's latest passage");
+            }
+
+            if ((epochSecond - current.windowStart) / 60 <= rules.getSingleChargeWindowMinutes()) {
+                return new RunningDay(epochDay, current.free, current.windowStart, epochSecond,
+                        Math.max(current.windowMaxFee, fee), current.closedTotal, current.passages + 1);
+            }
+            return new RunningDay(epochDay, current.free, epochSecond, epochSecond,
+                    fee, current.closedTotal + current.windowMaxFee, current.passages + 1);
+        }
+
+        int total(int maxDailyTax) {
+            return free ? 0 : Math.min(closedTotal + windowMaxFee, maxDailyTax);
+        }
+    }
+}
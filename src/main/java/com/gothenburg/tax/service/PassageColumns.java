@@ -0,0 +1,213 @@
+package com.gothenburg.tax.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One bulk shard's passages held off-heap in three columns: vehicle (a shard-local
+ * number), vehicle type ordinal and epoch-second. Passages are sorted in place by vehicle,
+ * then time, and read back a vehicle at a time, so a shard never needs heap arrays or
+ * objects per passage.
+ *
+ * The columns are direct buffers, sized for the largest shard seen and reused for the
+ * next; they count towards {@code -XX:MaxDirectMemorySize} rather than the heap. Each
+ * column is a single buffer, which is enough for any shard one mapping can address.
+ */
+final class PassageColumns {
+
+    private static final int INSERTION_SORT_MAX = 16;
+
+    private ByteBuffer vehicles = allocate(0);
+    private ByteBuffer types = allocate(0);
+    private ByteBuffer epochSeconds = allocate(0);
+    private int capacity;
+    private int size;
+
+    /**
+     * Empty the columns, making room for at least {@code capacity} passages.
+     */
+    void reset(int capacity) {
+        if (capacity > this.capacity) {
+            vehicles = allocate(Math.multiplyExact(capacity, Integer.BYTES));
+            types = allocate(capacity);
+            epochSeconds = allocate(Math.multiplyExact(capacity, Long.BYTES));
+            this.capacity = capacity;
+        }
+        size = 0;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException past the capacity given to {@link #reset}
+     */
+    void add(int vehicle, int typeOrdinal, long epochSecond) {
+        vehicles.putInt(size * Integer.BYTES, vehicle);
+        types.put(size, (byte) typeOrdinal);
+        epochSeconds.putLong(size * Long.BYTES, epochSecond);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int vehicle(int index) {
+        return vehicles.getInt(index * Integer.BYTES);
+    }
+
+    int typeOrdinal(int index) {
+        return types.get(index);
+    }
+
+    long epochSecond(int index) {
+        return epochSeconds.getLong(index * Long.BYTES);
+    }
+
+    /**
+     * End of the run of passages of the vehicle at {@code from}, once sorted.
+     */
+    int vehicleEnd(int from) {
+        int vehicle = vehicle(from);
+        int end = from + 1;
+        while (end < size && vehicle(end) == vehicle) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * The epoch-seconds of passages {@code [from, to)}.
+     */
+    long[] epochSeconds(int from, int to) {
+        long[] passages = new long[to - from];
+        for (int i = from; i < to; i++) {
+            passages[i - from] = epochSecond(i);
+        }
+        return passages;
+    }
+
+    /**
+     * Sort by vehicle, then epoch-second, in place: quicksort, falling back to heapsort if
+     * the partitions keep coming out unbalanced, and insertion sort for short ranges.
+     */
+    void sort() {
+        quickSort(0, size, 2 * (32 - Integer.numberOfLeadingZeros(size)));
+    }
+
+    private void quickSort(int from, int to, int depth) {
+        while (to - from > INSERTION_SORT_MAX) {
+            if (depth-- == 0) {
+                heapSort(from, to);
+                return;
+            }
+            int split = partition(from, to);
+            // Recurse into the smaller side, so the stack stays logarithmic
+            if (split - from < to - split) {
+                quickSort(from, split, depth);
+                from = split;
+            } else {
+                quickSort(split, to, depth);
+                to = split;
+            }
+        }
+        insertionSort(from, to);
+    }
+
+    /**
+     * Hoare partition around the median of the first, middle and last passages; returns
+     * the split, with neither side empty.
+     */
+    private int partition(int from, int to) {
+        int last = to - 1;
+        int middle = (from + last) >>> 1;
+        if (compare(middle, from) < 0) {
+            swap(middle, from);
+        }
+        if (compare(last, middle) < 0) {
+            swap(last, middle);
+            if (compare(middle, from) < 0) {
+                swap(middle, from);
+            }
+        }
+        int pivotVehicle = vehicle(middle);
+        long pivotEpochSecond = epochSecond(middle);
+
+        int i = from - 1;
+        int j = to;
+        while (true) {
+            do {
+                i++;
+            } while (compare(i, pivotVehicle, pivotEpochSecond) < 0);
+            do {
+                j--;
+            } while (compare(j, pivotVehicle, pivotEpochSecond) > 0);
+            if (i >= j) {
+                return j + 1;
+            }
+            swap(i, j);
+        }
+    }
+
+    private void insertionSort(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(j, j - 1) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private void heapSort(int from, int to) {
+        int count = to - from;
+        for (int root = count / 2 - 1; root >= 0; root--) {
+            siftDown(from, root, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            swap(from, from + end);
+            siftDown(from, 0, end);
+        }
+    }
+
+    private void siftDown(int from, int root, int count) {
+        while (true) {
+            int child = 2 * root + 1;
+            if (child >= count) {
+                return;
+            }
+            if (child + 1 < count && compare(from + child + 1, from + child) > 0) {
+                child++;
+            }
+            if (compare(from + root, from + child) >= 0) {
+                return;
+            }
+            swap(from + root, from + child);
+            root = child;
+        }
+    }
+
+    private int compare(int a, int b) {
+        return compare(a, vehicle(b), epochSecond(b));
+    }
+
+    private int compare(int index, int vehicle, long epochSecond) {
+        int indexVehicle = vehicle(index);
+        if (indexVehicle != vehicle) {
+            return indexVehicle < vehicle ? -1 : 1;
+        }
+        return Long.compare(epochSecond(index), epochSecond);
+    }
+
+    private void swap(int a, int b) {
+        int vehicle = vehicle(a);
+        vehicles.putInt(a * Integer.BYTES, vehicle(b));
+        vehicles.putInt(b * Integer.BYTES, vehicle);
+        byte type = types.get(a);
+        types.put(a, types.get(b));
+        types.put(b, type);
+        long epochSecond = epochSecond(a);
+        epochSeconds.putLong(a * Long.BYTES, epochSecond(b));
+        epochSeconds.putLong(b * Long.BYTES, epochSecond);
+    }
+}
@@ -0,0 +1,716 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.model.LiveTaxStatus;
+import com.gothenburg.tax.model.Passage;
+import com.gothenburg.tax.model.VehicleType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable, file-based log of live passages, so the live totals and the ledger survive a
+ * restart. Disabled unless {@code tax.journal.directory} is set.
+ *
+ * Each city has a directory holding:
+ *
+ * passages.log           appended records: payload length (int), CRC32C of the payload
+ *                        (int), then vehicle type ordinal (byte), epoch-second (long) and
+ *                        the UTF-8 vehicle id
+ * daily-totals.snapshot  the daily tax of every vehicle-day closed so far, and the last
+ *                        closed day
+ *
+ * Appends are group-committed: a single writer thread takes everything queued since its
+ * last write and checks it, in order, in a {@link LiveTaxService.Batch}. Passages the
+ * live service rejects fail there and are never written. The writer writes the rest and
+ * forces them to disk once, and only then applies the batch, so the live totals never
+ * count a passage the log does not hold, the log (and so the snapshot and the ledger)
+ * never holds one the client was told was rejected, and a replay sees passages in the
+ * order they were applied. {@link #ingest} returns once its passage is durable and
+ * applied. With the journal enabled, every live passage must go through it. An
+ * in-memory index of each vehicle's record offsets serves {@link #passages}.
+ *
+ * Every {@code tax.journal.snapshot-interval-ms}, days the log has moved past (see
+ * {@code tax.live.retained-days}) are calculated, added to the snapshot and the ledger,
+ * and their records are compacted out of the log. On startup the snapshot is loaded and
+ * only the remaining tail of the log is replayed into {@link LiveTaxService}; a torn
+ * record at the end of the log is cut off.
+ */
+@Service
+public class PassageJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(PassageJournal.class);
+
+    static final String LOG_FILE = "passages.log";
+    static final String SNAPSHOT_FILE = "daily-totals.snapshot";
+
+    private static final int SNAPSHOT_MAGIC = 0x54415853;
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 9;
+    private static final int MAX_ID_BYTES = 1024;
+    private static final Append STOP = new Append(null, null, 0, null, null);
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+
+    private final CongestionTaxCalculator calculator;
+    private final LiveTaxService liveTaxService;
+    private final TaxLedgerService ledgerService;
+    private final Path directory;
+    private final int retainedDays;
+    private final Map<String, CityLog> cities = new ConcurrentHashMap<>();
+    private final BlockingQueue<Append> pending = new LinkedBlockingQueue<>();
+    /** Appends enqueue under the read lock; stopping takes the write lock. */
+    private final ReadWriteLock queueLock = new ReentrantReadWriteLock();
+    private final ReentrantLock openLock = new ReentrantLock();
+    private Thread writer;
+    private boolean stopped;
+
+    public PassageJournal(
+            CongestionTaxCalculator calculator,
+            LiveTaxService liveTaxService,
+            TaxLedgerService ledgerService,
+            @Value("${tax.journal.directory:}") String directory,
+            @Value("${tax.live.retained-days:0}") int retainedDays) {
+        this.calculator = calculator;
+        this.liveTaxService = liveTaxService;
+        this.ledgerService = ledgerService;
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+        this.retainedDays = Math.max(0, retainedDays);
+    }
+
+    /**
+     * Recover every city's snapshot and log tail, then start the writer.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (directory == null) {
+            log.info("Passage journal disabled (tax.journal.directory not set)");
+            return;
+        }
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> cityDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path cityDirectory : cityDirectories) {
+                CityTaxRules rules;
+                try {
+                    rules = calculator.getRules(cityDirectory.getFileName().toString());
+                } catch (IllegalArgumentException ex) {
+                    log.warn("Skipping passage journal {}: {}", cityDirectory, ex.getMessage());
+                    continue;
+                }
+                recover(rules, cityDirectory);
+            }
+        }
+
+        writer = new Thread(this::write, "tax-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Durably log a passage, then record it with {@link LiveTaxService}; when the journal
+     * is disabled, only the latter.
+     *
+     * @return the vehicle's running total for the passage's day
+     * @throws IllegalArgumentException if no rules are loaded for the city, or the live
+     *                                  service rejects the passage
+     * @throws UncheckedIOException if the log could not be written; the passage is not counted
+     */
+    public LiveTaxStatus ingest(Passage passage, String city) {
+        if (directory == null) {
+            return liveTaxService.ingest(passage, city);
+        }
+        CityTaxRules rules = calculator.getRules(city);
+        long epochSecond = PassageTimestampParser.parseEpochSecond(passage.timestamp());
+        ByteBuffer record = encode(passage.vehicleId(), passage.vehicleType(), epochSecond);
+
+        CompletableFuture<LiveTaxStatus> done = new CompletableFuture<>();
+        queueLock.readLock().lock();
+        try {
+            if (stopped) {
+                throw new IllegalStateException("Passage journal is stopped");
+            }
+            pending.add(new Append(cityLog(rules), passage, epochSecond, record, done));
+        } finally {
+            queueLock.readLock().unlock();
+        }
+        try {
+            return done.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the passage journal", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Passage journal write failed", ex.getCause());
+        }
+    }
+
+    /**
+     * A vehicle's logged passages on days not yet compacted, in the order they arrived.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     */
+    public List<Passage> passages(String vehicleId, String city) {
+        CityTaxRules rules = calculator.getRules(city);
+        CityLog cityLog = directory == null ? null : cities.get(rules.getCity());
+        if (cityLog == null) {
+            return List.of();
+        }
+        try {
+            return cityLog.read(vehicleId);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Snapshot and compact every city's closed days.
+     */
+    @Scheduled(fixedDelayString = "${tax.journal.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        for (CityLog cityLog : cities.values()) {
+            try {
+                cityLog.compact();
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Could not snapshot the passage journal for {}: {}", cityLog.rules.getCity(), ex.toString());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        queueLock.writeLock().lock();
+        try {
+            if (!stopped && writer != null) {
+                pending.add(STOP);
+            }
+            stopped = true;
+        } finally {
+            queueLock.writeLock().unlock();
+        }
+        if (writer != null) {
+            writer.join();
+        }
+        for (CityLog cityLog : cities.values()) {
+            cityLog.close();
+        }
+    }
+
+    private void recover(CityTaxRules rules, Path cityDirectory) throws IOException {
+        long started = System.nanoTime();
+        int closedThroughDay = readSnapshot(rules, cityDirectory.resolve(SNAPSHOT_FILE));
+        CityLog cityLog = new CityLog(rules, cityDirectory, closedThroughDay);
+
+        int[] replayed = new int[1];
+        cityLog.open((vehicleId, vehicleType, epochSecond) -> {
+            if (PassageTimestampParser.epochDay(epochSecond) <= closedThroughDay) {
+                return;
+            }
+            try {
+                liveTaxService.ingest(new Passage(vehicleId, vehicleType, format(epochSecond)), rules.getCity());
+            } catch (IllegalArgumentException ex) {
+                // A day the live state no longer keeps; it is still in the log for the snapshot
+            }
+            replayed[0]++;
+        });
+        cities.put(rules.getCity(), cityLog);
+        log.info("Recovered passage journal for {}: {} passages replayed in {} ms", rules.getCity(), replayed[0],
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Load a snapshot's daily totals into the ledger.
+     *
+     * @return the last closed epoch-day, or {@link Integer#MIN_VALUE} if there is no snapshot
+     */
+    private int readSnapshot(CityTaxRules rules, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Integer.MIN_VALUE;
+        }
+        Map<String, Map<String, Integer>> totals = new HashMap<>();
+        int closedThroughDay;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a passage journal snapshot: " + file);
+            }
+            closedThroughDay = in.readInt();
+            long count = in.readLong();
+            for (long i = 0; i < count; i++) {
+                String vehicleId = in.readUTF();
+                int epochDay = in.readInt();
+                int tax = in.readInt();
+                totals.computeIfAbsent(vehicleId, id -> new HashMap<>())
+                        .put(LocalDate.ofEpochDay(epochDay).toString(), tax);
+            }
+        }
+        totals.forEach((vehicleId, taxByDate) -> ledgerService.record(vehicleId, rules.getCity(), taxByDate));
+        return closedThroughDay;
+    }
+
+    /**
+     * The city's log, opening it on the city's first passage. Not computeIfAbsent: that
+     * would hold a map lock across the file I/O.
+     */
+    private CityLog cityLog(CityTaxRules rules) {
+        CityLog cityLog = cities.get(rules.getCity());
+        if (cityLog != null) {
+            return cityLog;
+        }
+        openLock.lock();
+        try {
+            cityLog = cities.get(rules.getCity());
+            if (cityLog == null) {
+                Path cityDirectory = Files.createDirectories(directory.resolve(rules.getCity()));
+                cityLog = new CityLog(rules, cityDirectory, Integer.MIN_VALUE);
+                cityLog.open((vehicleId, vehicleType, epochSecond) -> {});
+                cities.put(rules.getCity(), cityLog);
+            }
+            return cityLog;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open the passage journal for " + rules.getCity(), ex);
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * The writer thread: write and force everything queued, one batch at a time.
+     */
+    private void write() {
+        List<Append> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            pending.drainTo(batch);
+
+            boolean stop = batch.remove(STOP);
+            Map<CityLog, List<Append>> byCity = new LinkedHashMap<>();
+            for (Append append : batch) {
+                byCity.computeIfAbsent(append.cityLog(), c -> new ArrayList<>()).add(append);
+            }
+            byCity.forEach(CityLog::write);
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private static ByteBuffer encode(String vehicleId, VehicleType vehicleType, long epochSecond) {
+        byte[] id = vehicleId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("vehicleId is longer than " + MAX_ID_BYTES + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + FIXED_PAYLOAD_BYTES + id.length);
+        record.putInt(FIXED_PAYLOAD_BYTES + id.length).putInt(0)
+                .put((byte) vehicleType.ordinal()).putLong(epochSecond).put(id);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_BYTES, record.capacity() - HEADER_BYTES);
+        record.putInt(4, (int) crc.getValue());
+        return record.flip();
+    }
+
+    private static String format(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).format(PassageTimestampParser.DATETIME_FORMAT);
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(String vehicleId, VehicleType vehicleType, long epochSecond) throws IOException;
+    }
+
+    /**
+     * A queued append; {@code done} completes once the record is durable and the passage
+     * has been applied to the live totals.
+     */
+    private record Append(CityLog cityLog, Passage passage, long epochSecond, ByteBuffer record,
+                          CompletableFuture<LiveTaxStatus> done) {}
+
+    /**
+     * Passages of one vehicle on one closed day, collected for the snapshot.
+     */
+    private record VehicleDay(String vehicleId, int epochDay) {}
+
+    /**
+     * One city's log file and its per-vehicle index. The file, the index and compaction
+     * are guarded by {@code lock}; only the writer thread appends.
+     */
+    private final class CityLog {
+        private final CityTaxRules rules;
+        private final Path logFile;
+        private final Path snapshotFile;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, LongList> index = new HashMap<>();
+        private FileChannel channel;
+        private long size;
+        private int closedThroughDay;
+        private long latestDay = Long.MIN_VALUE;
+
+        CityLog(CityTaxRules rules, Path cityDirectory, int closedThroughDay) {
+            this.rules = rules;
+            this.logFile = cityDirectory.resolve(LOG_FILE);
+            this.snapshotFile = cityDirectory.resolve(SNAPSHOT_FILE);
+            this.closedThroughDay = closedThroughDay;
+        }
+
+        /**
+         * Open the log, indexing and visiting every complete record and cutting off a torn
+         * or corrupt tail.
+         */
+        void open(RecordVisitor visitor) throws IOException {
+            index.clear();
+            latestDay = Long.MIN_VALUE;
+            long valid = scan((position, vehicleId, vehicleType, epochSecond) -> {
+                index(vehicleId, position, epochSecond);
+                visitor.visit(vehicleId, vehicleType, epochSecond);
+            });
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() > valid) {
+                log.warn("Cutting {} bytes of incomplete records from {}", channel.size() - valid, logFile);
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            size = valid;
+        }
+
+        /**
+         * Check a batch against the live totals, write and force the passages that pass,
+         * then apply them.
+         */
+        void write(List<Append> appends) {
+            LiveTaxService.Batch live;
+            try {
+                live = liveTaxService.batch(rules.getCity());
+            } catch (RuntimeException ex) {
+                appends.forEach(append -> append.done().completeExceptionally(ex));
+                return;
+            }
+            List<Append> accepted = new ArrayList<>(appends.size());
+            List<LiveTaxStatus> statuses = new ArrayList<>(appends.size());
+            for (Append append : appends) {
+                try {
+                    statuses.add(live.check(append.passage()));
+                    accepted.add(append);
+                } catch (RuntimeException ex) {
+                    append.done().completeExceptionally(ex);
+                }
+            }
+            if (accepted.isEmpty() || !append(accepted)) {
+                return;
+            }
+            live.apply();
+            for (int i = 0; i < accepted.size(); i++) {
+                accepted.get(i).done().complete(statuses.get(i));
+            }
+        }
+
+        /**
+         * @return false, with every append failed, if the batch could not be made durable
+         */
+        private boolean append(List<Append> appends) {
+            lock.lock();
+            try {
+                ByteBuffer[] records = new ByteBuffer[appends.size()];
+                long end = size;
+                for (int i = 0; i < records.length; i++) {
+                    records[i] = appends.get(i).record();
+                    end += records[i].remaining();
+                }
+                channel.position(size);
+                while (channel.position() < end) {
+                    channel.write(records);
+                }
+                channel.force(false);
+
+                long position = size;
+                for (Append append : appends) {
+                    index(append.passage().vehicleId(), position, append.epochSecond());
+                    position += append.record().capacity();
+                }
+                size = end;
+                return true;
+            } catch (IOException | RuntimeException ex) {
+                try {
+                    // Drop whatever part of the batch reached the file
+                    channel.truncate(size);
+                } catch (IOException ignored) {
+                    // Recovery cuts an incomplete tail as well
+                }
+                UncheckedIOException failure = new UncheckedIOException("Could not write passage journal",
+                        ex instanceof IOException io ? io : new IOException(ex));
+                appends.forEach(append -> append.done().completeExceptionally(failure));
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<Passage> read(String vehicleId) throws IOException {
+            lock.lock();
+            try (FileChannel reader = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                LongList offsets = index.get(vehicleId);
+                if (offsets == null) {
+                    return List.of();
+                }
+                List<Passage> passages = new ArrayList<>(offsets.count);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + FIXED_PAYLOAD_BYTES);
+                for (int i = 0; i < offsets.count; i++) {
+                    reader.read(header.clear(), offsets.values[i]);
+                    VehicleType vehicleType = VEHICLE_TYPES[header.get(HEADER_BYTES)];
+                    long epochSecond = header.getLong(HEADER_BYTES + 1);
+                    passages.add(new Passage(vehicleId, vehicleType, format(epochSecond)));
+                }
+                return passages;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Calculate every vehicle-day before the retained days, append their totals to the
+         * snapshot and rewrite the log without them. The snapshot is replaced before the
+         * log, and records of days the snapshot already covers are ignored on recovery, so
+         * a crash between the two leaves a consistent state.
+         */
+        void compact() throws IOException {
+            lock.lock();
+            try {
+                if (latestDay == Long.MIN_VALUE) {
+                    return;
+                }
+                int closeThrough = (int) (latestDay - retainedDays - 1);
+                if (closeThrough <= closedThroughDay) {
+                    return;
+                }
+
+                Map<VehicleDay, LongList> closedDays = new LinkedHashMap<>();
+                Map<String, VehicleType> vehicleTypes = new HashMap<>();
+                Path compactedLog = logFile.resolveSibling(LOG_FILE + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(compactedLog)))) {
+                    scan((position, vehicleId, vehicleType, epochSecond) -> {
+                        int epochDay = PassageTimestampParser.epochDay(epochSecond);
+                        if (epochDay > closeThrough) {
+                            out.write(encode(vehicleId, vehicleType, epochSecond).array());
+                        } else if (epochDay > closedThroughDay) {
+                            vehicleTypes.put(vehicleId, vehicleType);
+                            closedDays.computeIfAbsent(new VehicleDay(vehicleId, epochDay), d -> new LongList())
+                                    .add(epochSecond);
+                        }
+                    });
+                }
+                force(compactedLog);
+
+                Map<String, Map<String, Integer>> totals = new HashMap<>();
+                closedDays.forEach((vehicleDay, passages) -> {
+                    int tax = dayTax(vehicleDay.epochDay(), vehicleTypes.get(vehicleDay.vehicleId()),
+                            Arrays.copyOf(passages.values, passages.count));
+                    if (tax > 0) {
+                        totals.computeIfAbsent(vehicleDay.vehicleId(), id -> new LinkedHashMap<>())
+                                .put(LocalDate.ofEpochDay(vehicleDay.epochDay()).toString(), tax);
+                    }
+                });
+                writeSnapshot(closeThrough, totals);
+                closedThroughDay = closeThrough;
+                totals.forEach((vehicleId, taxByDate) -> ledgerService.record(vehicleId, rules.getCity(), taxByDate));
+
+                channel.close();
+                try {
+                    replace(compactedLog, logFile);
+                } finally {
+                    open((vehicleId, vehicleType, epochSecond) -> {});
+                }
+                log.info("Snapshot of {} passage journal through {}: {} vehicle-days compacted", rules.getCity(),
+                        LocalDate.ofEpochDay(closeThrough), closedDays.size());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int dayTax(int epochDay, VehicleType vehicleType, long[] passages) {
+            CompiledTaxRules dayRules = rules.forDay(epochDay);
+            if (dayRules == null) {
+                return 0;
+            }
+            Arrays.sort(passages);
+            return calculator.calculateDayTax(vehicleType, epochDay, passages, 0, passages.length, dayRules);
+        }
+
+        /**
+         * Write the previous snapshot's entries plus {@code totals} to a new snapshot.
+         */
+        private void writeSnapshot(int closeThrough, Map<String, Map<String, Integer>> totals) throws IOException {
+            long added = totals.values().stream().mapToLong(Map::size).sum();
+            Path newSnapshot = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(newSnapshot.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                DataInputStream previous = Files.exists(snapshotFile)
+                        ? new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile))) : null;
+                try (InputStream ignored = previous) {
+                    long count = 0;
+                    if (previous != null) {
+                        previous.readInt();
+                        previous.readInt();
+                        count = previous.readLong();
+                    }
+                    out.writeInt(SNAPSHOT_MAGIC);
+                    out.writeInt(closeThrough);
+                    out.writeLong(count + added);
+                    for (long i = 0; i < count; i++) {
+                        out.writeUTF(previous.readUTF());
+                        out.writeInt(previous.readInt());
+                        out.writeInt(previous.readInt());
+                    }
+                }
+                for (Map.Entry<String, Map<String, Integer>> vehicle : totals.entrySet()) {
+                    for (Map.Entry<String, Integer> day : vehicle.getValue().entrySet()) {
+                        out.writeUTF(vehicle.getKey());
+                        out.writeInt((int) LocalDate.parse(day.getKey()).toEpochDay());
+                        out.writeInt(day.getValue());
+                    }
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            replace(newSnapshot, snapshotFile);
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex) {
+                log.warn("Could not close {}: {}", logFile, ex.toString());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void index(String vehicleId, long position, long epochSecond) {
+            index.computeIfAbsent(vehicleId, id -> new LongList()).add(position);
+            latestDay = Math.max(latestDay, PassageTimestampParser.epochDay(epochSecond));
+        }
+
+        /**
+         * Visit every complete, intact record in the log file.
+         *
+         * @return the length of the log up to the end of the last intact record
+         */
+        private long scan(PositionedVisitor visitor) throws IOException {
+            if (!Files.exists(logFile)) {
+                return 0;
+            }
+            long position = 0;
+            byte[] payload = new byte[FIXED_PAYLOAD_BYTES + MAX_ID_BYTES];
+            CRC32C crc = new CRC32C();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile),
+                    1 << 16))) {
+                while (true) {
+                    int length;
+                    int checksum;
+                    try {
+                        length = in.readInt();
+                        checksum = in.readInt();
+                        if (length < FIXED_PAYLOAD_BYTES || length > payload.length) {
+                            return position;
+                        }
+                        in.readFully(payload, 0, length);
+                    } catch (EOFException ex) {
+                        return position;
+                    }
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum || payload[0] < 0 || payload[0] >= VEHICLE_TYPES.length) {
+                        return position;
+                    }
+
+                    ByteBuffer fields = ByteBuffer.wrap(payload, 0, length);
+                    VehicleType vehicleType = VEHICLE_TYPES[fields.get()];
+                    long epochSecond = fields.getLong();
+                    String vehicleId = new String(payload, FIXED_PAYLOAD_BYTES, length - FIXED_PAYLOAD_BYTES,
+                            StandardCharsets.UTF_8);
+                    visitor.visit(position, vehicleId, vehicleType, epochSecond);
+                    position += HEADER_BYTES + length;
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PositionedVisitor {
+        void visit(long position, String vehicleId, VehicleType vehicleType, long epochSecond) throws IOException;
+    }
+
+    /**
+     * A growable list of record positions or passage times.
+     */
+    private static final class LongList {
+        long[] values = new long[4];
+        int count;
+
+        void add(long value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+        }
+    }
+}
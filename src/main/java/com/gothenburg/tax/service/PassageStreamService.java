@@ -0,0 +1,230 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.model.Passage;
+import com.gothenburg.tax.model.PassageError;
+import com.gothenburg.tax.model.PassageLogFormat;
+import com.gothenburg.tax.model.VehicleDayTax;
+import com.gothenburg.tax.model.VehicleType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Calculates congestion tax over a line-per-passage log (NDJSON or CSV) without
+ * holding the whole log in memory.
+ *
+ * Passages are collected per open vehicle-day. A vehicle-day is calculated and
+ * written out as soon as the vehicle passes on a later day, or once the log has
+ * moved more than {@code allowedLatenessDays} past it. Memory is therefore bounded
+ * by the number of open vehicle-days, not by the size of the input.
+ *
+ * Each vehicle's passages must arrive in day order. Lines that cannot be processed
+ * are reported inline as {@link PassageError} records and otherwise skipped.
+ */
+@Service
+public class PassageStreamService {
+
+    private final CongestionTaxCalculator calculator;
+    private final ObjectMapper objectMapper;
+    private final int allowedLatenessDays;
+
+    public PassageStreamService(
+            CongestionTaxCalculator calculator,
+            ObjectMapper objectMapper,
+            @Value("${tax.stream.allowed-lateness-days:1}") int allowedLatenessDays) {
+        this.calculator = calculator;
+        this.objectMapper = objectMapper;
+        this.allowedLatenessDays = Math.max(0, allowedLatenessDays);
+    }
+
+    /**
+     * Read passages from {@code in} and write one NDJSON line per vehicle-day to {@code out}.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city; nothing is written in that case
+     */
+    public void process(BufferedReader in, PassageLogFormat format, Writer out, String city) throws IOException {
+        Aggregation aggregation = new Aggregation(calculator.getRules(city), out);
+
+        String line;
+        long lineNumber = 0;
+        boolean firstRecord = true;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Passage passage = format == PassageLogFormat.CSV
+                        ? parseCsv(line, firstRecord)
+                        : objectMapper.readValue(line, Passage.class);
+                firstRecord = false;
+                if (passage != null) {
+                    aggregation.add(passage);
+                }
+            } catch (DateTimeParseException | IllegalArgumentException | JacksonException ex) {
+                writeLine(out, new PassageError(lineNumber, ex.getMessage()));
+            }
+        }
+
+        aggregation.closeAll();
+        out.flush();
+    }
+
+    /**
+     * Parse a vehicleId,vehicleType,timestamp line, returning null for a header row.
+     */
+    private static Passage parseCsv(String line, boolean firstRecord) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 3) {
+            throw new IllegalArgumentException(
+                    "Expected 3 CSV fields (vehicleId,vehicleType,timestamp) but found " + fields.length);
+        }
+        String vehicleId = fields[0].trim();
+        if (firstRecord && vehicleId.equalsIgnoreCase("vehicleId")) {
+            return null;
+        }
+
+        String type = fields[1].trim();
+        try {
+            return new Passage(vehicleId, VehicleType.valueOf(type), fields[2]);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown vehicleType: " + type);
+        }
+    }
+
+    private void writeLine(Writer out, Object record) throws IOException {
+        out.write(objectMapper.writeValueAsString(record));
+        out.write('\n');
+    }
+
+    /**
+     * Passages collected so far for one vehicle on one day.
+     */
+    private static final class OpenDay {
+        final String vehicleId;
+        final VehicleType vehicleType;
+        final int epochDay;
+        final CompiledTaxRules rules;
+        long[] passages = new long[8];
+        int count;
+
+        OpenDay(String vehicleId, VehicleType vehicleType, int epochDay, CompiledTaxRules rules) {
+            this.vehicleId = vehicleId;
+            this.vehicleType = vehicleType;
+            this.epochDay = epochDay;
+            this.rules = rules;
+        }
+
+        void add(long epochSecond) {
+            if (count == passages.length) {
+                passages = Arrays.copyOf(passages, count * 2);
+            }
+            passages[count++] = epochSecond;
+        }
+    }
+
+    /**
+     * Per-request aggregation state.
+     */
+    private final class Aggregation {
+        private final CityTaxRules rules;
+        private final Writer out;
+        private final Map<String, OpenDay> openDays = new LinkedHashMap<>();
+        private long latestDay = Long.MIN_VALUE;
+
+        Aggregation(CityTaxRules rules, Writer out) {
+            this.rules = rules;
+            this.out = out;
+        }
+
+        void add(Passage passage) throws IOException {
+            if (passage.vehicleId() == null || passage.vehicleId().isBlank()) {
+                throw new IllegalArgumentException("vehicleId is required");
+            }
+            if (passage.vehicleType() == null) {
+                throw new IllegalArgumentException("vehicleType is required");
+            }
+            if (passage.timestamp() == null) {
+                throw new IllegalArgumentException("timestamp is required");
+            }
+
+            long epochSecond = PassageTimestampParser.parseEpochSecond(passage.timestamp());
+            int day = PassageTimestampParser.epochDay(epochSecond);
+
+            if (day > latestDay) {
+                latestDay = day;
+                closeBefore(latestDay - allowedLatenessDays);
+            } else if (day < latestDay - allowedLatenessDays) {
+                throw new IllegalArgumentException("Passage on " + LocalDate.ofEpochDay(day)
+                        + " arrived after that day was closed");
+            }
+
+            OpenDay open = openDays.get(passage.vehicleId());
+            if (open != null && open.epochDay != day) {
+                if (day < open.epochDay) {
+                    throw new IllegalArgumentException("Passage for vehicle " + passage.vehicleId() + " on "
+                            + LocalDate.ofEpochDay(day) + " arrived after a later day");
+                }
+                openDays.remove(passage.vehicleId());
+                emit(open);
+                open = null;
+            }
+            if (open != null && open.vehicleType != passage.vehicleType()) {
+                // The day is taxed as one vehicle type; a change would silently use the first
+                throw new IllegalArgumentException("Passage for vehicle " + passage.vehicleId() + " as "
+                        + passage.vehicleType() + " on " + LocalDate.ofEpochDay(day) + " follows passages as "
+                        + open.vehicleType);
+            }
+            if (open == null) {
+                CompiledTaxRules dayRules = rules.forDay(day);
+                if (dayRules == null) {
+                    throw new IllegalArgumentException("No tax rules for " + rules.getCity() + " on "
+                            + LocalDate.ofEpochDay(day));
+                }
+                open = new OpenDay(passage.vehicleId(), passage.vehicleType(), day, dayRules);
+                openDays.put(passage.vehicleId(), open);
+            }
+            open.add(epochSecond);
+        }
+
+        private void closeBefore(long epochDay) throws IOException {
+            Iterator<OpenDay> it = openDays.values().iterator();
+            while (it.hasNext()) {
+                OpenDay open = it.next();
+                if (open.epochDay < epochDay) {
+                    it.remove();
+                    emit(open);
+                }
+            }
+        }
+
+        void closeAll() throws IOException {
+            closeBefore(Long.MAX_VALUE);
+        }
+
+        private void emit(OpenDay open) throws IOException {
+            LocalDate date = LocalDate.ofEpochDay(open.epochDay);
+            boolean tollFree = open.rules.isTollFreeVehicle(open.vehicleType);
+
+            int tax = 0;
+            if (!tollFree) {
+                Arrays.sort(open.passages, 0, open.count);
+                tax = calculator.calculateDayTax(open.vehicleType, open.epochDay, open.passages, 0, open.count, open.rules);
+            }
+            writeLine(out, new VehicleDayTax(open.vehicleId, open.vehicleType, date.toString(), tax, tollFree));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.gothenburg.tax.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses passage timestamps in the fixed "yyyy-MM-dd HH:mm:ss" format straight to
+ * epoch-seconds (UTC-based, i.e. local time with no zone applied).
+ *
+ * The common case is read character by character without allocating. Anything the
+ * fast path does not fully understand is handed to {@link #DATETIME_FORMAT}, so
+ * results and {@link java.time.format.DateTimeParseException}s stay identical to
+ * parsing with the formatter directly.
+ */
+public final class PassageTimestampParser {
+
+    public static final DateTimeFormatter DATETIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static final int SECONDS_PER_DAY = 86_400;
+
+    private static final int LENGTH = 19;
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+
+    private PassageTimestampParser() {}
+
+    /**
+     * Parse a timestamp, ignoring leading and trailing whitespace.
+     *
+     * @return seconds since 1970-01-01 00:00:00
+     * @throws java.time.format.DateTimeParseException if the text is not a valid timestamp
+     */
+    public static long parseEpochSecond(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (end - start == LENGTH) {
+            long epochSecond = parseFixed(text, start);
+            if (epochSecond != Long.MIN_VALUE) {
+                return epochSecond;
+            }
+        }
+        return LocalDateTime.parse(text.toString().trim(), DATETIME_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Epoch-day of an epoch-second.
+     */
+    public static int epochDay(long epochSecond) {
+        return (int) Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    }
+
+    /**
+     * Minute of the day (0 - 1439) of an epoch-second.
+     */
+    public static int minuteOfDay(long epochSecond) {
+        return (int) (Math.floorMod(epochSecond, SECONDS_PER_DAY) / 60);
+    }
+
+    /**
+     * Parse exactly 19 characters at {@code start}, or return {@link Long#MIN_VALUE}
+     * if the text is anything other than a plain, valid timestamp.
+     */
+    private static long parseFixed(CharSequence text, int start) {
+        if (text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-' || text.charAt(start + 10) != ' '
+                || text.charAt(start + 13) != ':' || text.charAt(start + 16) != ':') {
+            return Long.MIN_VALUE;
+        }
+
+        int year = digits(text, start, 4);
+        int month = digits(text, start + 5, 2);
+        int day = digits(text, start + 8, 2);
+        int hour = digits(text, start + 11, 2);
+        int minute = digits(text, start + 14, 2);
+        int second = digits(text, start + 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return Long.MIN_VALUE;
+        }
+
+        // Out-of-range fields, year 0 and days past the end of the month are left to the
+        // formatter, which either rejects them or resolves them the way it always has
+        if (year == 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second;
+    }
+
+    /**
+     * Read {@code count} ASCII digits, or return -1 if any character is not a digit.
+     */
+    private static int digits(CharSequence text, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = text.charAt(offset + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Same calculation as {@link java.time.LocalDate#toEpochDay()} for a validated positive year.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+}
@@ -0,0 +1,26 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+
+/**
+ * The {@link FeeKernel} for JVMs without the vector module: one passage at a time.
+ */
+final class ScalarFeeKernel implements FeeKernel {
+
+    static final ScalarFeeKernel INSTANCE = new ScalarFeeKernel();
+
+    private ScalarFeeKernel() {}
+
+    @Override
+    public void fees(int[] feeTable, int[] fees, int from, int to) {
+        for (int i = from; i < to; i++) {
+            fees[i] = feeTable[fees[i]];
+        }
+    }
+
+    @Override
+    public int sumWindowFees(long[] sortedPassages, int from, int to, int[] fees, int feeFrom,
+                             int windowMinutes, int maxDailyTax, CalculationMeters meters) {
+        return FeeKernel.scanWindows(sortedPassages, from, to, fees, feeFrom, windowMinutes, maxDailyTax, meters);
+    }
+}
@@ -0,0 +1,77 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+/**
+ * Template for {@link DayTaxEngines#specialise}: never used as is, but defined again as a
+ * hidden class for each compiled rule set, with that rule set's fee function, window and
+ * cap as class data.
+ *
+ * Static finals of a hidden class are constants to the JIT, so the window length and cap
+ * are folded into the loop and the fee function, a tree of constant breakpoints, is
+ * inlined into it.
+ */
+final class SpecialisedDayTax implements DayTaxEngine {
+
+    /** (int minuteOfDay) int */
+    private static final MethodHandle FEE;
+    private static final int WINDOW_MINUTES;
+    private static final int MAX_DAILY_TAX;
+
+    static {
+        List<?> data;
+        try {
+            data = MethodHandles.classData(MethodHandles.lookup(), "_", List.class);
+        } catch (IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+        FEE = (MethodHandle) data.get(0);
+        WINDOW_MINUTES = (Integer) data.get(1);
+        MAX_DAILY_TAX = (Integer) data.get(2);
+    }
+
+    @Override
+    public int feeAt(int minuteOfDay) {
+        try {
+            return (int) FEE.invokeExact(minuteOfDay);
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public int sumWindowFees(long[] sortedPassages, int from, int to, CalculationMeters meters) {
+        if (from >= to) {
+            return 0;
+        }
+
+        int dailyTotal = 0;
+        long windowStart = sortedPassages[from];
+        int windowMaxFee = feeAt(PassageTimestampParser.minuteOfDay(windowStart));
+
+        for (int i = from + 1; i < to; i++) {
+            if (dailyTotal + windowMaxFee >= MAX_DAILY_TAX) {
+                if (meters != null) {
+                    meters.earlyExits().increment();
+                    meters.skippedCap().increment(to - i);
+                }
+                return dailyTotal + windowMaxFee;
+            }
+
+            long passage = sortedPassages[i];
+            int fee = feeAt(PassageTimestampParser.minuteOfDay(passage));
+            if ((passage - windowStart) / 60 <= WINDOW_MINUTES) {
+                windowMaxFee = Math.max(windowMaxFee, fee);
+            } else {
+                dailyTotal += windowMaxFee;
+                windowStart = passage;
+                windowMaxFee = fee;
+            }
+        }
+        return dailyTotal + windowMaxFee;
+    }
+}
@@ -0,0 +1,215 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.LedgerGranularity;
+import com.gothenburg.tax.model.LedgerPeriod;
+import com.gothenburg.tax.model.LedgerRollup;
+import com.gothenburg.tax.model.LedgerTotal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps each vehicle's calculated daily taxes so totals over any period can be answered
+ * without recalculating its passage history.
+ *
+ * A vehicle's ledger is an immutable {@link VehicleLedger} of taxed days in order with
+ * prefix sums of their amounts, so a range total is two binary searches and a
+ * subtraction. Recording replaces the ledger through {@link ConcurrentHashMap#compute},
+ * and a recalculated day replaces the amount recorded for it before.
+ */
+@Service
+public class TaxLedgerService {
+
+    private final CongestionTaxCalculator calculator;
+    private final int maxVehicles;
+    private final Map<String, Map<String, VehicleLedger>> cities = new ConcurrentHashMap<>();
+
+    public TaxLedgerService(
+            CongestionTaxCalculator calculator,
+            @Value("${tax.ledger.max-vehicles:100000}") int maxVehicles) {
+        this.calculator = calculator;
+        this.maxVehicles = maxVehicles;
+    }
+
+    /**
+     * Record a vehicle's calculated daily taxes ("yyyy-MM-dd" to SEK), as in
+     * {@link CongestionTaxCalculator.TaxResult#taxByDate()}. Once the city's ledger holds
+     * {@code tax.ledger.max-vehicles} vehicles, new vehicles are not recorded.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     */
+    public void record(String vehicleId, String city, Map<String, Integer> taxByDate) {
+        if (taxByDate.isEmpty()) {
+            return;
+        }
+        CityTaxRules rules = calculator.getRules(city);
+        Map<String, VehicleLedger> vehicles = cities.computeIfAbsent(rules.getCity(), c -> new ConcurrentHashMap<>());
+
+        int[] days = new int[taxByDate.size()];
+        int[] amounts = new int[taxByDate.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : taxByDate.entrySet()) {
+            days[n] = (int) LocalDate.parse(entry.getKey()).toEpochDay();
+            amounts[n++] = entry.getValue();
+        }
+        sortByDay(days, amounts);
+
+        vehicles.compute(vehicleId, (id, current) -> {
+            if (current == null) {
+                return vehicles.size() >= maxVehicles ? null : VehicleLedger.EMPTY.merge(days, amounts);
+            }
+            return current.merge(days, amounts);
+        });
+    }
+
+    /**
+     * Tax a vehicle owed from {@code from} to {@code to}, both inclusive; zero for a
+     * vehicle with nothing recorded.
+     *
+     * @throws IllegalArgumentException if {@code from} is after {@code to} or no rules are
+     *                                  loaded for the city
+     */
+    public LedgerTotal total(String vehicleId, String city, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from " + from + " is after to " + to);
+        }
+        VehicleLedger ledger = ledger(vehicleId, city);
+        int start = ledger.indexOf(from.toEpochDay(), 0);
+        int end = ledger.indexOf(to.toEpochDay() + 1, start);
+        return new LedgerTotal(vehicleId, from.toString(), to.toString(), ledger.sum(start, end), end - start);
+    }
+
+    /**
+     * A vehicle's totals per month or year, for every period with tax owed.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     */
+    public LedgerRollup rollup(String vehicleId, String city, LedgerGranularity granularity) {
+        VehicleLedger ledger = ledger(vehicleId, city);
+        List<LedgerPeriod> periods = new ArrayList<>();
+        int start = 0;
+        while (start < ledger.size()) {
+            LocalDate day = LocalDate.ofEpochDay(ledger.days[start]);
+            String period;
+            LocalDate next;
+            if (granularity == LedgerGranularity.MONTH) {
+                period = YearMonth.from(day).toString();
+                next = day.withDayOfMonth(1).plusMonths(1);
+            } else {
+                period = Integer.toString(day.getYear());
+                next = day.withDayOfYear(1).plusYears(1);
+            }
+            int end = ledger.indexOf(next.toEpochDay(), start);
+            periods.add(new LedgerPeriod(period, ledger.sum(start, end), end - start));
+            start = end;
+        }
+        return new LedgerRollup(vehicleId, granularity, periods);
+    }
+
+    private VehicleLedger ledger(String vehicleId, String city) {
+        Map<String, VehicleLedger> vehicles = cities.get(calculator.getRules(city).getCity());
+        VehicleLedger ledger = vehicles == null ? null : vehicles.get(vehicleId);
+        return ledger == null ? VehicleLedger.EMPTY : ledger;
+    }
+
+    /**
+     * Insertion sort of a result's days, which the calculator already emits in order.
+     */
+    private static void sortByDay(int[] days, int[] amounts) {
+        for (int i = 1; i < days.length; i++) {
+            int day = days[i];
+            int amount = amounts[i];
+            int j = i - 1;
+            while (j >= 0 && days[j] > day) {
+                days[j + 1] = days[j];
+                amounts[j + 1] = amounts[j];
+                j--;
+            }
+            days[j + 1] = day;
+            amounts[j + 1] = amount;
+        }
+    }
+
+    /**
+     * One vehicle's taxed days (epoch-days, ascending) and prefix sums of their amounts:
+     * {@code prefix[i]} is the total of the first {@code i} days.
+     */
+    static final class VehicleLedger {
+        static final VehicleLedger EMPTY = new VehicleLedger(new int[0], new long[1]);
+
+        private final int[] days;
+        private final long[] prefix;
+
+        private VehicleLedger(int[] days, long[] prefix) {
+            this.days = days;
+            this.prefix = prefix;
+        }
+
+        int size() {
+            return days.length;
+        }
+
+        /**
+         * Index of the first day on or after {@code epochDay}, searching from {@code from}.
+         */
+        int indexOf(long epochDay, int from) {
+            int low = from;
+            int high = days.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] < epochDay) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        long sum(int start, int end) {
+            return prefix[end] - prefix[start];
+        }
+
+        /**
+         * A ledger with the given days (ascending) recorded, replacing any amounts already
+         * recorded for them. Days with no tax are left out.
+         */
+        VehicleLedger merge(int[] newDays, int[] newAmounts) {
+            int[] days = new int[this.days.length + newDays.length];
+            long[] prefix = new long[days.length + 1];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < this.days.length || j < newDays.length) {
+                int day;
+                int amount;
+                if (j == newDays.length || (i < this.days.length && this.days[i] < newDays[j])) {
+                    day = this.days[i];
+                    amount = (int) (this.prefix[i + 1] - this.prefix[i]);
+                    i++;
+                } else {
+                    if (i < this.days.length && this.days[i] == newDays[j]) {
+                        i++;
+                    }
+                    day = newDays[j];
+                    amount = newAmounts[j];
+                    j++;
+                }
+                if (amount != 0) {
+                    days[n] = day;
+                    prefix[n + 1] = prefix[n] + amount;
+                    n++;
+                }
+            }
+            return new VehicleLedger(Arrays.copyOf(days, n), Arrays.copyOf(prefix, n + 1));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.VehicleType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Micrometer meters for tax calculations.
+ *
+ * Calculation meters are tagged by city and vehicle type. Both come from a bounded set
+ * (loaded rule files and the {@link VehicleType} enum), so the meters for a city are
+ * registered once on first use and looked up without allocating afterwards. Request
+ * timers are cached the same way, by endpoint and outcome.
+ */
+@Component
+public class TaxMetrics {
+
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+
+    private final MeterRegistry registry;
+    private final Map<String, CalculationMeters[]> metersByCity = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Timer>> requestTimers = new ConcurrentHashMap<>();
+    private final Counter ruleLookupHits;
+    private final Counter ruleLookupMisses;
+
+    public TaxMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.ruleLookupHits = ruleLookups(registry, "hit");
+        this.ruleLookupMisses = ruleLookups(registry, "miss");
+    }
+
+    private static Counter ruleLookups(MeterRegistry registry, String outcome) {
+        return Counter.builder("tax.rules.lookups")
+                .description("Tax rule lookups by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Record a tax rule lookup. Misses are not tagged by city, which is unvalidated input.
+     */
+    public void ruleLookup(boolean found) {
+        (found ? ruleLookupHits : ruleLookupMisses).increment();
+    }
+
+    /**
+     * Meters for calculations in a city (use the canonical rule city name) and vehicle type.
+     */
+    public CalculationMeters calculation(String city, VehicleType vehicleType) {
+        return metersByCity.computeIfAbsent(city, this::register)[vehicleType.ordinal()];
+    }
+
+    /**
+     * Timer for a request to an API endpoint.
+     *
+     * @param outcome "success" or "error"
+     */
+    public Timer request(String endpoint, String outcome) {
+        return requestTimers.computeIfAbsent(endpoint, e -> new ConcurrentHashMap<>())
+                .computeIfAbsent(outcome, o -> Timer.builder("tax.requests")
+                        .description("Time to handle a tax calculation request")
+                        .tags("endpoint", endpoint, "outcome", outcome)
+                        .register(registry));
+    }
+
+    private CalculationMeters[] register(String city) {
+        CalculationMeters[] meters = new CalculationMeters[VEHICLE_TYPES.length];
+        for (VehicleType vehicleType : VEHICLE_TYPES) {
+            Tags tags = Tags.of("city", city, "vehicle.type", vehicleType.name());
+            meters[vehicleType.ordinal()] = new CalculationMeters(
+                    Timer.builder("tax.calculation")
+                            .description("Total time to calculate the tax for one vehicle")
+                            .tags(tags).register(registry),
+                    Timer.builder("tax.calculation.parse")
+                            .description("Time to parse and sort passage timestamps")
+                            .tags(tags).register(registry),
+                    Timer.builder("tax.calculation.group")
+                            .description("Time to split sorted passages into days")
+                            .tags(tags).register(registry),
+                    Timer.builder("tax.calculation.day")
+                            .description("Time to calculate the tax for one chargeable day")
+                            .tags(tags).register(registry),
+                    DistributionSummary.builder("tax.calculation.passages")
+                            .description("Passages per calculation")
+                            .baseUnit("passages")
+                            .tags(tags).register(registry),
+                    DistributionSummary.builder("tax.calculation.days")
+                            .description("Distinct days per calculation")
+                            .baseUnit("days")
+                            .tags(tags).register(registry),
+                    Counter.builder("tax.calculation.toll.free")
+                            .description("Calculations or days short-circuited as toll-free")
+                            .tags(tags).tag("reason", "vehicle").register(registry),
+                    Counter.builder("tax.calculation.toll.free")
+                            .description("Calculations or days short-circuited as toll-free")
+                            .tags(tags).tag("reason", "date").register(registry),
+                    Counter.builder("tax.calculation.cap.hits")
+                            .description("Days charged the daily maximum")
+                            .tags(tags).register(registry),
+                    Counter.builder("tax.calculation.early.exits")
+                            .description("Days whose remaining passages were not evaluated once the cap was reached")
+                            .tags(tags).register(registry),
+                    Counter.builder("tax.calculation.passages.skipped")
+                            .description("Passages left unevaluated because the outcome was already known")
+                            .baseUnit("passages")
+                            .tags(tags).tag("reason", "date").register(registry),
+                    Counter.builder("tax.calculation.passages.skipped")
+                            .description("Passages left unevaluated because the outcome was already known")
+                            .baseUnit("passages")
+                            .tags(tags).tag("reason", "cap").register(registry));
+        }
+        return meters;
+    }
+
+    /**
+     * The meters for one city and vehicle type.
+     */
+    public record CalculationMeters(Timer total, Timer parse, Timer group, Timer day,
+                                    DistributionSummary passages, DistributionSummary days,
+                                    Counter tollFreeVehicle, Counter tollFreeDate, Counter capHits,
+                                    Counter earlyExits, Counter skippedTollFreeDate, Counter skippedCap) {}
+}
@@ -0,0 +1,227 @@
+package com.gothenburg.tax.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.PassageRequest;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caches calculation results per normalised request: vehicle type, sorted passages, city
+ * and the version of the city's rules. Passages are normalised as the calculator reads
+ * them, with each toll-free day reduced to one passage, so requests that differ only in
+ * their toll-free passages share an entry.
+ *
+ * Because the rule version is part of the key, a rule change makes every older entry
+ * unreachable straight away; those entries then age out by size or TTL. Each key holds
+ * its request's passages, so the cache is bounded by the passages and days its entries
+ * hold rather than by their number: one client sending long histories cannot pin more
+ * than {@code tax.cache.max-passages} of them. The key's 128-bit hash is the basis of
+ * the response ETags, so a conditional request can be answered without calculating
+ * anything. Hit, miss and eviction counts are published as the
+ * {@code cache.*} meters tagged {@code cache=tax.results}.
+ */
+@Service
+public class TaxResultCache implements MeterBinder {
+
+    private static final long[] NO_PASSAGES = new long[0];
+
+    private final CongestionTaxCalculator calculator;
+    private final Cache<Key, TaxResult> cache;
+
+    public TaxResultCache(
+            CongestionTaxCalculator calculator,
+            @Value("${tax.cache.max-passages:1000000}") long maxPassages,
+            @Value("${tax.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.calculator = calculator;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxPassages)
+                .weigher(TaxResultCache::weigh)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * An entry's weight: its passages plus its days, and one so empty requests count too.
+     */
+    static int weigh(Key key, TaxResult result) {
+        return 1 + key.passages.length + result.taxByDate().size();
+    }
+
+    /**
+     * Run any pending evictions now.
+     */
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "tax.results");
+    }
+
+    /**
+     * Normalise a request into its cache key.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     * @throws java.time.format.DateTimeParseException if a date is invalid
+     */
+    public Key key(VehicleType vehicleType, List<String> dates, String city) {
+        CityTaxRules rules = calculator.getRules(city);
+        // Toll-free vehicles are never charged, so their dates are not even parsed
+        if (rules.isTollFreeVehicle(vehicleType)) {
+            return new Key(vehicleType, NO_PASSAGES, rules, 0);
+        }
+        long[] passages = calculator.parseChargeable(dates, vehicleType, rules);
+        return new Key(vehicleType, passages, rules, dates.size() - passages.length);
+    }
+
+    /**
+     * Normalise a request read as epoch-seconds, throwing its invalid date, if any, only
+     * when the vehicle is charged.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     * @throws java.time.format.DateTimeParseException if a date is invalid
+     */
+    public Key key(PassageRequest request, String city) {
+        if (request.invalidDate() != null
+                && !calculator.getRules(city).isTollFreeVehicle(request.vehicleType())) {
+            throw request.invalidDate();
+        }
+        return key(request.vehicleType(), request.passages(), city);
+    }
+
+    /**
+     * Normalise a request whose passages are already epoch-seconds, in any order.
+     *
+     * @throws IllegalArgumentException if no rules are loaded for the city
+     */
+    public Key key(VehicleType vehicleType, long[] passages, String city) {
+        CityTaxRules rules = calculator.getRules(city);
+        if (rules.isTollFreeVehicle(vehicleType)) {
+            return new Key(vehicleType, NO_PASSAGES, rules, 0);
+        }
+        long[] chargeable = calculator.sortChargeable(passages, vehicleType, rules);
+        return new Key(vehicleType, chargeable, rules, passages.length - chargeable.length);
+    }
+
+    /**
+     * The cached result for a key, calculating it on a miss. Building a key counts nothing
+     * in the calculation meters; a miss counts the request as calculated.
+     */
+    public TaxResult get(Key key) {
+        return cache.get(key, k -> {
+            TaxResult result = calculator.calculate(k.vehicleType, k.passages, k.rules, k.skipped);
+            return new TaxResult(result.totalTax(), Collections.unmodifiableMap(result.taxByDate()),
+                    result.tollFree(), result.ruleVersion());
+        });
+    }
+
+    /**
+     * A normalised request. Equality compares the full request, so a hash collision can
+     * never return another request's result; only the ETag relies on the hash alone.
+     */
+    public static final class Key {
+        private final VehicleType vehicleType;
+        private final long[] passages;
+        private final CityTaxRules rules;
+        /** Toll-free day passages dropped from the request; not part of equality. */
+        private final int skipped;
+        private final String ruleVersion;
+        private final long hashHigh;
+        private final long hashLow;
+
+        Key(VehicleType vehicleType, long[] passages, CityTaxRules rules, int skipped) {
+            this.vehicleType = vehicleType;
+            this.passages = passages;
+            this.rules = rules;
+            this.skipped = skipped;
+            this.ruleVersion = rules.getCity() + '/' + rules.getVersion();
+
+            // Two independently seeded 64-bit lanes over the same input
+            long high = 0x9E3779B97F4A7C15L;
+            long low = 0xC2B2AE3D27D4EB4FL;
+            high = mix(high, vehicleType.ordinal());
+            low = mix(low, ~vehicleType.ordinal());
+            for (long passage : passages) {
+                high = mix(high, passage);
+                low = mix(low, Long.rotateLeft(passage, 31) ^ 0x165667B19E3779F9L);
+            }
+            for (int i = 0; i < ruleVersion.length(); i++) {
+                high = mix(high, ruleVersion.charAt(i));
+                low = mix(low, ~ruleVersion.charAt(i));
+            }
+            this.hashHigh = fmix(high ^ passages.length);
+            this.hashLow = fmix(low ^ ruleVersion.length());
+        }
+
+        public VehicleType vehicleType() {
+            return vehicleType;
+        }
+
+        /**
+         * The rule snapshot the request is calculated under.
+         */
+        public CityTaxRules rules() {
+            return rules;
+        }
+
+        /**
+         * The quoted entity tag for this request's response in a representation, named by
+         * its media type. Each representation of the same result gets its own tag.
+         */
+        public String etag(String representation) {
+            long high = hashHigh;
+            long low = hashLow;
+            for (int i = 0; i < representation.length(); i++) {
+                high = mix(high, representation.charAt(i));
+                low = mix(low, ~representation.charAt(i));
+            }
+            return "\"" + String.format("%016x%016x", fmix(high), fmix(low)) + "\"";
+        }
+
+        private static long mix(long hash, long value) {
+            hash ^= fmix(value * 0x87C37B91114253D5L);
+            return Long.rotateLeft(hash, 27) * 5 + 0x52DCE729;
+        }
+
+        /**
+         * MurmurHash3's 64-bit finaliser.
+         */
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xFF51AFD7ED558CCDL;
+            k ^= k >>> 33;
+            k *= 0xC4CEB9FE1A85EC53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other
+                    && hashHigh == other.hashHigh
+                    && hashLow == other.hashLow
+                    && vehicleType == other.vehicleType
+                    && ruleVersion.equals(other.ruleVersion)
+                    && Arrays.equals(passages, other.passages);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hashHigh);
+        }
+    }
+}
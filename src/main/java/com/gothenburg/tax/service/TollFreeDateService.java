@@ -1,11 +1,10 @@
 package com.gothenburg.tax.service;
 
-import com.gothenburg.tax.model.TaxRuleConfig;
+import com.gothenburg.tax.model.CompiledTaxRules;
 import org.springframework.stereotype.Service;
 
-import java.time.DayOfWeek;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.BitSet;
 
 /**
  * Determines whether a given date/time is toll-free.
@@ -15,6 +14,9 @@ import java.time.LocalDateTime;
  * - A public holiday (as defined in the rule config)
  * - The day before a public holiday
  * - During a toll-free month (e.g. July)
+ *
+ * The decision itself is precomputed per epoch-day in the rules'
+ * {@link com.gothenburg.tax.model.TollFreeCalendar} when they are loaded.
  */
 @Service
 public class TollFreeDateService {
@@ -22,31 +24,30 @@ public class TollFreeDateService {
     /**
      * Check if the given timestamp falls on a toll-free date.
      */
-    public boolean isTollFreeDate(LocalDateTime dateTime, TaxRuleConfig rules) {
-        LocalDate date = dateTime.toLocalDate();
-
-        // Weekend check
-        DayOfWeek day = date.getDayOfWeek();
-        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
-            return true;
-        }
-
-        // Toll-free month (e.g. July)
-        if (rules.getTollFreeMonths().contains(date.getMonthValue())) {
-            return true;
-        }
+    public boolean isTollFreeDate(LocalDateTime dateTime, CompiledTaxRules rules) {
+        return isTollFreeDay((int) dateTime.toLocalDate().toEpochDay(), rules);
+    }
 
-        // Public holiday
-        if (rules.getPublicHolidaySet().contains(date)) {
-            return true;
-        }
+    /**
+     * Check if the given epoch-day is toll-free.
+     */
+    public boolean isTollFreeDay(int epochDay, CompiledTaxRules rules) {
+        return rules.getTollFreeCalendar().isTollFree(epochDay);
+    }
 
-        // Day before a public holiday
-        LocalDate nextDay = date.plusDays(1);
-        if (rules.getPublicHolidaySet().contains(nextDay)) {
-            return true;
+    /**
+     * Determine which of the given days are chargeable.
+     *
+     * @return a bitset where bit {@code i} is set if {@code epochDays[i]} is not toll-free
+     */
+    public BitSet chargeableDays(int[] epochDays, CompiledTaxRules rules) {
+        BitSet chargeable = new BitSet(epochDays.length);
+        var calendar = rules.getTollFreeCalendar();
+        for (int i = 0; i < epochDays.length; i++) {
+            if (!calendar.isTollFree(epochDays[i])) {
+                chargeable.set(i);
+            }
         }
-
-        return false;
+        return chargeable;
     }
 }
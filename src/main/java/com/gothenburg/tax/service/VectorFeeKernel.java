@@ -0,0 +1,78 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.service.TaxMetrics.CalculationMeters;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link FeeKernel} on {@code jdk.incubator.vector}, only loaded by
+ * {@link FeeKernel#load()} when the module is present.
+ *
+ * Fees are gathered from the fee table a vector of minutes at a time. A day's windows
+ * depend on each other, so the reduction first checks, a vector of passage gaps at a
+ * time, whether every passage opens a window of its own; the day's sum is then a plain
+ * vector sum of its fees. Days with passages inside each other's window are scanned.
+ */
+final class VectorFeeKernel implements FeeKernel {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void fees(int[] feeTable, int[] fees, int from, int to) {
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, feeTable, 0, fees, i).intoArray(fees, i);
+        }
+        for (; i < to; i++) {
+            fees[i] = feeTable[fees[i]];
+        }
+    }
+
+    @Override
+    public int sumWindowFees(long[] sortedPassages, int from, int to, int[] fees, int feeFrom,
+                             int windowMinutes, int maxDailyTax, CalculationMeters meters) {
+        if (!separateWindows(sortedPassages, from, to, windowMinutes)) {
+            return FeeKernel.scanWindows(sortedPassages, from, to, fees, feeFrom, windowMinutes, maxDailyTax, meters);
+        }
+
+        int count = to - from;
+        int i = 0;
+        IntVector sums = IntVector.zero(INTS);
+        for (int bound = INTS.loopBound(count); i < bound; i += INTS.length()) {
+            sums = sums.add(IntVector.fromArray(INTS, fees, feeFrom + i));
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            sum += fees[feeFrom + i];
+        }
+        // At the cap, the scan finds where it was reached, for the same sum and meters
+        return sum < maxDailyTax
+                ? sum : FeeKernel.scanWindows(sortedPassages, from, to, fees, feeFrom, windowMinutes, maxDailyTax, meters);
+    }
+
+    /**
+     * Whether every passage is more than the window after the one before it, i.e. opens a
+     * window of its own.
+     */
+    private static boolean separateWindows(long[] sortedPassages, int from, int to, int windowMinutes) {
+        long minGap = (windowMinutes + 1L) * 60;
+        int pairs = to - from - 1;
+        int i = from;
+        for (int bound = from + LONGS.loopBound(Math.max(pairs, 0)); i < bound; i += LONGS.length()) {
+            LongVector current = LongVector.fromArray(LONGS, sortedPassages, i);
+            LongVector next = LongVector.fromArray(LONGS, sortedPassages, i + 1);
+            if (next.sub(current).compare(VectorOperators.LT, minGap).anyTrue()) {
+                return false;
+            }
+        }
+        for (; i < to - 1; i++) {
+            if (sortedPassages[i + 1] - sortedPassages[i] < minGap) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,285 @@
+package com.gothenburg.tax.service;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
+import com.gothenburg.tax.model.PassageFileFormat;
+import com.gothenburg.tax.model.TaxRuleConfig;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.model.WhatIfReport;
+import com.gothenburg.tax.model.WhatIfReport.DeltaBucket;
+import com.gothenburg.tax.model.WhatIfReport.Totals;
+import com.gothenburg.tax.model.WhatIfReport.VehicleChanges;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replays a passage dataset under both a city's current rules and candidate rules, to
+ * show the revenue impact of the candidate before it is adopted.
+ *
+ * The dataset is grouped by vehicle with {@link BulkTaxService#groupByVehicle}, so it may
+ * be larger than the heap and its shards are compared in parallel. Each vehicle-day is
+ * calculated once per rule set with the calculator's own day calculation, and each shard
+ * aggregates its own totals, which are only merged at the end.
+ *
+ * The candidate replaces the current rules on the days within its validFrom/validTo;
+ * other days are charged under the current rules in both scenarios.
+ */
+@Service
+public class WhatIfTaxService {
+
+    /**
+     * Bounds of the per-vehicle change distribution, in SEK; [0, 1) holds the unchanged.
+     */
+    private static final long[] DELTA_BOUNDS = {-1000, -500, -100, -50, 0, 1, 50, 100, 500, 1000};
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private final CongestionTaxCalculator calculator;
+    private final BulkTaxService bulkTaxService;
+    private final Path datasetDirectory;
+
+    public WhatIfTaxService(
+            CongestionTaxCalculator calculator,
+            BulkTaxService bulkTaxService,
+            @Value("${tax.what-if.dataset-directory:}") String datasetDirectory) {
+        this.calculator = calculator;
+        this.bulkTaxService = bulkTaxService;
+        this.datasetDirectory = datasetDirectory == null || datasetDirectory.isBlank()
+                ? null : Path.of(datasetDirectory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Compare against a dataset stored in {@code tax.what-if.dataset-directory}; files
+     * ending in .bin are read as {@link PassageFileFormat#BINARY}, others as CSV.
+     *
+     * @throws IllegalArgumentException if the dataset does not exist, the candidate rules are
+     *                                  invalid or no rules are loaded for the city
+     */
+    public WhatIfReport compare(String dataset, TaxRuleConfig candidate, String city) throws IOException {
+        if (datasetDirectory == null) {
+            throw new IllegalArgumentException("No what-if datasets are configured (tax.what-if.dataset-directory)");
+        }
+        Path file = datasetDirectory.resolve(dataset).normalize();
+        if (!file.startsWith(datasetDirectory) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Unknown what-if dataset: " + dataset);
+        }
+        PassageFileFormat format = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".bin")
+                ? PassageFileFormat.BINARY : PassageFileFormat.CSV;
+        return compare(file, format, candidate, city);
+    }
+
+    /**
+     * Compare against a passage file.
+     *
+     * @throws IllegalArgumentException if the candidate rules are invalid or no rules are
+     *                                  loaded for the city
+     */
+    public WhatIfReport compare(Path input, PassageFileFormat format, TaxRuleConfig candidate, String city)
+            throws IOException {
+        CityTaxRules current = calculator.getRules(city);
+        CompiledTaxRules proposed = compileCandidate(candidate, current.getCity());
+        long started = System.nanoTime();
+
+        BulkTaxService.Grouping<Comparison> grouping = bulkTaxService.groupByVehicle(input, format, null,
+                () -> new Comparison(current, proposed));
+        return report(current, grouping, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static CompiledTaxRules compileCandidate(TaxRuleConfig candidate, String city) {
+        if (candidate.getCity() == null) {
+            candidate.setCity(city);
+        } else if (!candidate.getCity().equalsIgnoreCase(city)) {
+            throw new IllegalArgumentException("Candidate rules are for " + candidate.getCity() + ", not " + city);
+        }
+        return CompiledTaxRules.compile(candidate, "candidate", Instant.now());
+    }
+
+    private static WhatIfReport report(CityTaxRules current, BulkTaxService.Grouping<Comparison> grouping,
+                                       long elapsedMillis) {
+        long vehicles = 0;
+        long skipped = 0;
+        long[] total = new long[2];
+        long[][] byType = new long[TYPES.length][2];
+        Map<Integer, long[]> byMonth = new TreeMap<>();
+        long[] buckets = new long[DELTA_BOUNDS.length + 1];
+        long increased = 0;
+        long decreased = 0;
+        long minDelta = 0;
+        long maxDelta = 0;
+
+        for (Comparison shard : grouping.shards()) {
+            if (shard.vehicles == 0) {
+                skipped += shard.skipped;
+                continue;
+            }
+            minDelta = vehicles == 0 ? shard.minDelta : Math.min(minDelta, shard.minDelta);
+            maxDelta = vehicles == 0 ? shard.maxDelta : Math.max(maxDelta, shard.maxDelta);
+            vehicles += shard.vehicles;
+            skipped += shard.skipped;
+            add(total, shard.total);
+            for (int t = 0; t < TYPES.length; t++) {
+                add(byType[t], shard.byType[t]);
+            }
+            shard.byMonth.forEach((month, tax) -> add(byMonth.computeIfAbsent(month, m -> new long[2]), tax));
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] += shard.buckets[b];
+            }
+            increased += shard.increased;
+            decreased += shard.decreased;
+        }
+
+        Map<VehicleType, Totals> typeTotals = new EnumMap<>(VehicleType.class);
+        for (int t = 0; t < TYPES.length; t++) {
+            if (byType[t][0] != 0 || byType[t][1] != 0) {
+                typeTotals.put(TYPES[t], Totals.of(byType[t][0], byType[t][1]));
+            }
+        }
+        Map<String, Totals> monthTotals = new LinkedHashMap<>();
+        byMonth.forEach((month, tax) ->
+                monthTotals.put(YearMonth.of(month / 12, month % 12 + 1).toString(), Totals.of(tax[0], tax[1])));
+        List<DeltaBucket> distribution = new ArrayList<>(buckets.length);
+        for (int b = 0; b < buckets.length; b++) {
+            distribution.add(new DeltaBucket(b == 0 ? null : DELTA_BOUNDS[b - 1],
+                    b == DELTA_BOUNDS.length ? null : DELTA_BOUNDS[b], buckets[b]));
+        }
+
+        return new WhatIfReport(current.getCity(), current.getVersion(), grouping.passages(), vehicles,
+                grouping.invalidRecords(), skipped, Totals.of(total[0], total[1]), typeTotals, monthTotals,
+                new VehicleChanges(increased, decreased, vehicles - increased - decreased, minDelta, maxDelta,
+                        distribution),
+                elapsedMillis);
+    }
+
+    private static void add(long[] into, long[] tax) {
+        into[0] += tax[0];
+        into[1] += tax[1];
+    }
+
+    /**
+     * Compares the vehicles of one shard and aggregates the results.
+     */
+    private final class Comparison implements BulkTaxService.ShardHandler {
+        private final CityTaxRules current;
+        private final CompiledTaxRules candidate;
+
+        final long[] total = new long[2];
+        final long[][] byType = new long[TYPES.length][2];
+        final Map<Integer, long[]> byMonth = new HashMap<>();
+        final long[] buckets = new long[DELTA_BOUNDS.length + 1];
+        long vehicles;
+        long skipped;
+        long increased;
+        long decreased;
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+
+        // Per-vehicle scratch: month key and tax under each rule set, per day
+        private int[] dayMonths = new int[64];
+        private int[] currentTax = new int[64];
+        private int[] candidateTax = new int[64];
+        private int monthFirstDay = 1;
+        private int monthEndDay;
+        private int monthKey;
+
+        Comparison(CityTaxRules current, CompiledTaxRules candidate) {
+            this.current = current;
+            this.candidate = candidate;
+        }
+
+        @Override
+        public void vehicle(String vehicleId, VehicleType vehicleType, long[] passages) {
+            int days = 0;
+            CompiledTaxRules dayRules = null;
+            int start = 0;
+            while (start < passages.length) {
+                int epochDay = PassageTimestampParser.epochDay(passages[start]);
+                long nextDayStart = (epochDay + 1L) * PassageTimestampParser.SECONDS_PER_DAY;
+                int end = start + 1;
+                while (end < passages.length && passages[end] < nextDayStart) {
+                    end++;
+                }
+
+                if (dayRules == null || !dayRules.appliesTo(epochDay)) {
+                    dayRules = current.forDay(epochDay);
+                    if (dayRules == null) {
+                        skipped++;
+                        return;
+                    }
+                }
+                if (days == dayMonths.length) {
+                    dayMonths = Arrays.copyOf(dayMonths, days * 2);
+                    currentTax = Arrays.copyOf(currentTax, days * 2);
+                    candidateTax = Arrays.copyOf(candidateTax, days * 2);
+                }
+                dayMonths[days] = month(epochDay);
+                currentTax[days] = calculator.calculateDayTax(vehicleType, epochDay, passages, start, end, dayRules);
+                candidateTax[days] = candidate.appliesTo(epochDay)
+                        ? calculator.calculateDayTax(vehicleType, epochDay, passages, start, end, candidate)
+                        : currentTax[days];
+                days++;
+                start = end;
+            }
+
+            long vehicleCurrent = 0;
+            long vehicleCandidate = 0;
+            long[] month = null;
+            for (int d = 0; d < days; d++) {
+                if (d == 0 || dayMonths[d] != dayMonths[d - 1]) {
+                    month = byMonth.computeIfAbsent(dayMonths[d], m -> new long[2]);
+                }
+                month[0] += currentTax[d];
+                month[1] += candidateTax[d];
+                vehicleCurrent += currentTax[d];
+                vehicleCandidate += candidateTax[d];
+            }
+
+            vehicles++;
+            total[0] += vehicleCurrent;
+            total[1] += vehicleCandidate;
+            byType[vehicleType.ordinal()][0] += vehicleCurrent;
+            byType[vehicleType.ordinal()][1] += vehicleCandidate;
+
+            long delta = vehicleCandidate - vehicleCurrent;
+            if (delta > 0) {
+                increased++;
+            } else if (delta < 0) {
+                decreased++;
+            }
+            minDelta = Math.min(minDelta, delta);
+            maxDelta = Math.max(maxDelta, delta);
+            int bucket = 0;
+            while (bucket < DELTA_BOUNDS.length && delta >= DELTA_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+        }
+
+        /**
+         * Month key (year * 12 + month - 1) of an epoch-day, reusing the previous day's month.
+         */
+        private int month(int epochDay) {
+            if (epochDay < monthFirstDay || epochDay >= monthEndDay) {
+                LocalDate first = LocalDate.ofEpochDay(epochDay).withDayOfMonth(1);
+                monthFirstDay = (int) first.toEpochDay();
+                monthEndDay = (int) first.plusMonths(1).toEpochDay();
+                monthKey = first.getYear() * 12 + first.getMonthValue() - 1;
+            }
+            return monthKey;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.gothenburg.tax.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gothenburg.tax.model.CityTaxRules;
+import com.gothenburg.tax.model.CompiledTaxRules;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import tools.jackson.databind.ObjectMapper;
+
+class TaxRuleLoaderTest {
+
+	@TempDir
+	Path tempDir;
+
+	private TaxRuleLoader ruleLoader;
+	private Path rulesFile;
+	private String originalRules;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		try (var in = new ClassPathResource("data/gothenburg-tax-rules.json").getInputStream()) {
+			originalRules = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		rulesFile = tempDir.resolve("gothenburg-tax-rules.json");
+		Files.writeString(rulesFile, originalRules);
+		ruleLoader.loadRules(new FileSystemResource(rulesFile));
+	}
+
+	private CompiledTaxRules gothenburg() {
+		return ruleLoader.getRules("gothenburg").forDate(LocalDate.of(2013, 1, 1));
+	}
+
+	@Test
+	@DisplayName("Loaded rules are versioned by content and their file is remembered")
+	void versionsRules() {
+		CompiledTaxRules rules = gothenburg();
+
+		assertEquals(12, rules.getVersion().length());
+		assertTrue(ruleLoader.getRuleFiles().contains(rulesFile.toAbsolutePath().normalize()));
+	}
+
+	@Test
+	@DisplayName("Reloading a changed file swaps in a new snapshot")
+	void reloadsChangedFile() throws Exception {
+		CompiledTaxRules before = gothenburg();
+		assertEquals(0, ruleLoader.getRules("gothenburg").getReloads());
+		Files.writeString(rulesFile, originalRules.replace("\"maxDailyTax\": 60", "\"maxDailyTax\": 70"));
+
+		assertTrue(ruleLoader.reload(rulesFile));
+
+		CompiledTaxRules after = gothenburg();
+		assertEquals(70, after.getMaxDailyTax());
+		assertNotEquals(before.getVersion(), after.getVersion());
+		assertEquals(1, ruleLoader.getRules("gothenburg").getReloads());
+		assertEquals(after.getLoadedAt(), ruleLoader.getRules("gothenburg").getLoadedAt());
+		// A snapshot already handed out is never modified
+		assertEquals(60, before.getMaxDailyTax());
+	}
+
+	@Test
+	@DisplayName("Reloading an unchanged file keeps the current snapshot")
+	void ignoresUnchangedFile() {
+		CityTaxRules before = ruleLoader.getRules("gothenburg");
+
+		assertFalse(ruleLoader.reload(rulesFile));
+		assertSame(before, ruleLoader.getRules("gothenburg"));
+	}
+
+	@Test
+	@DisplayName("Reloading an invalid file keeps the current snapshot")
+	void keepsRulesOnInvalidFile() throws Exception {
+		CityTaxRules before = ruleLoader.getRules("gothenburg");
+
+		Files.writeString(rulesFile, "{ \"city\": \"gothenburg\", ");
+		assertFalse(ruleLoader.reload(rulesFile));
+
+		Files.writeString(rulesFile, originalRules.replace("\"BUS\"", "\"SPACESHIP\""));
+		assertFalse(ruleLoader.reload(rulesFile));
+
+		assertSame(before, ruleLoader.getRules("gothenburg"));
+	}
+
+	@Test
+	@DisplayName("Versions of a city are kept apart by date, and overlapping versions are rejected")
+	void keepsEffectiveDatedVersions() throws Exception {
+		Files.writeString(rulesFile, originalRules.replace("\"year\": 2013,",
+				"\"year\": 2013, \"validTo\": \"2013-12-31\","));
+		assertTrue(ruleLoader.reload(rulesFile));
+		Path rules2014 = Files.writeString(tempDir.resolve("gothenburg-2014.json"), originalRules.replace(
+				"\"year\": 2013,", "\"year\": 2014, \"validFrom\": \"2014-01-01\", \"maxDailyTax\": 70,")
+				.replace("\"maxDailyTax\": 60,", ""));
+		ruleLoader.loadRules(new FileSystemResource(rules2014));
+
+		CityTaxRules rules = ruleLoader.getRules("gothenburg");
+		assertEquals(2, rules.getVersions().size());
+		assertEquals(60, rules.forDate(LocalDate.of(2013, 12, 31)).getMaxDailyTax());
+		assertEquals(70, rules.forDate(LocalDate.of(2014, 1, 1)).getMaxDailyTax());
+
+		// Moving the 2014 version into 2013 would overlap, so the current rules stay
+		Files.writeString(rules2014, Files.readString(rules2014).replace("2014-01-01", "2013-12-01"));
+		assertFalse(ruleLoader.reload(rules2014.toAbsolutePath().normalize()));
+		assertSame(rules, ruleLoader.getRules("gothenburg"));
+	}
+
+	@Nested
+	@DisplayName("Rule directory")
+	class RuleDirectory {
+
+		private Path directory;
+		private SimpleMeterRegistry meterRegistry;
+
+		@BeforeEach
+		void setUp() throws Exception {
+			directory = Files.createDirectory(tempDir.resolve("cities"));
+			for (String city : List.of("Stockholm", "Malmo", "Uppsala")) {
+				Files.writeString(directory.resolve(city.toLowerCase() + ".json"),
+						originalRules.replace("\"city\": \"gothenburg\"", "\"city\": \"" + city + "\""));
+			}
+			Files.writeString(directory.resolve("broken.json"), "[]");
+
+			var field = TaxRuleLoader.class.getDeclaredField("maxCachedCities");
+			field.setAccessible(true);
+			field.set(ruleLoader, 2);
+			meterRegistry = new SimpleMeterRegistry();
+			ruleLoader.bindTo(meterRegistry);
+			ruleLoader.indexDirectory(directory);
+		}
+
+		@Test
+		@DisplayName("Indexes files without loading them, skipping invalid ones")
+		void indexesWithoutLoading() {
+			assertEquals(3.0, meterRegistry.find("tax.rules.indexed").gauge().value());
+			assertEquals(1.0, meterRegistry.find("tax.rules.cities").gauge().value());
+			assertNull(ruleLoader.getRules("lund"));
+		}
+
+		@Test
+		@DisplayName("Loads a city on first use, case-insensitively")
+		void loadsOnFirstUse() {
+			CityTaxRules rules = ruleLoader.getRules("STOCKHOLM");
+
+			assertEquals("Stockholm", rules.getCity());
+			assertSame(rules, ruleLoader.getRules("stockholm"));
+			assertEquals(1, meterRegistry.find("tax.rules.load").timer().count());
+			assertTrue(meterRegistry.find("tax.rules.resident").gauge().value() > 0);
+		}
+
+		@Test
+		@DisplayName("Evicts the least recently used city, never the eagerly loaded rules")
+		void evictsLeastRecentlyUsed() {
+			CityTaxRules stockholm = ruleLoader.getRules("stockholm");
+			ruleLoader.getRules("malmo");
+			ruleLoader.getRules("stockholm");
+			ruleLoader.getRules("uppsala");
+
+			assertEquals(1.0, meterRegistry.find("tax.rules.evictions").functionCounter().count());
+			assertEquals(3.0, meterRegistry.find("tax.rules.cities").gauge().value());
+			assertSame(stockholm, ruleLoader.getRules("stockholm"));
+			assertNotNull(ruleLoader.getRules("gothenburg"));
+
+			// Malmo was evicted, so this loads it again
+			ruleLoader.getRules("malmo");
+			assertEquals(4, meterRegistry.find("tax.rules.load").timer().count());
+		}
+
+		@Test
+		@DisplayName("Reports a rule file removed after indexing as an I/O failure")
+		void failsOnRemovedFile() throws Exception {
+			Files.delete(directory.resolve("malmo.json"));
+
+			assertThrows(UncheckedIOException.class, () -> ruleLoader.getRules("malmo"));
+			assertNotNull(ruleLoader.getRules("stockholm"));
+		}
+	}
+}
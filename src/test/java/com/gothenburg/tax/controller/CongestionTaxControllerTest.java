@@ -1,17 +1,29 @@
 package com.gothenburg.tax.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.gothenburg.tax.model.BatchTaxRequest;
+import com.gothenburg.tax.model.PassageRequest;
+import com.gothenburg.tax.model.TaxBinaryFormat;
 import com.gothenburg.tax.model.TaxRequest;
+import com.gothenburg.tax.model.VehicleTaxRequest;
+import com.gothenburg.tax.model.TaxResponse;
 import com.gothenburg.tax.model.VehicleType;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import tools.jackson.databind.ObjectMapper;
@@ -40,7 +52,133 @@ class CongestionTaxControllerTest {
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.vehicleType").value("CAR"))
 				.andExpect(jsonPath("$.totalTax").value(18))
-				.andExpect(jsonPath("$.tollFree").value(false));
+				.andExpect(jsonPath("$.tollFree").value(false))
+				.andExpect(jsonPath("$.ruleVersion").isNotEmpty())
+				.andExpect(header().exists(CongestionTaxController.RULES_LOADED_AT))
+				.andExpect(header().string(CongestionTaxController.RULES_RELOADS, "0"));
+	}
+
+	@Test
+	@DisplayName("GET /api/tax/calculate returns 304 and POST 412 when If-None-Match matches the ETag")
+	void conditionalCalculate() throws Exception {
+		String body = objectMapper.writeValueAsString(new TaxRequest(
+				VehicleType.CAR,
+				List.of("2013-02-04 07:30:00")
+		));
+
+		String etag = mockMvc.perform(post("/api/tax/calculate")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(body))
+				.andExpect(status().isOk())
+				.andExpect(header().exists(HttpHeaders.ETAG))
+				.andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// 304 is only defined for GET and HEAD
+		mockMvc.perform(post("/api/tax/calculate")
+						.contentType(MediaType.APPLICATION_JSON)
+						.header(HttpHeaders.IF_NONE_MATCH, etag)
+						.content(body))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(header().string(HttpHeaders.ETAG, etag));
+
+		// The GET form of the same request shares the ETag
+		mockMvc.perform(get("/api/tax/calculate")
+						.param("vehicleType", "CAR")
+						.param("dates", "2013-02-04 07:30:00")
+						.header(HttpHeaders.IF_NONE_MATCH, "W/" + etag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, etag))
+				.andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+	}
+
+	@Test
+	@DisplayName("JSON and binary representations of a result have different ETags")
+	void etagPerRepresentation() throws Exception {
+		String json = mockMvc.perform(get("/api/tax/calculate")
+						.param("vehicleType", "CAR")
+						.param("dates", "2013-02-04 07:30:00"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		String binary = mockMvc.perform(get("/api/tax/calculate")
+						.param("vehicleType", "CAR")
+						.param("dates", "2013-02-04 07:30:00")
+						.accept(TaxBinaryFormat.MEDIA_TYPE))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(TaxBinaryFormat.MEDIA_TYPE))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		assertNotEquals(json, binary);
+		// A JSON client's tag does not validate the binary representation
+		mockMvc.perform(get("/api/tax/calculate")
+						.param("vehicleType", "CAR")
+						.param("dates", "2013-02-04 07:30:00")
+						.accept(TaxBinaryFormat.MEDIA_TYPE)
+						.header(HttpHeaders.IF_NONE_MATCH, json))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(TaxBinaryFormat.MEDIA_TYPE));
+		// Anything that admits JSON at least as highly gets JSON
+		mockMvc.perform(get("/api/tax/calculate")
+						.param("vehicleType", "CAR")
+						.param("dates", "2013-02-04 07:30:00")
+						.header(HttpHeaders.ACCEPT, "application/json, " + TaxBinaryFormat.MEDIA_TYPE + ";q=0.5"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, json))
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	@DisplayName("GET /api/tax/calculate returns correct tax for a car")
+	void calculateTaxWithGet() throws Exception {
+		mockMvc.perform(get("/api/tax/calculate")
+						.param("vehicleType", "CAR")
+						.param("dates", "2013-02-04 07:30:00", "2013-02-04 15:30:00"))
+				.andExpect(status().isOk())
+				.andExpect(header().exists(HttpHeaders.ETAG))
+				.andExpect(jsonPath("$.totalTax").value(36));
+	}
+
+	@Test
+	@DisplayName("POST /api/tax/calculate accepts and returns the binary format")
+	void calculateTaxBinary() throws Exception {
+		// 2013-02-04 07:30:00 and 15:30:00
+		byte[] request = TaxBinaryFormat.writeRequest(
+				new PassageRequest(VehicleType.CAR, new long[] {1359963000L, 1359991800L}));
+
+		byte[] body = mockMvc.perform(post("/api/tax/calculate")
+						.contentType(TaxBinaryFormat.MEDIA_TYPE)
+						.accept(TaxBinaryFormat.MEDIA_TYPE)
+						.content(request))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(TaxBinaryFormat.MEDIA_TYPE))
+				.andReturn().getResponse().getContentAsByteArray();
+
+		TaxResponse response = TaxBinaryFormat.readResponse(body);
+		assertEquals(36, response.totalTax());
+		assertEquals(Map.of("2013-02-04", 36), response.taxByDate());
+
+		// JSON stays the default
+		mockMvc.perform(post("/api/tax/calculate")
+						.contentType(TaxBinaryFormat.MEDIA_TYPE)
+						.content(request))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$.totalTax").value(36));
+	}
+
+	@Test
+	@DisplayName("POST /api/tax/calculate returns 400 for a corrupt binary request")
+	void corruptBinaryRequest() throws Exception {
+		mockMvc.perform(post("/api/tax/calculate")
+						.contentType(TaxBinaryFormat.MEDIA_TYPE)
+						.content(new byte[] {1, 0, 5}))
+				.andExpect(status().isBadRequest());
+		// Well-formed, but a passage far outside any year the rules could cover
+		mockMvc.perform(post("/api/tax/calculate")
+						.contentType(TaxBinaryFormat.MEDIA_TYPE)
+						.content(TaxBinaryFormat.writeRequest(
+								new PassageRequest(VehicleType.CAR, new long[] {Long.MAX_VALUE / 2}))))
+				.andExpect(status().isBadRequest());
 	}
 
 	@Test
@@ -85,6 +223,22 @@ class CongestionTaxControllerTest {
 				.andExpect(status().isBadRequest());
 	}
 
+	@Test
+	@DisplayName("POST /api/tax/calculate returns 400 for an invalid date, unless the vehicle is toll-free")
+	void invalidDate() throws Exception {
+		mockMvc.perform(post("/api/tax/calculate")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"vehicleType\": \"CAR\", \"dates\": [\"2013-02-04 07:30:00\", \"yesterday\"]}"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error").value("Invalid date format. Expected: yyyy-MM-dd HH:mm:ss"));
+
+		mockMvc.perform(post("/api/tax/calculate")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"vehicleType\": \"EMERGENCY\", \"dates\": [\"yesterday\"]}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.tollFree").value(true));
+	}
+
 	@Test
 	@DisplayName("POST /api/tax/calculate with city param")
 	void withCityParam() throws Exception {
@@ -114,4 +268,79 @@ class CongestionTaxControllerTest {
 				.andExpect(status().isBadRequest())
 				.andExpect(jsonPath("$.error").value("No tax rules found for city: stockholm"));
 	}
+
+	@Test
+	@DisplayName("POST /api/tax/calculate/batch returns per-vehicle results in order")
+	void calculateBatch() throws Exception {
+		BatchTaxRequest request = new BatchTaxRequest(List.of(
+				new VehicleTaxRequest("ABC123", VehicleType.CAR, List.of("2013-02-04 07:30:00")),
+				new VehicleTaxRequest("BUS001", VehicleType.BUS, List.of("2013-02-04 07:30:00"))
+		));
+
+		mockMvc.perform(post("/api/tax/calculate/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(request)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.results[0].vehicleId").value("ABC123"))
+				.andExpect(jsonPath("$.results[0].tax.totalTax").value(18))
+				.andExpect(jsonPath("$.results[1].vehicleId").value("BUS001"))
+				.andExpect(jsonPath("$.results[1].tax.tollFree").value(true));
+	}
+
+	@Test
+	@DisplayName("GET /api/tax/ledger returns period totals of vehicles calculated in a batch")
+	void ledgerAfterBatch() throws Exception {
+		BatchTaxRequest request = new BatchTaxRequest(List.of(
+				new VehicleTaxRequest("LEDGER1", VehicleType.CAR,
+						List.of("2013-02-04 07:30:00", "2013-02-05 07:30:00", "2013-03-05 07:30:00"))
+		));
+		mockMvc.perform(post("/api/tax/calculate/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(request)))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/api/tax/ledger/vehicles/LEDGER1/total")
+						.param("from", "2013-02-01")
+						.param("to", "2013-02-28"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.totalTax").value(36))
+				.andExpect(jsonPath("$.taxedDays").value(2));
+
+		mockMvc.perform(get("/api/tax/ledger/vehicles/LEDGER1/rollup").param("period", "year"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.periods[0].period").value("2013"))
+				.andExpect(jsonPath("$.periods[0].totalTax").value(54));
+	}
+
+	@Test
+	@DisplayName("POST /api/tax/calculate/batch returns 400 for a vehicle without id")
+	void batchMissingVehicleId() throws Exception {
+		String json = """
+				{
+				    "vehicles": [ { "vehicleType": "CAR", "dates": ["2013-02-04 07:30:00"] } ]
+				}
+				""";
+
+		mockMvc.perform(post("/api/tax/calculate/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(json))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	@DisplayName("POST /api/tax/calculate/stream returns NDJSON per vehicle and day")
+	void calculateStream() throws Exception {
+		String csv = """
+				vehicleId,vehicleType,timestamp
+				ABC123,CAR,2013-02-04 07:30:00
+				""";
+
+		mockMvc.perform(post("/api/tax/calculate/stream")
+						.contentType("text/csv")
+						.content(csv))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+				.andExpect(content().string(
+						"{\"vehicleId\":\"ABC123\",\"vehicleType\":\"CAR\",\"date\":\"2013-02-04\",\"tax\":18,\"tollFree\":false}\n"));
+	}
 }
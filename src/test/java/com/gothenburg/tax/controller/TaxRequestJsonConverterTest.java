@@ -0,0 +1,91 @@
+package com.gothenburg.tax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.gothenburg.tax.model.PassageRequest;
+import com.gothenburg.tax.model.VehicleType;
+import jakarta.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import tools.jackson.databind.ObjectMapper;
+
+class TaxRequestJsonConverterTest {
+
+	private final TaxRequestJsonConverter converter = new TaxRequestJsonConverter(new ObjectMapper(),
+			Validation.buildDefaultValidatorFactory().getValidator());
+
+	private PassageRequest read(String json) throws Exception {
+		return converter.readInternal(PassageRequest.class, new HttpInputMessage() {
+			@Override
+			public InputStream getBody() {
+				return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+			}
+
+			@Override
+			public HttpHeaders getHeaders() {
+				return new HttpHeaders();
+			}
+		});
+	}
+
+	@Test
+	@DisplayName("Streams dates into epoch-seconds, skipping unknown properties")
+	void readsRequest() throws Exception {
+		PassageRequest request = read("""
+				{
+				    "comment": {"nested": [1, 2, {"x": "y"}]},
+				    "dates": ["2013-02-04 15:30:00", " 2013-02-04 07:30:00 "],
+				    "vehicleType": "CAR"
+				}
+				""");
+
+		assertEquals(VehicleType.CAR, request.vehicleType());
+		assertArrayEquals(new long[] {1359991800L, 1359963000L}, request.passages());
+		assertNull(request.invalidDate());
+	}
+
+	@Test
+	@DisplayName("Keeps the first invalid date instead of failing the read")
+	void keepsInvalidDate() throws Exception {
+		PassageRequest request = read("""
+				{"vehicleType": "EMERGENCY", "dates": ["2013-02-04 07:30:00", "yesterday", null, 42]}
+				""");
+
+		assertEquals(VehicleType.EMERGENCY, request.vehicleType());
+		assertNotNull(request.invalidDate());
+		assertEquals("yesterday", request.invalidDate().getParsedString());
+	}
+
+	@Test
+	@DisplayName("Rejects a missing vehicle type and empty dates with the validation messages")
+	void validates() {
+		var missing = assertThrows(IllegalArgumentException.class, () -> read("{\"dates\": []}"));
+		assertEquals("vehicleType: vehicleType is required; dates: dates must contain at least one entry",
+				missing.getMessage());
+
+		var noDates = assertThrows(IllegalArgumentException.class, () -> read("{\"vehicleType\": \"CAR\"}"));
+		assertEquals("dates: dates must contain at least one entry", noDates.getMessage());
+
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"vehicleType\": \"SPACESHIP\", \"dates\": [\"2013-02-04 07:30:00\"]}"));
+	}
+
+	@Test
+	@DisplayName("Rejects malformed JSON and wrongly shaped dates as unreadable")
+	void rejectsMalformed() {
+		assertThrows(HttpMessageNotReadableException.class, () -> read("{\"vehicleType\": \"CAR\", \"dates\": ["));
+		assertThrows(HttpMessageNotReadableException.class, () -> read("[]"));
+		assertThrows(HttpMessageNotReadableException.class,
+				() -> read("{\"vehicleType\": \"CAR\", \"dates\": \"2013-02-04 07:30:00\"}"));
+	}
+}
@@ -0,0 +1,87 @@
+package com.gothenburg.tax.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TaxBinaryFormatTest {
+
+	@Test
+	@DisplayName("A request round-trips, in any passage order")
+	void requestRoundTrip() {
+		// 2013-02-08 06:27:00, 2013-02-07 15:29:00 and 2013-02-08 17:49:00
+		long[] passages = {1360304820L, 1360250940L, 1360345740L};
+
+		byte[] bytes = TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR, passages));
+		PassageRequest read = TaxBinaryFormat.readRequest(bytes);
+
+		assertEquals(VehicleType.CAR, read.vehicleType());
+		assertArrayEquals(passages, read.passages());
+	}
+
+	@Test
+	@DisplayName("Sorted passages take a few bytes each")
+	void requestIsCompact() {
+		long[] passages = new long[1000];
+		for (int i = 0; i < passages.length; i++) {
+			passages[i] = 1356998400L + i * 3600L;
+		}
+
+		byte[] bytes = TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR, passages));
+
+		assertTrue(bytes.length < passages.length * 3, "encoded in " + bytes.length + " bytes");
+	}
+
+	@Test
+	@DisplayName("A response round-trips with its per-day columns")
+	void responseRoundTrip() {
+		Map<String, Integer> taxByDate = new LinkedHashMap<>();
+		taxByDate.put("2013-02-07", 21);
+		taxByDate.put("2013-02-08", 60);
+		taxByDate.put("2013-03-26", 0);
+		TaxResponse response = new TaxResponse(VehicleType.CAR, 81, taxByDate, false, "3f2a9c1b7e04");
+
+		assertEquals(response, TaxBinaryFormat.readResponse(TaxBinaryFormat.writeResponse(response)));
+	}
+
+	@Test
+	@DisplayName("Truncated, corrupt or unknown messages are rejected")
+	void rejectsInvalidMessages() {
+		byte[] bytes = TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR, new long[] {1360304820L}));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> TaxBinaryFormat.readRequest(Arrays.copyOf(bytes, bytes.length - 1)));
+		assertThrows(IllegalArgumentException.class,
+				() -> TaxBinaryFormat.readRequest(Arrays.copyOf(bytes, bytes.length + 1)));
+		// A count far larger than the message
+		assertThrows(IllegalArgumentException.class,
+				() -> TaxBinaryFormat.readRequest(new byte[] {1, 0, (byte) 0xFF, (byte) 0xFF, 0x7F}));
+		assertThrows(IllegalArgumentException.class, () -> TaxBinaryFormat.readRequest(new byte[] {2, 0, 0}));
+		assertThrows(IllegalArgumentException.class, () -> TaxBinaryFormat.readRequest(new byte[] {1, 99, 0}));
+	}
+
+	@Test
+	@DisplayName("Passages outside the years 0000 - 9999 are rejected")
+	void rejectsOutOfRangePassages() {
+		// 0000-01-01 00:00:00 and 9999-12-31 23:59:59 are the bounds
+		long[] bounds = {-62167219200L, 253402300799L};
+		assertArrayEquals(bounds, TaxBinaryFormat.readRequest(
+				TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR, bounds))).passages());
+
+		assertThrows(IllegalArgumentException.class, () -> TaxBinaryFormat.readRequest(
+				TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR, new long[] {253402300800L}))));
+		assertThrows(IllegalArgumentException.class, () -> TaxBinaryFormat.readRequest(
+				TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR, new long[] {-62167219201L}))));
+		// Rejected wherever it falls, before the deltas can wrap back into range
+		assertThrows(IllegalArgumentException.class, () -> TaxBinaryFormat.readRequest(
+				TaxBinaryFormat.writeRequest(new PassageRequest(VehicleType.CAR,
+						new long[] {1360304820L, Long.MAX_VALUE, 1360304820L}))));
+	}
+}
@@ -0,0 +1,219 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.VehicleTaxRequest;
+import com.gothenburg.tax.model.VehicleTaxResponse;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+class BatchTaxServiceTest {
+
+	private TaxRuleLoader ruleLoader;
+	private CongestionTaxCalculator calculator;
+	private BatchTaxService batchTaxService;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		var field = TaxRuleLoader.class.getDeclaredField("defaultRulesResource");
+		field.setAccessible(true);
+		field.set(ruleLoader, new ClassPathResource("data/gothenburg-tax-rules.json"));
+		ruleLoader.init();
+
+		calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		// Small chunks and pool so a handful of vehicles exercises chunking and ordering
+		batchTaxService = new BatchTaxService(calculator, 10, 2, 2, 1, false);
+	}
+
+	@AfterEach
+	void tearDown() {
+		batchTaxService.shutdown();
+	}
+
+	@Test
+	@DisplayName("Results are returned in input order across chunks")
+	void resultsInInputOrder() {
+		List<VehicleTaxRequest> vehicles = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			// Alternate between a peak (18 SEK) and an off-peak (8 SEK) passage
+			String time = i % 2 == 0 ? "07:30:00" : "10:00:00";
+			vehicles.add(new VehicleTaxRequest("V" + i, VehicleType.CAR, List.of("2013-02-04 " + time)));
+		}
+
+		List<VehicleTaxResponse> results = batchTaxService.calculate(vehicles, "gothenburg");
+
+		assertEquals(7, results.size());
+		for (int i = 0; i < 7; i++) {
+			assertEquals("V" + i, results.get(i).vehicleId());
+			assertEquals(i % 2 == 0 ? 18 : 8, results.get(i).tax().totalTax());
+		}
+	}
+
+	@Test
+	@DisplayName("Virtual threads give the same results in input order")
+	void virtualThreads() {
+		// Small chunks so the batch is spread over many virtual threads
+		BatchTaxService virtual = new BatchTaxService(calculator, 100, 2, 1, 3, true);
+		try {
+			List<VehicleTaxRequest> vehicles = new ArrayList<>();
+			for (int i = 0; i < 25; i++) {
+				String time = i % 2 == 0 ? "07:30:00" : "10:00:00";
+				vehicles.add(new VehicleTaxRequest("V" + i, VehicleType.CAR, List.of("2013-02-04 " + time)));
+			}
+
+			List<VehicleTaxResponse> results = virtual.calculate(vehicles, "gothenburg");
+
+			for (int i = 0; i < 25; i++) {
+				assertEquals("V" + i, results.get(i).vehicleId());
+				assertEquals(i % 2 == 0 ? 18 : 8, results.get(i).tax().totalTax());
+			}
+		} finally {
+			virtual.shutdown();
+		}
+	}
+
+	@Test
+	@DisplayName("A failed batch waits for its running chunks before it throws")
+	void failedBatchJoinsRunningChunks() throws Exception {
+		var running = new AtomicInteger();
+		var slowStarted = new CountDownLatch(1);
+		var failing = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted") {
+			@Override
+			public TaxResult calculate(VehicleType vehicleType, List<String> dateStrings, String city) {
+				if (dateStrings.isEmpty()) {
+					try {
+						slowStarted.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IllegalStateException("failed");
+				}
+				running.incrementAndGet();
+				try {
+					slowStarted.countDown();
+					// Runs until the batch cancels it
+					Thread.sleep(60_000);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					// Finish the vehicle in hand before noticing the interrupt
+					long until = System.nanoTime() + 200_000_000L;
+					while (System.nanoTime() < until) {
+						Thread.onSpinWait();
+					}
+				} finally {
+					running.decrementAndGet();
+				}
+				return super.calculate(vehicleType, dateStrings, city);
+			}
+		};
+		BatchTaxService service = new BatchTaxService(failing, 10, 1, 2, 2, false);
+		try {
+			assertThrows(IllegalStateException.class, () -> service.calculate(List.of(
+					new VehicleTaxRequest("FAILS", VehicleType.CAR, List.of()),
+					new VehicleTaxRequest("SLOW", VehicleType.CAR, List.of("2013-02-04 07:30:00"))
+			), "gothenburg"));
+
+			assertEquals(0, running.get());
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	@DisplayName("A chunk the caller runs fails the batch when interrupted rather than leave gaps")
+	void interruptedCallerRunsChunk() {
+		Thread caller = Thread.currentThread();
+		var release = new CountDownLatch(1);
+		var calculated = new AtomicInteger();
+		var interrupting = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted") {
+			@Override
+			public TaxResult calculate(VehicleType vehicleType, List<String> dateStrings, String city) {
+				try {
+					if (Thread.currentThread() != caller) {
+						release.await();
+						return super.calculate(vehicleType, dateStrings, city);
+					}
+					// Let the worker finish every other chunk, then interrupt the caller mid-chunk
+					release.countDown();
+					while (calculated.get() < 10) {
+						Thread.onSpinWait();
+					}
+					Thread.sleep(100);
+					caller.interrupt();
+					return super.calculate(vehicleType, dateStrings, city);
+				} catch (InterruptedException ex) {
+					throw new IllegalStateException(ex);
+				} finally {
+					calculated.incrementAndGet();
+				}
+			}
+		};
+		// One worker and a queue of four: the sixth chunk of two runs on the calling thread
+		BatchTaxService service = new BatchTaxService(interrupting, 20, 2, 1, 10, false);
+		try {
+			List<VehicleTaxRequest> vehicles = new ArrayList<>();
+			for (int i = 0; i < 12; i++) {
+				vehicles.add(new VehicleTaxRequest("V" + i, VehicleType.CAR, List.of("2013-02-04 07:30:00")));
+			}
+
+			assertThrows(IllegalStateException.class, () -> service.calculate(vehicles, "gothenburg"));
+		} finally {
+			Thread.interrupted();
+			service.shutdown();
+		}
+	}
+
+	@Test
+	@DisplayName("An invalid vehicle gets an error entry without failing the batch")
+	void invalidVehicleDoesNotFailBatch() {
+		List<VehicleTaxResponse> results = batchTaxService.calculate(List.of(
+				new VehicleTaxRequest("GOOD", VehicleType.CAR, List.of("2013-02-04 07:30:00")),
+				new VehicleTaxRequest("BAD", VehicleType.CAR, List.of("not-a-date"))
+		), "gothenburg");
+
+		assertEquals(18, results.get(0).tax().totalTax());
+		assertNull(results.get(0).error());
+		assertNull(results.get(1).tax());
+		assertNotNull(results.get(1).error());
+	}
+
+	@Test
+	@DisplayName("Batches above the configured maximum are rejected")
+	void batchTooLarge() {
+		List<VehicleTaxRequest> vehicles = new ArrayList<>();
+		for (int i = 0; i < 11; i++) {
+			vehicles.add(new VehicleTaxRequest("V" + i, VehicleType.CAR, List.of("2013-02-04 07:30:00")));
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> batchTaxService.calculate(vehicles, "gothenburg"));
+	}
+
+	@Test
+	@DisplayName("Unknown city fails the whole batch")
+	void unknownCity() {
+		var ex = assertThrows(IllegalArgumentException.class, () -> batchTaxService.calculate(
+				List.of(new VehicleTaxRequest("V1", VehicleType.CAR, List.of("2013-02-04 07:30:00"))),
+				"stockholm"));
+
+		assertEquals("No tax rules found for city: stockholm", ex.getMessage());
+	}
+}
@@ -0,0 +1,116 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.PassageFileFormat;
+import com.gothenburg.tax.model.VehicleType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+class BulkTaxServiceTest {
+
+	@TempDir
+	Path tempDir;
+
+	private BulkTaxService bulkTaxService;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		var ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		ruleLoader.loadRules(new ClassPathResource("data/gothenburg-tax-rules.json"));
+		var calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		// A tiny mapping window so lines and records straddle windows, and several shards
+		bulkTaxService = new BulkTaxService(calculator, 4, 2, 64);
+	}
+
+	private Map<String, String> readOutput(Path output) throws Exception {
+		List<String> lines = Files.readAllLines(output);
+		assertEquals("vehicleId,vehicleType,totalTax,passages,error", lines.get(0));
+		Map<String, String> rows = new HashMap<>();
+		for (String line : lines.subList(1, lines.size())) {
+			rows.put(line.substring(0, line.indexOf(',')), line);
+		}
+		return rows;
+	}
+
+	@Test
+	@DisplayName("Calculates each vehicle from a CSV file, skipping invalid lines")
+	void processesCsv() throws Exception {
+		Path input = Files.writeString(tempDir.resolve("passages.csv"), """
+				vehicleId,vehicleType,timestamp
+				ABC123,CAR,2013-02-04 07:30:00
+				XYZ789,CAR,2013-02-04 10:00:00
+				ABC123,CAR,2013-02-04 15:30:00
+				AMB1,EMERGENCY,2013-02-04 07:30:00
+
+				BAD1,SPACESHIP,2013-02-04 07:30:00
+				BAD2,CAR,not a date
+				ABC123,CAR,2013-02-05 07:30:00\r
+				XYZ789,CAR,2013-02-05 06:10:00""");
+		Path output = tempDir.resolve("taxes.csv");
+
+		BulkTaxService.Summary summary = bulkTaxService.process(input, PassageFileFormat.CSV, output, "gothenburg");
+
+		assertEquals(6, summary.passages());
+		assertEquals(3, summary.vehicles());
+		assertEquals(2, summary.invalidRecords());
+		assertEquals(0, summary.failedVehicles());
+		Map<String, String> rows = readOutput(output);
+		assertEquals("ABC123,CAR,54,3,", rows.get("ABC123"));
+		assertEquals("XYZ789,CAR,16,2,", rows.get("XYZ789"));
+		assertEquals("AMB1,EMERGENCY,0,1,", rows.get("AMB1"));
+	}
+
+	@Test
+	@DisplayName("Calculates each vehicle from a fixed-width binary file")
+	void processesBinary() throws Exception {
+		ByteBuffer records = ByteBuffer.allocate(PassageFileFormat.RECORD_BYTES * 4);
+		// 2013-02-04 07:30:00, 15:30:00 and 2013-02-05 07:30:00
+		PassageFileFormat.putRecord(records, "ABC123", VehicleType.CAR, 1359963000L);
+		PassageFileFormat.putRecord(records, "XYZ789", VehicleType.CAR, 1359963000L);
+		PassageFileFormat.putRecord(records, "ABC123", VehicleType.CAR, 1359991800L);
+		PassageFileFormat.putRecord(records, "ABC123", VehicleType.CAR, 1360049400L);
+		Path input = Files.write(tempDir.resolve("passages.bin"), records.array());
+		Path output = tempDir.resolve("taxes.csv");
+
+		BulkTaxService.Summary summary = bulkTaxService.process(input, PassageFileFormat.BINARY, output, "gothenburg");
+
+		assertEquals(4, summary.passages());
+		assertEquals(2, summary.vehicles());
+		assertTrue(summary.passagesPerSecond() > 0);
+		Map<String, String> rows = readOutput(output);
+		assertEquals("ABC123,CAR,54,3,", rows.get("ABC123"));
+		assertEquals("XYZ789,CAR,18,1,", rows.get("XYZ789"));
+	}
+
+	@Test
+	@DisplayName("Removes its shard files and rejects an unknown city up front")
+	void cleansUp() throws Exception {
+		Path input = Files.writeString(tempDir.resolve("passages.csv"), "ABC123,CAR,2013-02-04 07:30:00\n");
+		Path output = tempDir.resolve("taxes.csv");
+
+		bulkTaxService.process(input, PassageFileFormat.CSV, output, "gothenburg");
+		assertThrows(IllegalArgumentException.class,
+				() -> bulkTaxService.process(input, PassageFileFormat.CSV, output, "atlantis"));
+
+		try (var files = Files.list(tempDir)) {
+			assertFalse(files.anyMatch(file -> file.getFileName().toString().startsWith("tax-bulk-")));
+		}
+	}
+}
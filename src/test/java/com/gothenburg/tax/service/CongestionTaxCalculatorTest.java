@@ -2,35 +2,58 @@ package com.gothenburg.tax.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.gothenburg.tax.config.TaxRuleLoader;
 import com.gothenburg.tax.model.VehicleType;
 import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import tools.jackson.databind.ObjectMapper;
 
 class CongestionTaxCalculatorTest {
 
+	private TaxRuleLoader ruleLoader;
 	private CongestionTaxCalculator calculator;
+	private SimpleMeterRegistry meterRegistry;
 
 	@BeforeEach
 	void setUp() throws Exception {
 		var objectMapper = new ObjectMapper();
-		var ruleLoader = new TaxRuleLoader(objectMapper);
+		ruleLoader = new TaxRuleLoader(objectMapper);
 		// Use reflection to set the resource field, then init
 		var field = TaxRuleLoader.class.getDeclaredField("defaultRulesResource");
 		field.setAccessible(true);
 		field.set(ruleLoader, new ClassPathResource("data/gothenburg-tax-rules.json"));
 		ruleLoader.init();
 
-		var tollFreeDateService = new TollFreeDateService();
-		calculator = new CongestionTaxCalculator(ruleLoader, tollFreeDateService);
+		meterRegistry = new SimpleMeterRegistry();
+		calculator = calculator(50_000, "interpreted");
+	}
+
+	private CongestionTaxCalculator calculator(int parallelThreshold, String engine) {
+		return new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(), new TaxMetrics(meterRegistry),
+				parallelThreshold, engine);
 	}
 
 	@Nested
@@ -163,6 +186,17 @@ class CongestionTaxCalculatorTest {
 			assertEquals(18, result.totalTax());
 		}
 
+		@Test
+		@DisplayName("Seconds within the last minute of a range use that range's fee")
+		void lastMinuteOfRange() {
+			TaxResult result = calculator.calculate(
+					VehicleType.CAR,
+					List.of("2013-02-04 06:29:30"),
+					"gothenburg"
+			);
+			assertEquals(8, result.totalTax());
+		}
+
 		@Test
 		@DisplayName("Night time (18:30-05:59) should cost 0 SEK")
 		void nightTime() {
@@ -250,6 +284,30 @@ class CongestionTaxCalculatorTest {
 		}
 	}
 
+	@Nested
+	@DisplayName("Passage ordering")
+	class PassageOrdering {
+
+		@Test
+		@DisplayName("Unsorted input spanning several days gives the same result as sorted input")
+		void unsortedAcrossDays() {
+			List<String> sorted = List.of(
+					"2013-02-04 06:20:00",
+					"2013-02-04 08:00:00",
+					"2013-02-05 07:30:00",
+					"2013-02-06 15:00:00"
+			);
+			List<String> unsorted = List.of(sorted.get(3), sorted.get(1), sorted.get(2), sorted.get(0));
+
+			TaxResult expected = calculator.calculate(VehicleType.CAR, sorted, "gothenburg");
+			TaxResult actual = calculator.calculate(VehicleType.CAR, unsorted, "gothenburg");
+
+			assertEquals(expected, actual);
+			assertEquals(List.of("2013-02-04", "2013-02-05", "2013-02-06"), List.copyOf(actual.taxByDate().keySet()));
+			assertEquals(21 + 18 + 13, actual.totalTax());
+		}
+	}
+
 	@Nested
 	@DisplayName("Post-it test dates from assignment")
 	class PostItDates {
@@ -313,4 +371,241 @@ class CongestionTaxCalculatorTest {
 			assertEquals(89, result.totalTax());
 		}
 	}
+
+	@Nested
+	@DisplayName("Metrics")
+	class Metrics {
+
+		@Test
+		@DisplayName("Records passages, days and cap hits per city and vehicle type")
+		void recordsCalculation() {
+			calculator.calculate(VehicleType.CAR, List.of(
+					"2013-02-07 06:23:27", "2013-02-07 15:27:00",
+					"2013-02-08 06:27:00", "2013-02-08 07:30:00", "2013-02-08 15:35:00",
+					"2013-02-08 16:48:00", "2013-02-08 17:49:00"
+			), "gothenburg");
+
+			var carTags = meterRegistry.find("tax.calculation.days").tag("vehicle.type", "CAR");
+			assertEquals(1, carTags.summary().count());
+			assertEquals(2.0, carTags.summary().totalAmount());
+			assertEquals(7.0, meterRegistry.find("tax.calculation.passages").tag("vehicle.type", "CAR")
+					.summary().totalAmount());
+			assertEquals(1.0, meterRegistry.find("tax.calculation.cap.hits").tag("vehicle.type", "CAR")
+					.counter().count());
+			assertEquals(1, meterRegistry.find("tax.calculation").tag("city", "gothenburg")
+					.tag("vehicle.type", "CAR").timer().count());
+		}
+
+		@Test
+		@DisplayName("Reuses one request timer per endpoint and outcome")
+		void reusesRequestTimers() {
+			var metrics = new TaxMetrics(meterRegistry);
+
+			assertSame(metrics.request("calculate", "success"), metrics.request("calculate", "success"));
+			assertNotSame(metrics.request("calculate", "success"), metrics.request("calculate", "error"));
+			assertNotSame(metrics.request("calculate", "success"), metrics.request("batch", "success"));
+		}
+
+		@Test
+		@DisplayName("Counts toll-free vehicles and dates")
+		void countsTollFree() {
+			calculator.calculate(VehicleType.BUS, List.of("2013-02-08 07:30:00"), "gothenburg");
+			calculator.calculate(VehicleType.CAR, List.of("2013-02-09 07:30:00"), "gothenburg");
+
+			assertEquals(1.0, meterRegistry.find("tax.calculation.toll.free").tag("vehicle.type", "BUS")
+					.tag("reason", "vehicle").counter().count());
+			assertEquals(1.0, meterRegistry.find("tax.calculation.toll.free").tag("vehicle.type", "CAR")
+					.tag("reason", "date").counter().count());
+		}
+
+		@Test
+		@DisplayName("Skips all but one passage of a toll-free day before sorting")
+		void skipsTollFreeDayPassages() {
+			var result = calculator.calculate(VehicleType.CAR, List.of(
+					"2013-02-09 07:30:00", "2013-02-04 07:30:00", "2013-02-09 15:30:00", "2013-02-09 08:30:00"
+			), "gothenburg");
+
+			assertEquals(18, result.totalTax());
+			assertEquals(Map.of("2013-02-04", 18, "2013-02-09", 0), result.taxByDate());
+			assertEquals(2.0, meterRegistry.find("tax.calculation.passages.skipped").tag("vehicle.type", "CAR")
+					.tag("reason", "date").counter().count());
+		}
+
+		@Test
+		@DisplayName("Stops evaluating a day once the cap is reached")
+		void exitsEarlyAtCap() {
+			var result = calculator.calculate(VehicleType.CAR, List.of(
+					"2013-02-08 06:00:00", "2013-02-08 07:30:00", "2013-02-08 15:00:00",
+					"2013-02-08 16:30:00", "2013-02-08 17:45:00", "2013-02-08 18:15:00", "2013-02-08 18:25:00"
+			), "gothenburg");
+
+			assertEquals(60, result.totalTax());
+			assertEquals(1.0, meterRegistry.find("tax.calculation.early.exits").tag("vehicle.type", "CAR")
+					.counter().count());
+			assertEquals(2.0, meterRegistry.find("tax.calculation.passages.skipped").tag("vehicle.type", "CAR")
+					.tag("reason", "cap").counter().count());
+			assertEquals(1.0, meterRegistry.find("tax.calculation.cap.hits").tag("vehicle.type", "CAR")
+					.counter().count());
+		}
+	}
+
+	@Nested
+	@DisplayName("Parallel days")
+	class ParallelDays {
+
+		@Test
+		@DisplayName("Large requests split across days give the same ordered result")
+		void matchesSequentialResult() {
+			List<String> dates = new ArrayList<>();
+			for (LocalDateTime time = LocalDateTime.of(2013, 1, 1, 6, 0); time.getYear() == 2013;
+					time = time.plusMinutes(17)) {
+				if (time.getHour() >= 6 && time.getHour() < 19) {
+					dates.add(time.format(PassageTimestampParser.DATETIME_FORMAT));
+				}
+			}
+			// Enough passages to be split into several fork/join tasks
+			assertTrue(dates.size() > 2 * CongestionTaxCalculator.SPLIT_PASSAGES);
+			TaxResult sequential = calculator.calculate(VehicleType.CAR, dates, "gothenburg");
+
+			TaxResult parallel = calculator(1, "interpreted").calculate(VehicleType.CAR, dates, "gothenburg");
+
+			assertTrue(sequential.totalTax() > 0);
+			assertEquals(sequential.totalTax(), parallel.totalTax());
+			assertEquals(List.copyOf(sequential.taxByDate().entrySet()), List.copyOf(parallel.taxByDate().entrySet()));
+		}
+	}
+
+	@Nested
+	@DisplayName("Specialised and vector engines")
+	class Engines {
+
+		@Test
+		@DisplayName("Gives the same results as the interpreted engine")
+		void matchesInterpreted() {
+			var random = new Random(23);
+			List<String> dates = new ArrayList<>();
+			for (LocalDateTime time = LocalDateTime.of(2013, 1, 1, 5, 0); time.getYear() == 2013;
+					time = time.plusSeconds(random.nextInt(4 * 3600))) {
+				dates.add(time.format(PassageTimestampParser.DATETIME_FORMAT));
+			}
+			TaxResult interpreted = calculator.calculate(VehicleType.CAR, dates, "gothenburg");
+
+			TaxResult specialised = calculator(50_000, "specialised").calculate(VehicleType.CAR, dates, "gothenburg");
+
+			assertTrue(interpreted.totalTax() > 0);
+			assertEquals(interpreted.totalTax(), specialised.totalTax());
+			assertEquals(List.copyOf(interpreted.taxByDate().entrySet()),
+					List.copyOf(specialised.taxByDate().entrySet()));
+		}
+
+		@Test
+		@DisplayName("The vector engine gives the same results, in parallel too")
+		void vectorMatchesInterpreted() {
+			var random = new Random(29);
+			List<String> dates = new ArrayList<>();
+			for (LocalDateTime time = LocalDateTime.of(2013, 1, 1, 5, 0); time.getYear() == 2013;
+					time = time.plusSeconds(random.nextInt(30 * 60))) {
+				dates.add(time.format(PassageTimestampParser.DATETIME_FORMAT));
+			}
+			// A day too long for the bulk lookup, summed lazily instead
+			for (LocalDateTime time = LocalDateTime.of(2013, 3, 5, 6, 0); time.getHour() < 16;
+					time = time.plusMinutes(2)) {
+				dates.add(time.format(PassageTimestampParser.DATETIME_FORMAT));
+			}
+			// Enough passages for fork/join tasks that start part-way through the fees
+			assertTrue(dates.size() > 2 * CongestionTaxCalculator.SPLIT_PASSAGES);
+			TaxResult interpreted = calculator.calculate(VehicleType.CAR, dates, "gothenburg");
+
+			CongestionTaxCalculator vectorCalculator = calculator(50_000, "vector");
+			TaxResult vector = vectorCalculator.calculate(VehicleType.CAR, dates, "gothenburg");
+			TaxResult parallel = calculator(1, "vector").calculate(VehicleType.CAR, dates, "gothenburg");
+
+			assertEquals(List.copyOf(interpreted.taxByDate().entrySet()), List.copyOf(vector.taxByDate().entrySet()));
+			assertEquals(List.copyOf(interpreted.taxByDate().entrySet()),
+					List.copyOf(parallel.taxByDate().entrySet()));
+			assertEquals(interpreted.totalTax(), parallel.totalTax());
+			var rules = calculator.getRules("gothenburg").forDay((int) LocalDate.of(2013, 2, 4).toEpochDay());
+			assertNull(DayTaxEngines.verify(vectorCalculator.engine(rules), rules));
+		}
+
+		@Test
+		@DisplayName("Generates a verified hidden class per rule set")
+		void generatesHiddenClass() {
+			CongestionTaxCalculator specialised = calculator(50_000, "specialised");
+			var rules = specialised.getRules("gothenburg").forDay((int) LocalDate.of(2013, 2, 4).toEpochDay());
+			DayTaxEngine engine = specialised.engine(rules);
+
+			assertTrue(engine.getClass().isHidden());
+			assertSame(engine, specialised.engine(rules));
+			assertNull(DayTaxEngines.verify(engine, rules));
+			assertEquals(18, specialised.getTollFee(LocalDateTime.of(2013, 2, 4, 7, 30).toEpochSecond(ZoneOffset.UTC), rules));
+		}
+
+		@Test
+		@DisplayName("Rejects an unknown engine")
+		void rejectsUnknownEngine() {
+			assertThrows(IllegalArgumentException.class, () -> calculator(50_000, "jit"));
+		}
+	}
+
+	@Nested
+	@DisplayName("Effective-dated rules")
+	class EffectiveDatedRules {
+
+		@TempDir
+		Path tempDir;
+
+		private CongestionTaxCalculator versionedCalculator;
+
+		@BeforeEach
+		void setUp() throws Exception {
+			String rules;
+			try (var in = new ClassPathResource("data/gothenburg-tax-rules.json").getInputStream()) {
+				rules = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			}
+			Path rules2013 = Files.writeString(tempDir.resolve("gothenburg-2013.json"), rules.replace(
+					"\"year\": 2013,", "\"year\": 2013, \"validFrom\": \"2013-01-01\", \"validTo\": \"2013-12-31\","));
+			Path rules2014 = Files.writeString(tempDir.resolve("gothenburg-2014.json"), rules
+					.replace("\"year\": 2013,", "\"year\": 2014, \"validFrom\": \"2014-01-01\",")
+					.replace("\"amount\": 18", "\"amount\": 22"));
+
+			var ruleLoader = new TaxRuleLoader(new ObjectMapper());
+			ruleLoader.loadRules(new FileSystemResource(rules2013));
+			ruleLoader.loadRules(new FileSystemResource(rules2014));
+			versionedCalculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+					new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		}
+
+		@Test
+		@DisplayName("Each day uses the rule version in effect on that day")
+		void appliesVersionPerDay() {
+			TaxResult result = versionedCalculator.calculate(VehicleType.CAR, List.of(
+					"2014-01-02 07:30:00", "2013-12-27 07:30:00"
+			), "gothenburg");
+
+			assertEquals(18, result.taxByDate().get("2013-12-27"));
+			assertEquals(22, result.taxByDate().get("2014-01-02"));
+			assertEquals(40, result.totalTax());
+			assertEquals(2, result.ruleVersion().split(",").length);
+		}
+
+		@Test
+		@DisplayName("A single-version request reports only that version")
+		void reportsUsedVersion() {
+			TaxResult result = versionedCalculator.calculate(VehicleType.CAR, List.of(
+					"2014-02-04 07:30:00", "2014-06-04 07:30:00"
+			), "gothenburg");
+
+			assertEquals(44, result.totalTax());
+			assertFalse(result.ruleVersion().contains(","));
+		}
+
+		@Test
+		@DisplayName("A day no version covers is rejected")
+		void rejectsUncoveredDay() {
+			var ex = assertThrows(IllegalArgumentException.class, () -> versionedCalculator.calculate(
+					VehicleType.CAR, List.of("2012-12-28 07:30:00"), "gothenburg"));
+			assertEquals("No tax rules for gothenburg on 2012-12-28", ex.getMessage());
+		}
+	}
 }
@@ -0,0 +1,70 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the kernel {@link FeeKernel#load()} picks with the scalar kernel. The build runs
+ * tests with {@code --add-modules jdk.incubator.vector}, so that is the vector kernel.
+ */
+class FeeKernelTest {
+
+	private static final int WINDOW_MINUTES = 60;
+	private static final int MAX_DAILY_TAX = 60;
+
+	private final FeeKernel kernel = FeeKernel.load();
+	private final Random random = new Random(11);
+
+	@Test
+	@DisplayName("Loads the vector kernel when jdk.incubator.vector is present")
+	void loadsVectorKernel() {
+		assertInstanceOf(VectorFeeKernel.class, kernel);
+	}
+
+	@Test
+	@DisplayName("Bulk lookups match the fee table, including the unaligned tail")
+	void looksUpFees() {
+		int[] feeTable = new int[1440];
+		for (int minute = 0; minute < feeTable.length; minute++) {
+			feeTable[minute] = minute % 7 * 3;
+		}
+		int[] minutes = random.ints(1003, 0, 1440).toArray();
+
+		int[] expected = minutes.clone();
+		ScalarFeeKernel.INSTANCE.fees(feeTable, expected, 3, 1000);
+		int[] actual = minutes.clone();
+		kernel.fees(feeTable, actual, 3, 1000);
+
+		assertArrayEquals(expected, actual);
+		assertEquals(minutes[2], actual[2]);
+		assertEquals(feeTable[minutes[500]], actual[500]);
+	}
+
+	@Test
+	@DisplayName("Window sums match the scalar scan for separate and overlapping windows")
+	void sumsWindows() {
+		for (int round = 0; round < 500; round++) {
+			int count = 1 + random.nextInt(40);
+			// Gaps up to four windows, so some days have every passage in a window of its own
+			int maxGap = round % 2 == 0 ? 4 * 3600 : 3 * 3600;
+			int minGap = round % 4 == 0 ? (WINDOW_MINUTES + 1) * 60 : 1;
+			long[] passages = new long[count + 2];
+			for (int i = 1; i < passages.length; i++) {
+				passages[i] = passages[i - 1] + minGap + random.nextInt(maxGap);
+			}
+			int[] fees = random.ints(count, 0, round % 3 == 0 ? 3 : 19).toArray();
+
+			assertEquals(
+					ScalarFeeKernel.INSTANCE.sumWindowFees(passages, 1, count + 1, fees, 0, WINDOW_MINUTES,
+							MAX_DAILY_TAX, null),
+					kernel.sumWindowFees(passages, 1, count + 1, fees, 0, WINDOW_MINUTES, MAX_DAILY_TAX, null),
+					Arrays.toString(passages) + " " + Arrays.toString(fees));
+		}
+	}
+}
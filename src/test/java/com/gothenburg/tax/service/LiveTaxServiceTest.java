@@ -0,0 +1,119 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.LiveTaxStatus;
+import com.gothenburg.tax.model.Passage;
+import com.gothenburg.tax.model.VehicleType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import tools.jackson.databind.ObjectMapper;
+
+class LiveTaxServiceTest {
+
+	@TempDir
+	Path tempDir;
+
+	private Path rulesFile;
+	private TaxRuleLoader ruleLoader;
+	private CongestionTaxCalculator calculator;
+	private LiveTaxService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		// A copy on the file system, so tests can reload changed rules
+		rulesFile = tempDir.resolve("gothenburg-tax-rules.json");
+		Files.copy(new ClassPathResource("data/gothenburg-tax-rules.json").getInputStream(), rulesFile);
+
+		ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		var field = TaxRuleLoader.class.getDeclaredField("defaultRulesResource");
+		field.setAccessible(true);
+		field.set(ruleLoader, new FileSystemResource(rulesFile));
+		ruleLoader.init();
+
+		var tollFreeDateService = new TollFreeDateService();
+		calculator = new CongestionTaxCalculator(ruleLoader, tollFreeDateService,
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		service = new LiveTaxService(calculator, tollFreeDateService, 0);
+	}
+
+	private LiveTaxStatus ingest(String vehicleId, VehicleType type, String timestamp) {
+		return service.ingest(new Passage(vehicleId, type, timestamp), "gothenburg");
+	}
+
+	@Test
+	@DisplayName("Running total matches a full recalculation after every passage")
+	void runningTotalMatchesCalculate() {
+		List<String> day = List.of(
+				"2013-02-08 06:20:27", "2013-02-08 06:27:00", "2013-02-08 14:35:00",
+				"2013-02-08 15:29:00", "2013-02-08 15:47:00", "2013-02-08 16:01:00",
+				"2013-02-08 16:48:00", "2013-02-08 17:49:00", "2013-02-08 18:29:00",
+				"2013-02-08 18:35:00");
+
+		for (int i = 0; i < day.size(); i++) {
+			LiveTaxStatus status = ingest("ABC123", VehicleType.CAR, day.get(i));
+			int expected = calculator.calculate(VehicleType.CAR, day.subList(0, i + 1), "gothenburg").totalTax();
+			assertEquals(expected, status.totalTax(), "after passage " + day.get(i));
+			assertEquals(i + 1, status.passages());
+		}
+		assertEquals(60, service.currentTotal("ABC123", "gothenburg").totalTax());
+	}
+
+	@Test
+	@DisplayName("Toll-free vehicles and dates accumulate nothing")
+	void tollFree() {
+		assertEquals(0, ingest("BUS1", VehicleType.BUS, "2013-02-04 07:30:00").totalTax());
+		// 2013-02-09 is a Saturday
+		assertEquals(0, ingest("CAR1", VehicleType.CAR, "2013-02-09 07:30:00").totalTax());
+	}
+
+	@Test
+	@DisplayName("Out-of-order passages for a vehicle are rejected")
+	void outOfOrderRejected() {
+		ingest("ABC123", VehicleType.CAR, "2013-02-04 07:30:00");
+
+		assertThrows(IllegalArgumentException.class,
+				() -> ingest("ABC123", VehicleType.CAR, "2013-02-04 07:00:00"));
+		assertEquals(18, service.currentTotal("ABC123", "gothenburg").totalTax());
+	}
+
+	@Test
+	@DisplayName("A new day starts a fresh total and closed days are evicted")
+	void newDayAndEviction() {
+		ingest("A", VehicleType.CAR, "2013-02-04 07:30:00");
+		ingest("B", VehicleType.CAR, "2013-02-05 06:15:00");
+
+		// The feed has moved on to 2013-02-05, so A owes nothing today
+		LiveTaxStatus a = service.currentTotal("A", "gothenburg");
+		assertEquals("2013-02-05", a.date());
+		assertEquals(0, a.totalTax());
+
+		service.evictClosedDays();
+		assertThrows(IllegalArgumentException.class,
+				() -> ingest("A", VehicleType.CAR, "2013-02-04 16:00:00"));
+		assertEquals(8, service.currentTotal("B", "gothenburg").totalTax());
+	}
+
+	@Test
+	@DisplayName("A running day whose rules were reloaded away is rejected")
+	void rejectsDayWithoutRules() throws Exception {
+		ingest("A", VehicleType.CAR, "2013-02-04 07:30:00");
+		Files.writeString(rulesFile, Files.readString(rulesFile)
+				.replace("\"year\": 2013,", "\"year\": 2013, \"validFrom\": \"2013-03-01\","));
+		assertTrue(ruleLoader.reload(rulesFile));
+
+		var ex = assertThrows(IllegalArgumentException.class, () -> service.currentTotal("A", "gothenburg"));
+		assertEquals("No tax rules for gothenburg on 2013-02-04", ex.getMessage());
+	}
+}
@@ -0,0 +1,75 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PassageColumnsTest {
+
+	private final PassageColumns columns = new PassageColumns();
+
+	@Test
+	@DisplayName("Sorts by vehicle, then time, keeping each passage's columns together")
+	void sortsByVehicleThenTime() {
+		var random = new Random(3);
+		for (int size : new int[] {0, 1, 2, 17, 1000, 20_000}) {
+			long[][] passages = new long[size][];
+			columns.reset(size);
+			for (int i = 0; i < size; i++) {
+				// Few distinct times, so there are duplicates to partition around
+				int vehicle = random.nextInt(Math.max(1, size / 20));
+				passages[i] = new long[] {vehicle, vehicle % 7, 1_359_963_000L + random.nextInt(50) * 60L};
+				columns.add(vehicle, vehicle % 7, passages[i][2]);
+			}
+			columns.sort();
+			Arrays.sort(passages, Comparator.<long[]>comparingLong(p -> p[0]).thenComparingLong(p -> p[2]));
+
+			assertEquals(size, columns.size());
+			for (int i = 0; i < size; i++) {
+				assertArrayEquals(passages[i],
+						new long[] {columns.vehicle(i), columns.typeOrdinal(i), columns.epochSecond(i)});
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("Handles ordered, reversed and identical input")
+	void sortsDegenerateInput() {
+		columns.reset(3000);
+		for (int i = 0; i < 1000; i++) {
+			columns.add(0, 0, i);
+		}
+		for (int i = 1000; i > 0; i--) {
+			columns.add(1, 0, i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			columns.add(2, 0, 7);
+		}
+		columns.sort();
+
+		assertEquals(1000, columns.vehicleEnd(0));
+		assertEquals(2000, columns.vehicleEnd(1000));
+		assertEquals(3000, columns.vehicleEnd(2000));
+		long[] reversed = columns.epochSeconds(1000, 2000);
+		assertEquals(1, reversed[0]);
+		assertEquals(1000, reversed[999]);
+	}
+
+	@Test
+	@DisplayName("Is reused for a smaller shard without keeping its passages")
+	void resets() {
+		columns.reset(10);
+		columns.add(4, 1, 99);
+		columns.reset(5);
+		columns.add(2, 3, 42);
+
+		assertEquals(1, columns.size());
+		assertEquals(3, columns.typeOrdinal(0));
+		assertArrayEquals(new long[] {42}, columns.epochSeconds(0, 1));
+	}
+}
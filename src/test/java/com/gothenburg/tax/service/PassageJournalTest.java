@@ -0,0 +1,174 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.LiveTaxStatus;
+import com.gothenburg.tax.model.Passage;
+import com.gothenburg.tax.model.VehicleType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+class PassageJournalTest {
+
+	@TempDir
+	Path tempDir;
+
+	private CongestionTaxCalculator calculator;
+	private LiveTaxService liveTaxService;
+	private TaxLedgerService ledger;
+	private PassageJournal journal;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		var ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		ruleLoader.loadRules(new ClassPathResource("data/gothenburg-tax-rules.json"));
+		calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		restart();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		journal.stop();
+	}
+
+	/**
+	 * Stop the journal, if running, and recover fresh services from its directory.
+	 */
+	private void restart() throws Exception {
+		if (journal != null) {
+			journal.stop();
+		}
+		liveTaxService = new LiveTaxService(calculator, new TollFreeDateService(), 0);
+		ledger = new TaxLedgerService(calculator, 100);
+		journal = new PassageJournal(calculator, liveTaxService, ledger, tempDir.toString(), 0);
+		journal.start();
+	}
+
+	private void ingest(String vehicleId, String timestamp) {
+		journal.ingest(new Passage(vehicleId, VehicleType.CAR, timestamp), "gothenburg");
+	}
+
+	private long ledgerTotal(String vehicleId) {
+		return ledger.total(vehicleId, "gothenburg", LocalDate.of(2013, 1, 1), LocalDate.of(2013, 12, 31))
+				.totalTax();
+	}
+
+	@Test
+	@DisplayName("Live totals survive a restart")
+	void recoversLiveTotals() throws Exception {
+		ingest("ABC123", "2013-02-04 07:30:00");
+		ingest("ABC123", "2013-02-04 15:30:00");
+		assertEquals(2, journal.passages("ABC123", "gothenburg").size());
+
+		restart();
+
+		assertEquals(36, liveTaxService.currentTotal("ABC123", "gothenburg").totalTax());
+		assertEquals(List.of(new Passage("ABC123", VehicleType.CAR, "2013-02-04 07:30:00"),
+						new Passage("ABC123", VehicleType.CAR, "2013-02-04 15:30:00")),
+				journal.passages("ABC123", "gothenburg"));
+	}
+
+	@Test
+	@DisplayName("Snapshots move closed days into the ledger and out of the log")
+	void snapshotsAndCompacts() throws Exception {
+		ingest("ABC123", "2013-02-04 07:30:00");
+		ingest("ABC123", "2013-02-04 15:30:00");
+		ingest("XYZ789", "2013-02-05 07:30:00");
+		long logBytes = Files.size(tempDir.resolve("gothenburg").resolve(PassageJournal.LOG_FILE));
+
+		journal.snapshot();
+
+		assertEquals(36, ledgerTotal("ABC123"));
+		assertEquals(0, journal.passages("ABC123", "gothenburg").size());
+		assertEquals(1, journal.passages("XYZ789", "gothenburg").size());
+		assertTrue(Files.size(tempDir.resolve("gothenburg").resolve(PassageJournal.LOG_FILE)) < logBytes);
+
+		restart();
+
+		assertEquals(36, ledgerTotal("ABC123"));
+		assertEquals(18, liveTaxService.currentTotal("XYZ789", "gothenburg").totalTax());
+		ingest("XYZ789", "2013-02-05 15:30:00");
+		assertEquals(36, liveTaxService.currentTotal("XYZ789", "gothenburg").totalTax());
+	}
+
+	@Test
+	@DisplayName("Rejected passages are not logged, so a snapshot does not tax them")
+	void leavesRejectedPassagesOut() throws Exception {
+		ingest("ABC123", "2013-02-04 07:30:00");
+		// Earlier than ABC123's latest passage, and in a window of its own if it were counted
+		assertThrows(IllegalArgumentException.class, () -> ingest("ABC123", "2013-02-04 06:00:00"));
+		ingest("DEF456", "2013-02-05 07:30:00");
+		// 2013-02-04 is closed once the feed reaches 2013-02-05
+		assertThrows(IllegalArgumentException.class, () -> ingest("XYZ789", "2013-02-04 07:30:00"));
+		assertEquals(1, journal.passages("ABC123", "gothenburg").size());
+		assertEquals(0, journal.passages("XYZ789", "gothenburg").size());
+
+		journal.snapshot();
+
+		assertEquals(18, ledgerTotal("ABC123"));
+		assertEquals(0, ledgerTotal("XYZ789"));
+	}
+
+	@Test
+	@DisplayName("Cuts a torn record off the end of the log")
+	void cutsTornTail() throws Exception {
+		ingest("ABC123", "2013-02-04 07:30:00");
+		journal.stop();
+		Path logFile = tempDir.resolve("gothenburg").resolve(PassageJournal.LOG_FILE);
+		long intact = Files.size(logFile);
+		Files.write(logFile, new byte[] {0, 0, 0, 20, 1, 2}, StandardOpenOption.APPEND);
+
+		restart();
+
+		assertEquals(intact, Files.size(logFile));
+		assertEquals(18, liveTaxService.currentTotal("ABC123", "gothenburg").totalTax());
+		ingest("ABC123", "2013-02-04 15:30:00");
+		assertEquals(2, journal.passages("ABC123", "gothenburg").size());
+	}
+
+	@Test
+	@DisplayName("Replays passages in the order concurrent ingests applied them")
+	void replaysConcurrentIngests() throws Exception {
+		List<String> vehicles = List.of("ABC123", "XYZ789", "DEF456");
+		try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+			for (int minute = 0; minute < 600; minute++) {
+				String timestamp = LocalDateTime.of(2013, 2, 4, 6, 0).plusMinutes(minute)
+						.format(PassageTimestampParser.DATETIME_FORMAT);
+				for (String vehicle : vehicles) {
+					// Racing passages of one vehicle can arrive out of order, so some are rejected
+					executor.submit(() -> ingest(vehicle, timestamp));
+				}
+			}
+		}
+		Map<String, LiveTaxStatus> live = new HashMap<>();
+		vehicles.forEach(vehicle -> live.put(vehicle, liveTaxService.currentTotal(vehicle, "gothenburg")));
+
+		restart();
+
+		for (String vehicle : vehicles) {
+			assertEquals(live.get(vehicle), liveTaxService.currentTotal(vehicle, "gothenburg"));
+			// Only accepted passages were logged
+			assertEquals(live.get(vehicle).passages(), journal.passages(vehicle, "gothenburg").size());
+		}
+	}
+}
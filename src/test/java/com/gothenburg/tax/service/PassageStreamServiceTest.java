@@ -0,0 +1,142 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.PassageLogFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+class PassageStreamServiceTest {
+
+	private PassageStreamService service;
+	private ObjectMapper objectMapper;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		objectMapper = new ObjectMapper();
+		var ruleLoader = new TaxRuleLoader(objectMapper);
+		var field = TaxRuleLoader.class.getDeclaredField("defaultRulesResource");
+		field.setAccessible(true);
+		field.set(ruleLoader, new ClassPathResource("data/gothenburg-tax-rules.json"));
+		ruleLoader.init();
+
+		var calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		service = new PassageStreamService(calculator, objectMapper, 1);
+	}
+
+	private List<Map<?, ?>> process(String body, PassageLogFormat format) throws Exception {
+		StringWriter out = new StringWriter();
+		service.process(new BufferedReader(new StringReader(body)), format, out, "gothenburg");
+		return out.toString().lines()
+				.<Map<?, ?>>map(line -> objectMapper.readValue(line, Map.class))
+				.toList();
+	}
+
+	@Test
+	@DisplayName("NDJSON passages are aggregated per vehicle and day")
+	void ndjsonPerVehicleDay() throws Exception {
+		List<Map<?, ?>> lines = process("""
+				{"vehicleId":"A","vehicleType":"CAR","timestamp":"2013-02-04 06:20:00"}
+				{"vehicleId":"B","vehicleType":"BUS","timestamp":"2013-02-04 07:00:00"}
+				{"vehicleId":"A","vehicleType":"CAR","timestamp":"2013-02-04 06:45:00"}
+				{"vehicleId":"A","vehicleType":"CAR","timestamp":"2013-02-05 07:30:00"}
+				""", PassageLogFormat.NDJSON);
+
+		assertEquals(3, lines.size());
+		// A's first day closes when its next day starts: max(8, 13) within one window
+		assertEquals("A", lines.get(0).get("vehicleId"));
+		assertEquals("2013-02-04", lines.get(0).get("date"));
+		assertEquals(13, lines.get(0).get("tax"));
+		assertEquals("B", lines.get(1).get("vehicleId"));
+		assertEquals(true, lines.get(1).get("tollFree"));
+		assertEquals("2013-02-05", lines.get(2).get("date"));
+		assertEquals(18, lines.get(2).get("tax"));
+	}
+
+	@Test
+	@DisplayName("CSV input with a header row applies the daily cap")
+	void csvWithHeader() throws Exception {
+		List<Map<?, ?>> lines = process("""
+				vehicleId,vehicleType,timestamp
+				A,CAR,2013-02-04 06:00:00
+				A,CAR,2013-02-04 07:15:00
+				A,CAR,2013-02-04 08:30:00
+				A,CAR,2013-02-04 15:00:00
+				A,CAR,2013-02-04 16:00:00
+				A,CAR,2013-02-04 17:30:00
+				""", PassageLogFormat.CSV);
+
+		assertEquals(1, lines.size());
+		assertEquals(60, lines.get(0).get("tax"));
+	}
+
+	@Test
+	@DisplayName("Invalid lines are reported inline and skipped")
+	void invalidLinesReported() throws Exception {
+		List<Map<?, ?>> lines = process("""
+				A,CAR,2013-02-04 07:30:00
+				B,TRAIN,2013-02-04 07:30:00
+				C,CAR,not-a-date
+				""", PassageLogFormat.CSV);
+
+		assertEquals(3, lines.size());
+		assertEquals(2, lines.get(0).get("line"));
+		assertEquals(3, lines.get(1).get("line"));
+		assertEquals("A", lines.get(2).get("vehicleId"));
+		assertEquals(18, lines.get(2).get("tax"));
+	}
+
+	@Test
+	@DisplayName("Passages for a day that has already been closed are rejected")
+	void latePassageRejected() throws Exception {
+		List<Map<?, ?>> lines = process("""
+				A,CAR,2013-02-04 07:30:00
+				B,CAR,2013-02-06 07:30:00
+				A,CAR,2013-02-04 16:00:00
+				""", PassageLogFormat.CSV);
+
+		assertEquals(3, lines.size());
+		assertEquals("A", lines.get(0).get("vehicleId"));
+		assertEquals(18, lines.get(0).get("tax"));
+		assertEquals(3, lines.get(1).get("line"));
+	}
+
+	@Test
+	@DisplayName("A vehicle changing type within a day is rejected")
+	void vehicleTypeChangeRejected() throws Exception {
+		List<Map<?, ?>> lines = process("""
+				A,CAR,2013-02-04 07:30:00
+				A,EMERGENCY,2013-02-04 16:00:00
+				A,EMERGENCY,2013-02-05 07:30:00
+				""", PassageLogFormat.CSV);
+
+		assertEquals(3, lines.size());
+		assertEquals(2, lines.get(0).get("line"));
+		// The day is taxed as the CAR it started as; the next day may use another type
+		assertEquals("2013-02-04", lines.get(1).get("date"));
+		assertEquals(18, lines.get(1).get("tax"));
+		assertEquals("2013-02-05", lines.get(2).get("date"));
+		assertEquals(true, lines.get(2).get("tollFree"));
+	}
+
+	@Test
+	@DisplayName("Unknown city fails before any output")
+	void unknownCity() {
+		StringWriter out = new StringWriter();
+		assertThrows(IllegalArgumentException.class, () -> service.process(
+				new BufferedReader(new StringReader("A,CAR,2013-02-04 07:30:00")), PassageLogFormat.CSV, out, "stockholm"));
+		assertEquals("", out.toString());
+	}
+}
@@ -0,0 +1,60 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PassageTimestampParserTest {
+
+    private static long formatterEpochSecond(String text) {
+        return LocalDateTime.parse(text.trim(), PassageTimestampParser.DATETIME_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @Test
+    @DisplayName("Matches the formatter for every minute of a leap-year day boundary")
+    void matchesFormatter() {
+        LocalDateTime time = LocalDateTime.of(2012, 2, 28, 0, 0, 7);
+        for (int i = 0; i < 3 * 24 * 60; i++, time = time.plusMinutes(1)) {
+            String text = time.format(PassageTimestampParser.DATETIME_FORMAT);
+            assertEquals(formatterEpochSecond(text), PassageTimestampParser.parseEpochSecond(text), text);
+        }
+    }
+
+    @Test
+    @DisplayName("Handles dates before 1970 and far in the future")
+    void wideYearRange() {
+        for (String text : new String[] {"1969-12-31 23:59:59", "0001-01-01 00:00:00", "9999-12-31 23:59:59"}) {
+            assertEquals(formatterEpochSecond(text), PassageTimestampParser.parseEpochSecond(text), text);
+        }
+    }
+
+    @Test
+    @DisplayName("Surrounding whitespace is ignored")
+    void trimsWhitespace() {
+        assertEquals(formatterEpochSecond("2013-02-08 06:27:00"),
+                PassageTimestampParser.parseEpochSecond("  2013-02-08 06:27:00\t"));
+    }
+
+    @Test
+    @DisplayName("Unusual but accepted inputs resolve exactly like the formatter")
+    void unusualInputFallsBackToFormatter() {
+        // Day past the end of the month, and 24:00 as end of day
+        for (String text : new String[] {"2013-02-30 10:00:00", "2013-02-08 24:00:00"}) {
+            assertEquals(formatterEpochSecond(text), PassageTimestampParser.parseEpochSecond(text), text);
+        }
+    }
+
+    @Test
+    @DisplayName("Invalid timestamps throw DateTimeParseException")
+    void invalidInput() {
+        for (String text : new String[] {"not-a-date", "2013-02-08T06:27:00", "2013-13-01 10:00:00",
+                "2013-02-08 06:27", "2013-02-08 06:2x:00", ""}) {
+            assertThrows(DateTimeParseException.class, () -> PassageTimestampParser.parseEpochSecond(text));
+        }
+    }
+}
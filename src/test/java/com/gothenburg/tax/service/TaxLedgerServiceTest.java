@@ -0,0 +1,100 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.LedgerGranularity;
+import com.gothenburg.tax.model.LedgerPeriod;
+import com.gothenburg.tax.model.LedgerTotal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+class TaxLedgerServiceTest {
+
+	private TaxLedgerService ledger;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		var ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		ruleLoader.loadRules(new ClassPathResource("data/gothenburg-tax-rules.json"));
+		var calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		ledger = new TaxLedgerService(calculator, 2);
+	}
+
+	private static Map<String, Integer> days(Object... dateAndTax) {
+		Map<String, Integer> days = new LinkedHashMap<>();
+		for (int i = 0; i < dateAndTax.length; i += 2) {
+			days.put((String) dateAndTax[i], (Integer) dateAndTax[i + 1]);
+		}
+		return days;
+	}
+
+	private LedgerTotal total(String vehicleId, String from, String to) {
+		return ledger.total(vehicleId, "gothenburg", LocalDate.parse(from), LocalDate.parse(to));
+	}
+
+	@Test
+	@DisplayName("Range totals include both ends and only the vehicle's taxed days")
+	void rangeTotals() {
+		ledger.record("ABC123", "gothenburg", days("2013-01-14", 21, "2013-02-04", 54, "2013-02-05", 0));
+		ledger.record("ABC123", "gothenburg", days("2013-03-28", 60, "2013-01-02", 8));
+
+		assertEquals(143, total("ABC123", "2013-01-01", "2013-12-31").totalTax());
+		assertEquals(4, total("ABC123", "2013-01-01", "2013-12-31").taxedDays());
+		assertEquals(75, total("ABC123", "2013-01-14", "2013-02-04").totalTax());
+		assertEquals(54, total("ABC123", "2013-02-04", "2013-02-04").totalTax());
+		assertEquals(0, total("ABC123", "2013-02-05", "2013-03-27").totalTax());
+		assertEquals(0, total("XYZ789", "2013-01-01", "2013-12-31").totalTax());
+		assertThrows(IllegalArgumentException.class, () -> total("ABC123", "2013-02-01", "2013-01-01"));
+	}
+
+	@Test
+	@DisplayName("A recalculated day replaces the amount recorded before")
+	void recalculatedDayReplaces() {
+		ledger.record("ABC123", "gothenburg", days("2013-02-04", 18, "2013-02-05", 13));
+		ledger.record("ABC123", "gothenburg", days("2013-02-04", 54, "2013-02-05", 0));
+
+		LedgerTotal total = total("ABC123", "2013-02-01", "2013-02-28");
+		assertEquals(54, total.totalTax());
+		assertEquals(1, total.taxedDays());
+	}
+
+	@Test
+	@DisplayName("Rolls up by month and year, oldest first")
+	void rollups() {
+		ledger.record("ABC123", "gothenburg",
+				days("2013-01-14", 21, "2013-01-31", 8, "2013-02-04", 54, "2014-02-01", 60));
+
+		assertEquals(List.of(
+						new LedgerPeriod("2013-01", 29, 2),
+						new LedgerPeriod("2013-02", 54, 1),
+						new LedgerPeriod("2014-02", 60, 1)),
+				ledger.rollup("ABC123", "gothenburg", LedgerGranularity.MONTH).periods());
+		assertEquals(List.of(
+						new LedgerPeriod("2013", 83, 3),
+						new LedgerPeriod("2014", 60, 1)),
+				ledger.rollup("ABC123", "gothenburg", LedgerGranularity.YEAR).periods());
+	}
+
+	@Test
+	@DisplayName("Stops recording new vehicles at the limit")
+	void maxVehicles() {
+		ledger.record("A", "gothenburg", days("2013-02-04", 18));
+		ledger.record("B", "gothenburg", days("2013-02-04", 18));
+		ledger.record("C", "gothenburg", days("2013-02-04", 18));
+		ledger.record("A", "gothenburg", days("2013-02-05", 18));
+
+		assertEquals(0, total("C", "2013-01-01", "2013-12-31").totalTax());
+		assertEquals(36, total("A", "2013-01-01", "2013-12-31").totalTax());
+	}
+}
@@ -0,0 +1,153 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.service.CongestionTaxCalculator.TaxResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import tools.jackson.databind.ObjectMapper;
+
+class TaxResultCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	private TaxRuleLoader ruleLoader;
+	private Path rulesFile;
+	private TaxResultCache cache;
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		try (var in = new ClassPathResource("data/gothenburg-tax-rules.json").getInputStream()) {
+			rulesFile = Files.write(tempDir.resolve("gothenburg-tax-rules.json"), in.readAllBytes());
+		}
+		ruleLoader.loadRules(new FileSystemResource(rulesFile));
+
+		meterRegistry = new SimpleMeterRegistry();
+		var calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(meterRegistry), 50_000, "interpreted");
+		cache = new TaxResultCache(calculator, 100, 600);
+		cache.bindTo(meterRegistry);
+	}
+
+	@Test
+	@DisplayName("The key ignores passage order but not the passages themselves")
+	void keyIsNormalised() {
+		var key = cache.key(VehicleType.CAR, List.of("2013-02-04 07:30:00", "2013-02-04 15:30:00"), "gothenburg");
+		var reordered = cache.key(VehicleType.CAR, List.of("2013-02-04 15:30:00", "2013-02-04 07:30:00"), "gothenburg");
+		var otherDay = cache.key(VehicleType.CAR, List.of("2013-02-05 07:30:00", "2013-02-04 15:30:00"), "gothenburg");
+
+		// The binary format's epoch-seconds, in another order again
+		var binary = cache.key(VehicleType.CAR, new long[] {1359991800L, 1359963000L}, "gothenburg");
+
+		assertEquals(key, reordered);
+		assertEquals(key.etag("application/json"), reordered.etag("application/json"));
+		assertEquals(key, binary);
+		assertNotEquals(key, otherDay);
+		assertNotEquals(key.etag("application/json"), otherDay.etag("application/json"));
+	}
+
+	@Test
+	@DisplayName("Requests differing only in passages on a toll-free day share a key")
+	void keyReducesTollFreeDays() {
+		var key = cache.key(VehicleType.CAR, List.of("2013-02-04 07:30:00", "2013-02-09 07:30:00"), "gothenburg");
+		var moreWeekend = cache.key(VehicleType.CAR,
+				List.of("2013-02-09 16:00:00", "2013-02-04 07:30:00", "2013-02-09 08:00:00"), "gothenburg");
+
+		assertEquals(key, moreWeekend);
+		assertEquals(0.0, skippedDatePassages());
+
+		assertEquals(Map.of("2013-02-04", 18, "2013-02-09", 0), cache.get(moreWeekend).taxByDate());
+		cache.get(key);
+		// Counted once, for the request that was calculated; neither key nor the hit counts
+		assertEquals(1.0, skippedDatePassages());
+		// The request's own size, skipped passages included
+		assertEquals(3.0, meterRegistry.find("tax.calculation.passages").tag("vehicle.type", "CAR")
+				.summary().totalAmount());
+	}
+
+	private double skippedDatePassages() {
+		var counter = meterRegistry.find("tax.calculation.passages.skipped").tag("reason", "date").counter();
+		return counter == null ? 0 : counter.count();
+	}
+
+	@Test
+	@DisplayName("Repeated requests are served from the cache")
+	void cachesResults() {
+		List<String> dates = List.of("2013-02-04 07:30:00");
+
+		TaxResult first = cache.get(cache.key(VehicleType.CAR, dates, "gothenburg"));
+		TaxResult second = cache.get(cache.key(VehicleType.CAR, dates, "gothenburg"));
+
+		assertEquals(18, first.totalTax());
+		assertSame(first, second);
+		assertEquals(1.0, meterRegistry.find("cache.gets").tag("result", "hit").functionCounter().count());
+		assertEquals(1.0, meterRegistry.find("cache.gets").tag("result", "miss").functionCounter().count());
+	}
+
+	@Test
+	@DisplayName("Entries are weighed by their passages, so long histories are evicted")
+	void boundsPassagesHeld() {
+		List<String> week = new ArrayList<>();
+		for (int day = 4; day <= 8; day++) {
+			for (int hour = 6; hour < 18; hour++) {
+				week.add(String.format("2013-02-%02d %02d:30:00", day, hour));
+			}
+		}
+		var key = cache.key(VehicleType.CAR, week, "gothenburg");
+		TaxResult result = cache.get(key);
+		assertEquals(1 + 60 + 5, TaxResultCache.weigh(key, result));
+
+		// Over the cache's 100 passages with the next request
+		cache.get(cache.key(VehicleType.CAR, week.subList(0, 40), "gothenburg"));
+		cache.cleanUp();
+
+		assertEquals(1.0, meterRegistry.find("cache.evictions").functionCounter().count());
+	}
+
+	@Test
+	@DisplayName("A rule change produces a new key and a fresh result")
+	void ruleChangeInvalidatesKey() throws Exception {
+		List<String> dates = List.of("2013-02-04 07:30:00");
+		var before = cache.key(VehicleType.CAR, dates, "gothenburg");
+		cache.get(before);
+
+		String rules = Files.readString(rulesFile, StandardCharsets.UTF_8);
+		Files.writeString(rulesFile, rules.replace("\"amount\": 18", "\"amount\": 19"));
+		assertTrue(ruleLoader.reload(rulesFile));
+
+		var after = cache.key(VehicleType.CAR, dates, "gothenburg");
+		assertNotEquals(before, after);
+		assertNotEquals(before.etag("application/json"), after.etag("application/json"));
+		assertEquals(19, cache.get(after).totalTax());
+	}
+
+	@Test
+	@DisplayName("Toll-free vehicles are keyed without parsing their dates, as before")
+	void tollFreeVehicleSkipsParsing() {
+		var key = cache.key(VehicleType.EMERGENCY, List.of("not a date"), "gothenburg");
+
+		assertTrue(cache.get(key).tollFree());
+		assertThrows(IllegalArgumentException.class,
+				() -> cache.key(VehicleType.CAR, List.of("2013-02-04 07:30:00"), "atlantis"));
+	}
+}
@@ -1,11 +1,14 @@
 package com.gothenburg.tax.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.gothenburg.tax.config.TaxRuleLoader;
-import com.gothenburg.tax.model.TaxRuleConfig;
+import com.gothenburg.tax.model.CompiledTaxRules;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.BitSet;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,7 +18,7 @@ import tools.jackson.databind.ObjectMapper;
 class TollFreeDateServiceTest {
 
     private TollFreeDateService service;
-    private TaxRuleConfig rules;
+    private CompiledTaxRules rules;
 
     @BeforeEach
     void setUp() throws Exception {
@@ -26,7 +29,7 @@ class TollFreeDateServiceTest {
         field.setAccessible(true);
         field.set(ruleLoader, new ClassPathResource("data/gothenburg-tax-rules.json"));
         ruleLoader.init();
-        rules = ruleLoader.getDefaultRules();
+        rules = ruleLoader.getDefaultRules().forDate(LocalDate.of(2013, 1, 1));
     }
 
     @Test
@@ -84,4 +87,36 @@ class TollFreeDateServiceTest {
         // 2013-02-04 is Monday
         assertFalse(service.isTollFreeDate(LocalDateTime.of(2013, 2, 4, 10, 0), rules));
     }
+
+    @Test
+    @DisplayName("Days outside the rule years fall back to weekend and month rules")
+    void outsideCalendarRange() {
+        // 2014-01-11 is Saturday, 2014-01-13 is Monday, 2012-07-02 is in July
+        assertTrue(service.isTollFreeDate(LocalDateTime.of(2014, 1, 11, 10, 0), rules));
+        assertFalse(service.isTollFreeDate(LocalDateTime.of(2014, 1, 13, 10, 0), rules));
+        assertTrue(service.isTollFreeDate(LocalDateTime.of(2012, 7, 2, 10, 0), rules));
+    }
+
+    @Test
+    @DisplayName("Bulk lookup marks only chargeable days")
+    void chargeableDays() {
+        int[] days = {
+                epochDay(2013, 2, 4),   // Monday
+                epochDay(2013, 2, 9),   // Saturday
+                epochDay(2013, 3, 27),  // day before Maundy Thursday
+                epochDay(2013, 3, 26)   // Tuesday
+        };
+
+        BitSet chargeable = service.chargeableDays(days, rules);
+
+        assertTrue(chargeable.get(0));
+        assertFalse(chargeable.get(1));
+        assertFalse(chargeable.get(2));
+        assertTrue(chargeable.get(3));
+        assertEquals(2, chargeable.cardinality());
+    }
+
+    private static int epochDay(int year, int month, int day) {
+        return (int) LocalDate.of(year, month, day).toEpochDay();
+    }
 }
@@ -0,0 +1,102 @@
+package com.gothenburg.tax.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.gothenburg.tax.config.TaxRuleLoader;
+import com.gothenburg.tax.model.PassageFileFormat;
+import com.gothenburg.tax.model.TaxRuleConfig;
+import com.gothenburg.tax.model.VehicleType;
+import com.gothenburg.tax.model.WhatIfReport;
+import com.gothenburg.tax.model.WhatIfReport.DeltaBucket;
+import com.gothenburg.tax.model.WhatIfReport.Totals;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import tools.jackson.databind.ObjectMapper;
+
+class WhatIfTaxServiceTest {
+
+	@TempDir
+	Path tempDir;
+
+	private WhatIfTaxService service;
+	private Path dataset;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		var ruleLoader = new TaxRuleLoader(new ObjectMapper());
+		ruleLoader.loadRules(new ClassPathResource("data/gothenburg-tax-rules.json"));
+		var calculator = new CongestionTaxCalculator(ruleLoader, new TollFreeDateService(),
+				new TaxMetrics(new SimpleMeterRegistry()), 50_000, "interpreted");
+		service = new WhatIfTaxService(calculator, new BulkTaxService(calculator, 4, 2, 64), tempDir.toString());
+
+		dataset = Files.writeString(tempDir.resolve("passages.csv"), """
+				vehicleId,vehicleType,timestamp
+				ABC123,CAR,2013-02-04 07:30:00
+				XYZ789,CAR,2013-03-05 07:30:00
+				ABC123,CAR,2013-02-04 15:30:00
+				BUS001,BUS,2013-02-04 07:30:00
+				""");
+	}
+
+	private static TaxRuleConfig candidate(int maxDailyTax) throws Exception {
+		TaxRuleConfig config = new ObjectMapper().readValue(
+				new ClassPathResource("data/gothenburg-tax-rules.json").getInputStream(), TaxRuleConfig.class);
+		config.setMaxDailyTax(maxDailyTax);
+		return config;
+	}
+
+	@Test
+	@DisplayName("Reports totals, per-type and per-month deltas and the change distribution")
+	void comparesRules() throws Exception {
+		WhatIfReport report = service.compare(dataset, PassageFileFormat.CSV, candidate(30), "gothenburg");
+
+		assertEquals(4, report.passages());
+		assertEquals(3, report.vehicles());
+		assertEquals(new Totals(54, 48, -6), report.total());
+		assertEquals(Map.of(VehicleType.CAR, new Totals(54, 48, -6)), report.byVehicleType());
+		assertEquals(Map.of("2013-02", new Totals(36, 30, -6), "2013-03", new Totals(18, 18, 0)),
+				report.byMonth());
+		assertEquals("2013-02", report.byMonth().keySet().iterator().next());
+
+		var changes = report.vehicleChanges();
+		assertEquals(0, changes.increased());
+		assertEquals(1, changes.decreased());
+		assertEquals(2, changes.unchanged());
+		assertEquals(-6, changes.minDelta());
+		assertEquals(0, changes.maxDelta());
+		assertEquals(new DeltaBucket(-50L, 0L, 1), changes.distribution().get(4));
+		assertEquals(new DeltaBucket(0L, 1L, 2), changes.distribution().get(5));
+		assertEquals(new DeltaBucket(null, -1000L, 0), changes.distribution().get(0));
+	}
+
+	@Test
+	@DisplayName("Identical rules change nothing")
+	void identicalRules() throws Exception {
+		WhatIfReport report = service.compare("passages.csv", candidate(60), "gothenburg");
+
+		assertEquals(new Totals(54, 54, 0), report.total());
+		assertEquals(3, report.vehicleChanges().unchanged());
+	}
+
+	@Test
+	@DisplayName("Rejects datasets outside the dataset directory and rules for another city")
+	void rejectsInvalidInput() throws Exception {
+		assertThrows(IllegalArgumentException.class,
+				() -> service.compare("../passages.csv", candidate(60), "gothenburg"));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.compare("missing.csv", candidate(60), "gothenburg"));
+
+		TaxRuleConfig otherCity = candidate(60);
+		otherCity.setCity("stockholm");
+		assertThrows(IllegalArgumentException.class,
+				() -> service.compare("passages.csv", otherCity, "gothenburg"));
+	}
+}